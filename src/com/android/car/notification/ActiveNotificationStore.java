@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.notification;
+import android.annotation.Nullable;
+import android.os.UserHandle;
+import android.service.notification.StatusBarNotification;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.UnaryOperator;
+
+/**
+ * Active notifications of the notification center.
+ *
+ * <p> Notifications are also partitioned by user, so that the notifications of a user are found
+ * without looking at the ones of other users. The notifications of a user are returned as a
+ * read-only snapshot that is shared by all callers until the notifications change.
+ *
+ * <p> Must be used on the main thread.
+ */
+class ActiveNotificationStore {
+    private final Map<String, AlertEntry> mAlertEntries = new HashMap<>();
+    private final Map<String, AlertEntry> mUnmodifiableAlertEntries =
+            Collections.unmodifiableMap(mAlertEntries);
+    /** The same notifications as {@link #mAlertEntries}, by user id. */
+    private final SparseArray<Map<String, AlertEntry>> mAlertEntriesByUser = new SparseArray<>();
+    /** Notifications last returned by {@link #getNotifications}, {@code null} once they changed. */
+    @Nullable
+    private Map<String, AlertEntry> mSnapshot;
+    private int mSnapshotUserId;
+
+    /**
+     * Adds the notification, replacing the previous version with the same key.
+     */
+    void put(AlertEntry alertEntry) {
+        String key = alertEntry.getKey();
+        int userId = getUserId(alertEntry);
+        mAlertEntries.put(key, alertEntry);
+        Map<String, AlertEntry> userAlertEntries = mAlertEntriesByUser.get(userId);
+        if (userAlertEntries == null) {
+            userAlertEntries = new HashMap<>();
+            mAlertEntriesByUser.put(userId, userAlertEntries);
+        }
+        userAlertEntries.put(key, alertEntry);
+        mSnapshot = null;
+    }
+
+    /**
+     * Removes the notification.
+     *
+     * @return the removed notification, or {@code null} if it was not in the store.
+     */
+    @Nullable
+    AlertEntry remove(String key) {
+        AlertEntry alertEntry = mAlertEntries.remove(key);
+        if (alertEntry == null) {
+            return null;
+        }
+        int userId = getUserId(alertEntry);
+        Map<String, AlertEntry> userAlertEntries = mAlertEntriesByUser.get(userId);
+        userAlertEntries.remove(key);
+        if (userAlertEntries.isEmpty()) {
+            mAlertEntriesByUser.remove(userId);
+        }
+        mSnapshot = null;
+        return alertEntry;
+    }
+
+    /**
+     * Removes all notifications and adds the given ones.
+     */
+    void reset(List<AlertEntry> alertEntries) {
+        mAlertEntries.clear();
+        mAlertEntriesByUser.clear();
+        mSnapshot = null;
+        for (AlertEntry alertEntry : alertEntries) {
+            put(alertEntry);
+        }
+    }
+
+    boolean contains(String key) {
+        return mAlertEntries.containsKey(key);
+    }
+
+    int size() {
+        return mAlertEntries.size();
+    }
+
+    /**
+     * Returns a read-only view of the notifications of all users by notification key.
+     */
+    Map<String, AlertEntry> getAll() {
+        return mUnmodifiableAlertEntries;
+    }
+
+    /**
+     * Applies the override group keys of the ranking to the notifications. The notifications are
+     * shared with other threads, so a notification whose key changed is replaced by a copy with
+     * the new key.
+     *
+     * @return the copies that replaced notifications of the store.
+     */
+    List<AlertEntry> updateOverrideGroupKeys(RankingSnapshot rankingSnapshot) {
+        List<AlertEntry> updated = new ArrayList<>();
+        for (AlertEntry alertEntry : mAlertEntries.values()) {
+            if (!rankingSnapshot.hasRanking(alertEntry.getKey())) {
+                continue;
+            }
+            StatusBarNotification sbn = alertEntry.getStatusBarNotification();
+            String overrideGroupKey = rankingSnapshot.getOverrideGroupKey(alertEntry.getKey());
+            if (!Objects.equals(sbn.getOverrideGroupKey(), overrideGroupKey)) {
+                updated.add(new AlertEntry(alertEntry,
+                        copyWithOverrideGroupKey(sbn, overrideGroupKey)));
+            }
+        }
+        for (AlertEntry alertEntry : updated) {
+            put(alertEntry);
+        }
+        return updated;
+    }
+
+    /**
+     * Replaces every notification by the result of {@code replacement}, which returns either the
+     * notification itself or a copy of it.
+     *
+     * @return the copies that replaced notifications of the store.
+     */
+    List<AlertEntry> replaceAll(UnaryOperator<AlertEntry> replacement) {
+        List<AlertEntry> updated = new ArrayList<>();
+        for (AlertEntry alertEntry : mAlertEntries.values()) {
+            AlertEntry copy = replacement.apply(alertEntry);
+            if (copy != alertEntry) {
+                updated.add(copy);
+            }
+        }
+        for (AlertEntry alertEntry : updated) {
+            put(alertEntry);
+        }
+        return updated;
+    }
+
+    /**
+     * Returns a read-only snapshot of the notifications of the user and of
+     * {@link UserHandle#USER_ALL}. The same snapshot is returned until the notifications change.
+     */
+    Map<String, AlertEntry> getNotifications(int userId) {
+        if (mSnapshot != null && mSnapshotUserId == userId) {
+            return mSnapshot;
+        }
+
+        Map<String, AlertEntry> notifications = new HashMap<>();
+        collectNotifications(mAlertEntriesByUser.get(userId), notifications);
+        if (userId != UserHandle.USER_ALL) {
+            collectNotifications(mAlertEntriesByUser.get(UserHandle.USER_ALL), notifications);
+        }
+        mSnapshot = Collections.unmodifiableMap(notifications);
+        mSnapshotUserId = userId;
+        return mSnapshot;
+    }
+
+    private void collectNotifications(@Nullable Map<String, AlertEntry> userAlertEntries,
+            Map<String, AlertEntry> notifications) {
+        if (userAlertEntries != null) {
+            notifications.putAll(userAlertEntries);
+        }
+    }
+
+    /**
+     * Returns a copy of the notification with the override group key. The copy shares the
+     * {@link android.app.Notification}, which is not modified.
+     */
+    private static StatusBarNotification copyWithOverrideGroupKey(StatusBarNotification sbn,
+            @Nullable String overrideGroupKey) {
+        return new StatusBarNotification(sbn.getPackageName(), sbn.getOpPkg(), sbn.getId(),
+                sbn.getTag(), sbn.getUid(), sbn.getInitialPid(), sbn.getNotification(),
+                sbn.getUser(), overrideGroupKey, sbn.getPostTime());
+    }
+
+    private static int getUserId(AlertEntry alertEntry) {
+        return alertEntry.getStatusBarNotification().getUser().getIdentifier();
+    }
+}
@@ -17,10 +17,13 @@
 package com.android.car.notification;
 
 import android.app.Notification;
+import android.os.SystemClock;
 import android.service.notification.StatusBarNotification;
 
 import androidx.annotation.VisibleForTesting;
 
+import java.util.concurrent.atomic.AtomicLongArray;
+
 /**
  * Wrapper class to store the state of a {@link StatusBarNotification}.
  */
@@ -29,7 +32,14 @@ public class AlertEntry {
     private String mKey;
     private long mPostTime;
     private StatusBarNotification mStatusBarNotification;
+    // Replaces the notification of mStatusBarNotification in copies of an entry, null otherwise.
+    private Notification mNotification;
     private NotificationClickHandlerFactory mClickHandlerFactory;
+    // Time at which the notification reached each NotificationLatencyTracker stage, 0 if it has
+    // not reached the stage. Stages are reached on the main and on the preprocessing thread.
+    private final AtomicLongArray mLatencyStageTimes =
+            new AtomicLongArray(NotificationLatencyTracker.STAGE_COUNT);
+    private volatile NotificationClassification mClassification;
 
     public AlertEntry(StatusBarNotification statusBarNotification) {
         mStatusBarNotification = statusBarNotification;
@@ -37,6 +47,34 @@ public class AlertEntry {
         mPostTime = calculatePostTime();
     }
 
+    /**
+     * Creates a copy of the entry that shows the given notification instead of the notification
+     * of the entry. The copy shares the {@link StatusBarNotification} with the entry, so it is
+     * used to modify a notification that is shared with other threads.
+     */
+    AlertEntry(AlertEntry alertEntry, Notification notification) {
+        mStatusBarNotification = alertEntry.mStatusBarNotification;
+        mNotification = notification;
+        mKey = alertEntry.mKey;
+        mPostTime = alertEntry.mPostTime;
+        mClickHandlerFactory = alertEntry.mClickHandlerFactory;
+        mClassification = alertEntry.mClassification;
+    }
+
+    /**
+     * Creates a copy of the entry that wraps another version of its
+     * {@link StatusBarNotification}, e.g. one with a different override group key. The copy keeps
+     * the post time and the state of the entry.
+     */
+    AlertEntry(AlertEntry alertEntry, StatusBarNotification statusBarNotification) {
+        mStatusBarNotification = statusBarNotification;
+        mNotification = alertEntry.mNotification;
+        mKey = alertEntry.mKey;
+        mPostTime = alertEntry.mPostTime;
+        mClickHandlerFactory = alertEntry.mClickHandlerFactory;
+        mClassification = alertEntry.mClassification;
+    }
+
     // Empty constructor for Spy compatibility.
     @VisibleForTesting
     protected AlertEntry() {}
@@ -52,13 +90,27 @@ public class AlertEntry {
         return mPostTime;
     }
 
+    long getLatencyStageTime(int stage) {
+        return mLatencyStageTimes.get(stage);
+    }
+
+    /**
+     * Records the time at which the stage was reached.
+     *
+     * @return {@code false} if the stage had already been reached.
+     */
+    boolean setLatencyStageTime(int stage, long timeNanos) {
+        return mLatencyStageTimes.compareAndSet(stage, 0, timeNanos);
+    }
+
     /**
      * Calculate what the post time of a notification is at some current time.
      *
-     * @return the post time
+     * @return the post time in the {@link SystemClock#uptimeMillis} time base, so that it is not
+     * affected by changes of the wall clock.
      */
     private long calculatePostTime() {
-        return System.currentTimeMillis();
+        return SystemClock.uptimeMillis();
     }
 
     /**
@@ -87,9 +139,24 @@ public class AlertEntry {
 
     /**
      * Returns the {@link Notification} that is associated with the {@link StatusBarNotification}
-     * that this AlertEntry instance wraps.
+     * that this AlertEntry instance wraps, or the notification that replaces it in a copy.
      */
     public Notification getNotification() {
-        return mStatusBarNotification.getNotification();
+        return mNotification != null ? mNotification : mStatusBarNotification.getNotification();
+    }
+
+    /**
+     * Returns the {@link NotificationClassification} of the notification. It is computed on first
+     * use, which is when the notification is received for notifications that are posted to the
+     * {@link CarNotificationListener}, and kept for the lifetime of this entry.
+     */
+    public NotificationClassification getClassification() {
+        NotificationClassification classification = mClassification;
+        if (classification == null) {
+            // Racing threads compute equal classifications, any of them can be kept.
+            classification = NotificationClassification.classify(mStatusBarNotification);
+            mClassification = classification;
+        }
+        return classification;
     }
 }
@@ -20,8 +20,6 @@ import static android.view.ViewTreeObserver.OnComputeInternalInsetsListener;
 import static android.view.ViewTreeObserver.OnGlobalFocusChangeListener;
 import static android.view.ViewTreeObserver.OnGlobalLayoutListener;
 
-import static com.android.car.assist.client.CarAssistUtils.isCarCompatibleMessagingNotification;
-
 import android.animation.Animator;
 import android.animation.AnimatorListenerAdapter;
 import android.animation.AnimatorSet;
@@ -32,6 +30,9 @@ import android.app.NotificationManager;
 import android.car.drivingstate.CarUxRestrictions;
 import android.car.drivingstate.CarUxRestrictionsManager;
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.service.notification.NotificationListenerService;
 import android.util.Log;
 import android.util.Pair;
@@ -45,11 +46,14 @@ import com.android.car.notification.headsup.CarHeadsUpNotificationContainer;
 import com.android.car.notification.headsup.animationhelper.HeadsUpNotificationAnimationHelper;
 import com.android.car.notification.template.MessageNotificationViewHolder;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 /**
  * Notification Manager for heads-up notifications in car.
@@ -69,6 +73,9 @@ public class CarHeadsUpNotificationManager
     }
 
     private static final String TAG = CarHeadsUpNotificationManager.class.getSimpleName();
+    // Timer key of the expiry of queued heads up notifications. Notification keys contain '|' so
+    // they can not be equal to it.
+    private static final String QUEUE_EXPIRY_TIMER_KEY = "queue_expiry";
 
     private final Beeper mBeeper;
     private final Context mContext;
@@ -79,9 +86,16 @@ public class CarHeadsUpNotificationManager
     private final int mNotificationHeadsUpCardMarginTop;
 
     private final KeyguardManager mKeyguardManager;
-    private final PreprocessingManager mPreprocessingManager;
     private final LayoutInflater mInflater;
     private final CarHeadsUpNotificationContainer mHunContainer;
+    private final HeadsUpViewPool mViewPool;
+    private final HeadsUpRateLimiter mRateLimiter;
+    private final HeadsUpQueue mHeadsUpQueue;
+    private final HeadsUpTimer mTimer =
+            new HeadsUpTimer(new Handler(Looper.getMainLooper()), SystemClock::uptimeMillis);
+    // Keys of the heads up notifications that are being animated out of the screen.
+    private final Set<String> mDismissingHeadsUps = new HashSet<>();
+    private int mMaxConcurrentHeadsUps;
 
     // key for the map is the statusbarnotification key
     private final Map<String, HeadsUpEntry> mActiveHeadsUpNotifications = new HashMap<>();
@@ -94,6 +108,7 @@ public class CarHeadsUpNotificationManager
     private boolean mShouldRestrictMessagePreview;
     private NotificationClickHandlerFactory mClickHandlerFactory;
     private NotificationDataManager mNotificationDataManager;
+    private RankingSnapshot mRankingSnapshot;
 
 
     public CarHeadsUpNotificationManager(Context context,
@@ -114,11 +129,20 @@ public class CarHeadsUpNotificationManager
         mAnimationHelper = getAnimationHelper();
 
         mKeyguardManager = (KeyguardManager) context.getSystemService(Context.KEYGUARD_SERVICE);
-        mPreprocessingManager = PreprocessingManager.getInstance(context);
         mInflater = LayoutInflater.from(mContext);
         mClickHandlerFactory.registerClickListener(
                 (launchResult, alertEntry) -> dismissHun(alertEntry));
         mHunContainer = hunContainer;
+        mViewPool = new HeadsUpViewPool(mInflater, mClickHandlerFactory,
+                mContext.getResources().getInteger(R.integer.headsup_view_pool_size));
+        mViewPool.warmUp();
+        mRateLimiter = new HeadsUpRateLimiter(mContext);
+        int maxConcurrentHeadsUps = mContext.getResources().getInteger(
+                R.integer.headsup_max_concurrent_notifications);
+        mMaxConcurrentHeadsUps =
+                maxConcurrentHeadsUps > 0 ? maxConcurrentHeadsUps : Integer.MAX_VALUE;
+        mHeadsUpQueue = new HeadsUpQueue(
+                mContext.getResources().getInteger(R.integer.headsup_max_queue_time_ms));
     }
 
     private HeadsUpNotificationAnimationHelper getAnimationHelper() {
@@ -136,6 +160,11 @@ public class CarHeadsUpNotificationManager
     /**
      * Show the notification as a heads-up if it meets the criteria.
      *
+     * <p> If the maximum number of heads up notifications is already on the screen, the
+     * notification is queued until one of them is removed. A queued notification of a higher
+     * priority than one on the screen makes the latter leave the screen early. The sound of a
+     * queued notification is played when it is queued, not when it is shown later.
+     *
      * <p>Return's true if the notification will be shown as a heads up, false otherwise.
      */
     public boolean maybeShowHeadsUp(
@@ -143,6 +172,10 @@ public class CarHeadsUpNotificationManager
             NotificationListenerService.RankingMap rankingMap,
             Map<String, AlertEntry> activeNotifications) {
         if (!shouldShowHeadsUp(alertEntry, rankingMap)) {
+            if (mHeadsUpQueue.remove(alertEntry.getKey())) {
+                scheduleQueueExpiry();
+                return false;
+            }
             // check if this is an update to the existing notification and if it should still show
             // as a heads up or not.
             HeadsUpEntry currentActiveHeadsUpNotification = mActiveHeadsUpNotifications.get(
@@ -152,15 +185,26 @@ public class CarHeadsUpNotificationManager
             }
             if (CarNotificationDiff.sameNotificationKey(currentActiveHeadsUpNotification,
                     alertEntry)
-                    && currentActiveHeadsUpNotification.getHandler().hasMessagesOrCallbacks()) {
+                    && mTimer.isScheduled(alertEntry.getKey())) {
                 dismissHun(alertEntry);
             }
             return false;
         }
         if (!activeNotifications.containsKey(alertEntry.getKey()) || canUpdate(alertEntry)
                 || alertAgain(alertEntry.getNotification())) {
-            showHeadsUp(mPreprocessingManager.optimizeForDriving(alertEntry),
-                    rankingMap);
+            boolean isActive = mActiveHeadsUpNotifications.containsKey(alertEntry.getKey());
+            // Updates of a heads-up notification that is already showing or queued are not
+            // limited.
+            if (!isActive && !mHeadsUpQueue.contains(alertEntry.getKey())
+                    && !mRateLimiter.tryAcquire(alertEntry)) {
+                // Over the limit; the caller posts it to the notification center instead.
+                return false;
+            }
+            if (!isActive && mActiveHeadsUpNotifications.size() >= mMaxConcurrentHeadsUps) {
+                enqueueHeadsUp(alertEntry, rankingMap);
+                return true;
+            }
+            showHeadsUp(alertEntry, rankingMap);
             return true;
         }
         return false;
@@ -170,6 +214,10 @@ public class CarHeadsUpNotificationManager
      * This method gets called when an app wants to cancel or withdraw its notification.
      */
     public void maybeRemoveHeadsUp(AlertEntry alertEntry) {
+        if (mHeadsUpQueue.remove(alertEntry.getKey())) {
+            scheduleQueueExpiry();
+            return;
+        }
         HeadsUpEntry currentActiveHeadsUpNotification = mActiveHeadsUpNotifications.get(
                 alertEntry.getKey());
         // if the heads up notification is already removed do nothing.
@@ -178,7 +226,7 @@ public class CarHeadsUpNotificationManager
         }
 
         long totalDisplayDuration =
-                System.currentTimeMillis() - currentActiveHeadsUpNotification.getPostTime();
+                SystemClock.uptimeMillis() - currentActiveHeadsUpNotification.getPostTime();
         // ongoing notification that has passed the minimum threshold display time.
         if (totalDisplayDuration >= mMinDisplayDuration) {
             removeHun(alertEntry);
@@ -187,8 +235,9 @@ public class CarHeadsUpNotificationManager
 
         long earliestRemovalTime = mMinDisplayDuration - totalDisplayDuration;
 
-        currentActiveHeadsUpNotification.getHandler().postDelayed(() ->
-                removeHun(alertEntry), earliestRemovalTime);
+        // The removal replaces the auto dismiss, which is no longer rescheduled on focus changes.
+        currentActiveHeadsUpNotification.mIsRemovalScheduled = true;
+        mTimer.schedule(alertEntry.getKey(), earliestRemovalTime, () -> removeHun(alertEntry));
     }
 
     /**
@@ -209,6 +258,85 @@ public class CarHeadsUpNotificationManager
         mNotificationStateChangeListeners.remove(listener);
     }
 
+    private void enqueueHeadsUp(AlertEntry alertEntry,
+            NotificationListenerService.RankingMap rankingMap) {
+        if (!mHeadsUpQueue.contains(alertEntry.getKey())) {
+            // Alert when the notification arrives; it is shown without a sound once dequeued.
+            playSound(alertEntry, rankingMap);
+        }
+        RankingSnapshot rankingSnapshot = getRankingSnapshot(rankingMap);
+        int importance = rankingSnapshot.hasRanking(alertEntry.getKey())
+                ? rankingSnapshot.getImportance(alertEntry.getKey())
+                : NotificationManager.IMPORTANCE_UNSPECIFIED;
+        mHeadsUpQueue.add(alertEntry, rankingMap, importance, SystemClock.uptimeMillis());
+        maybePreemptHeadsUp(alertEntry);
+        scheduleQueueExpiry();
+    }
+
+    /**
+     * Dismisses the heads up notification on the screen with the lowest priority if it has a
+     * lower priority than the queued notification, so that the latter is shown once the former
+     * has left the screen.
+     */
+    private void maybePreemptHeadsUp(AlertEntry queuedAlertEntry) {
+        if (!mDismissingHeadsUps.isEmpty()) {
+            // A slot is already being freed.
+            return;
+        }
+        HeadsUpEntry lowest = null;
+        int lowestPriority = HeadsUpQueue.getPriority(queuedAlertEntry);
+        for (HeadsUpEntry headsUpEntry : mActiveHeadsUpNotifications.values()) {
+            int priority = HeadsUpQueue.getPriority(headsUpEntry.getAlertEntry());
+            if (priority < lowestPriority && !hasFullScreenIntent(headsUpEntry.getAlertEntry())) {
+                lowest = headsUpEntry;
+                lowestPriority = priority;
+            }
+        }
+        if (lowest != null) {
+            dismissHun(lowest.getAlertEntry());
+        }
+    }
+
+    /**
+     * Shows queued notifications while there is room on the screen.
+     */
+    private void showQueuedHeadsUps() {
+        expireQueuedHeadsUps();
+        while (mActiveHeadsUpNotifications.size() < mMaxConcurrentHeadsUps) {
+            HeadsUpQueue.PendingHeadsUp pendingHeadsUp = mHeadsUpQueue.poll();
+            if (pendingHeadsUp == null) {
+                break;
+            }
+            showHeadsUp(pendingHeadsUp.getAlertEntry(), pendingHeadsUp.getRankingMap(),
+                    /* shouldPlaySound= */ false);
+        }
+        scheduleQueueExpiry();
+    }
+
+    /**
+     * Moves the queued notifications that have waited for too long to the notification center.
+     */
+    private void expireQueuedHeadsUps() {
+        List<HeadsUpQueue.PendingHeadsUp> stale =
+                mHeadsUpQueue.removeStale(SystemClock.uptimeMillis());
+        for (int i = 0; i < stale.size(); i++) {
+            handleHeadsUpNotificationStateChanged(stale.get(i).getAlertEntry(),
+                    /* isHeadsUp= */ false);
+        }
+        scheduleQueueExpiry();
+    }
+
+    private void scheduleQueueExpiry() {
+        long nextDeadline = mHeadsUpQueue.getNextDeadline();
+        if (nextDeadline == Long.MAX_VALUE) {
+            mTimer.cancel(QUEUE_EXPIRY_TIMER_KEY);
+            return;
+        }
+        mTimer.schedule(QUEUE_EXPIRY_TIMER_KEY,
+                Math.max(0, nextDeadline - SystemClock.uptimeMillis()),
+                this::expireQueuedHeadsUps);
+    }
+
     /**
      * Invokes all OnHeadsUpNotificationStateChange handlers registered in {@link
      * OnHeadsUpNotificationStateChange}s array.
@@ -247,7 +375,7 @@ public class CarHeadsUpNotificationManager
     private boolean canUpdate(AlertEntry alertEntry) {
         HeadsUpEntry currentActiveHeadsUpNotification = mActiveHeadsUpNotifications.get(
                 alertEntry.getKey());
-        return currentActiveHeadsUpNotification != null && System.currentTimeMillis() -
+        return currentActiveHeadsUpNotification != null && SystemClock.uptimeMillis() -
                 currentActiveHeadsUpNotification.getPostTime() < mDuration;
     }
 
@@ -295,29 +423,45 @@ public class CarHeadsUpNotificationManager
      */
     private void showHeadsUp(AlertEntry alertEntry,
             NotificationListenerService.RankingMap rankingMap) {
+        showHeadsUp(alertEntry, rankingMap, /* shouldPlaySound= */ true);
+    }
+
+    /**
+     * Shows the heads up notification, playing its sound only if {@code shouldPlaySound} is set.
+     * Notifications that come out of the queue already played their sound when they were queued.
+     */
+    private void showHeadsUp(AlertEntry alertEntry,
+            NotificationListenerService.RankingMap rankingMap, boolean shouldPlaySound) {
         // Show animations only when there is no active HUN and notification is new. This check
         // needs to be done here because after this the new notification will be added to the map
         // holding ongoing notifications.
         boolean shouldShowAnimation = !isUpdate(alertEntry);
         HeadsUpEntry currentNotification = addNewHeadsUpEntry(alertEntry);
+        currentNotification.setAlertEntry(alertEntry);
         if (currentNotification.mIsNewHeadsUp) {
-            playSound(alertEntry, rankingMap);
+            if (shouldPlaySound) {
+                playSound(alertEntry, rankingMap);
+            }
+            setAutoDismissViews(currentNotification, alertEntry);
+        } else if (currentNotification.mIsRemovalScheduled) {
+            // The notification was posted again before its removal took place; keep it on the
+            // screen and dismiss it automatically again.
+            currentNotification.mIsRemovalScheduled = false;
+            mTimer.cancel(alertEntry.getKey());
             setAutoDismissViews(currentNotification, alertEntry);
         } else if (currentNotification.mIsAlertAgain) {
             setAutoDismissViews(currentNotification, alertEntry);
         }
-        CarNotificationTypeItem notificationTypeItem = NotificationUtils.getNotificationViewType(
-                alertEntry);
+        CarNotificationTypeItem notificationTypeItem =
+                alertEntry.getClassification().getHeadsUpType();
         currentNotification.setClickHandlerFactory(mClickHandlerFactory);
 
         if (currentNotification.getNotificationView() == null) {
-            currentNotification.setNotificationView(mInflater.inflate(
-                    notificationTypeItem.getHeadsUpTemplate(),
-                    null));
+            HeadsUpViewPool.PooledView pooledView = mViewPool.acquire(notificationTypeItem);
+            currentNotification.setNotificationView(pooledView.getView());
+            currentNotification.setViewHolder(pooledView.getViewHolder());
+            currentNotification.setNotificationTypeItem(notificationTypeItem);
             mHunContainer.displayNotification(currentNotification.getNotificationView());
-            currentNotification.setViewHolder(
-                    notificationTypeItem.getViewHolder(currentNotification.getNotificationView(),
-                            mClickHandlerFactory));
         }
 
         currentNotification.getViewHolder().setHideDismissButton(!shouldDismissOnSwipe(alertEntry));
@@ -330,6 +474,8 @@ public class CarHeadsUpNotificationManager
             currentNotification.getViewHolder().bind(alertEntry, /* isInGroup= */false,
                     /* isHeadsUp= */ true);
         }
+        NotificationLatencyTracker.getInstance().onStage(alertEntry,
+                NotificationLatencyTracker.STAGE_BOUND);
 
         resetViewTreeListenersEntry(currentNotification);
 
@@ -343,21 +489,25 @@ public class CarHeadsUpNotificationManager
         viewTreeObserver.addOnComputeInternalInsetsListener(onComputeInternalInsetsListener);
         // Get the height of the notification view after onLayout() in order to animate the
         // notification into the screen.
-        viewTreeObserver.addOnGlobalLayoutListener(
-                new OnGlobalLayoutListener() {
-                    @Override
-                    public void onGlobalLayout() {
-                        View view = currentNotification.getNotificationView();
-                        if (shouldShowAnimation) {
-                            mAnimationHelper.resetHUNPosition(view);
-                            AnimatorSet animatorSet = mAnimationHelper.getAnimateInAnimator(
-                                    mContext, view);
-                            animatorSet.setTarget(view);
-                            animatorSet.start();
-                        }
-                        view.getViewTreeObserver().removeOnGlobalLayoutListener(this);
-                    }
-                });
+        OnGlobalLayoutListener onGlobalLayoutListener = new OnGlobalLayoutListener() {
+            @Override
+            public void onGlobalLayout() {
+                View view = currentNotification.getNotificationView();
+                if (shouldShowAnimation) {
+                    mAnimationHelper.resetHUNPosition(view);
+                    AnimatorSet animatorSet = mAnimationHelper.getAnimateInAnimator(
+                            mContext, view);
+                    animatorSet.setTarget(view);
+                    animatorSet.start();
+                }
+                view.getViewTreeObserver().removeOnGlobalLayoutListener(this);
+                currentNotification.setOnGlobalLayoutListener(null);
+                NotificationLatencyTracker.getInstance().onStage(alertEntry,
+                        NotificationLatencyTracker.STAGE_DRAWN);
+            }
+        };
+        viewTreeObserver.addOnGlobalLayoutListener(onGlobalLayoutListener);
+        currentNotification.setOnGlobalLayoutListener(onGlobalLayoutListener);
         // Reset the auto dismiss timeout for each rotary event.
         OnGlobalFocusChangeListener onGlobalFocusChangeListener =
                 (oldFocus, newFocus) -> setAutoDismissViews(currentNotification, alertEntry);
@@ -382,13 +532,20 @@ public class CarHeadsUpNotificationManager
     }
 
     private void resetViewTreeListenersEntry(HeadsUpEntry headsUpEntry) {
+        ViewTreeObserver observer = headsUpEntry.getNotificationView().getViewTreeObserver();
+        // The layout listener has not run yet if the notification is updated or dismissed before
+        // its first layout. It must not run for the next notification that reuses the view.
+        if (headsUpEntry.getOnGlobalLayoutListener() != null) {
+            observer.removeOnGlobalLayoutListener(headsUpEntry.getOnGlobalLayoutListener());
+            headsUpEntry.setOnGlobalLayoutListener(null);
+        }
+
         Pair<OnComputeInternalInsetsListener, OnGlobalFocusChangeListener> listeners =
                 mRegisteredViewTreeListeners.get(headsUpEntry);
         if (listeners == null) {
             return;
         }
 
-        ViewTreeObserver observer = headsUpEntry.getNotificationView().getViewTreeObserver();
         observer.removeOnComputeInternalInsetsListener(listeners.first);
         observer.removeOnGlobalFocusChangeListener(listeners.second);
         mRegisteredViewTreeListeners.remove(headsUpEntry);
@@ -444,13 +601,22 @@ public class CarHeadsUpNotificationManager
         return mActiveHeadsUpNotifications;
     }
 
+    @VisibleForTesting
+    boolean isHeadsUpQueued(String key) {
+        return mHeadsUpQueue.contains(key);
+    }
+
+    @VisibleForTesting
+    void setMaxConcurrentHeadsUps(int maxConcurrentHeadsUps) {
+        mMaxConcurrentHeadsUps = maxConcurrentHeadsUps;
+    }
+
     private void setAutoDismissViews(HeadsUpEntry currentNotification, AlertEntry alertEntry) {
-        // Should not auto dismiss if HUN has a full screen Intent.
-        if (hasFullScreenIntent(alertEntry)) {
+        // Should not auto dismiss if HUN has a full screen Intent or is about to be removed.
+        if (hasFullScreenIntent(alertEntry) || currentNotification.mIsRemovalScheduled) {
             return;
         }
-        currentNotification.getHandler().removeCallbacksAndMessages(null);
-        currentNotification.getHandler().postDelayed(() -> dismissHun(alertEntry), mDuration);
+        mTimer.schedule(alertEntry.getKey(), mDuration, () -> dismissHun(alertEntry));
     }
 
     /**
@@ -473,8 +639,9 @@ public class CarHeadsUpNotificationManager
         if (currentHeadsUpNotification == null) {
             return;
         }
-        currentHeadsUpNotification.getHandler().removeCallbacksAndMessages(null);
+        mTimer.cancel(alertEntry.getKey());
         resetViewTreeListenersEntry(currentHeadsUpNotification);
+        mDismissingHeadsUps.add(alertEntry.getKey());
         View view = currentHeadsUpNotification.getNotificationView();
 
         AnimatorSet animatorSet = mAnimationHelper.getAnimateOutAnimator(mContext, view);
@@ -483,15 +650,18 @@ public class CarHeadsUpNotificationManager
             @Override
             public void onAnimationEnd(Animator animation) {
                 mHunContainer.removeNotification(view);
+                releaseView(currentHeadsUpNotification);
 
                 // Remove HUN after the animation ends to prevent accidental touch on the card
                 // triggering another remove call.
                 mActiveHeadsUpNotifications.remove(alertEntry.getKey());
+                mDismissingHeadsUps.remove(alertEntry.getKey());
 
                 // If the HUN was not specifically removed then add it to the panel.
                 if (!isRemoved) {
                     handleHeadsUpNotificationStateChanged(alertEntry, /* isHeadsUp= */ false);
                 }
+                showQueuedHeadsUps();
             }
         });
         animatorSet.start();
@@ -514,11 +684,41 @@ public class CarHeadsUpNotificationManager
                 alertEntry.getKey());
         if (currentHeadsUpNotification == null) return;
 
-        currentHeadsUpNotification.getHandler().removeCallbacksAndMessages(null);
+        mTimer.cancel(alertEntry.getKey());
+        // Remove the listeners while the view is still attached, so that they are removed from
+        // the observer they were added to.
+        resetViewTreeListenersEntry(currentHeadsUpNotification);
         mHunContainer.removeNotification(currentHeadsUpNotification.getNotificationView());
         mActiveHeadsUpNotifications.remove(alertEntry.getKey());
         handleHeadsUpNotificationStateChanged(alertEntry, /* isHeadsUp= */ false);
-        resetViewTreeListenersEntry(currentHeadsUpNotification);
+        releaseView(currentHeadsUpNotification);
+        mDismissingHeadsUps.remove(alertEntry.getKey());
+        showQueuedHeadsUps();
+    }
+
+    /**
+     * Returns the view of a heads up notification that has been removed from the screen to the
+     * view pool.
+     */
+    private void releaseView(HeadsUpEntry headsUpEntry) {
+        if (headsUpEntry.getNotificationView() == null
+                || headsUpEntry.getNotificationTypeItem() == null) {
+            return;
+        }
+        mViewPool.release(headsUpEntry.getNotificationTypeItem(),
+                headsUpEntry.getNotificationView(), headsUpEntry.getViewHolder());
+    }
+
+    /**
+     * Prints the state of the heads up notifications.
+     */
+    public void dump(PrintWriter pw) {
+        pw.println(TAG + ": " + mActiveHeadsUpNotifications.size()
+                + " active heads up notifications");
+        mTimer.dump(pw);
+        mHeadsUpQueue.dump(pw);
+        mViewPool.dump(pw);
+        mRateLimiter.dump(pw);
     }
 
     /**
@@ -568,19 +768,20 @@ public class CarHeadsUpNotificationManager
         }
 
         // Do not show if importance < HIGH
-        NotificationListenerService.Ranking ranking = getRanking();
-        if (rankingMap.getRanking(alertEntry.getKey(), ranking)) {
-            if (ranking.getImportance() < NotificationManager.IMPORTANCE_HIGH) {
-                return false;
-            }
+        RankingSnapshot rankingSnapshot = getRankingSnapshot(rankingMap);
+        if (rankingSnapshot.hasRanking(alertEntry.getKey())
+                && rankingSnapshot.getImportance(alertEntry.getKey())
+                < NotificationManager.IMPORTANCE_HIGH) {
+            return false;
         }
 
-        if (NotificationUtils.isSystemPrivilegedOrPlatformKey(mContext, alertEntry)) {
+        NotificationClassification classification = alertEntry.getClassification();
+        if (classification.isSystemPrivilegedOrPlatformKey(mContext)) {
             return true;
         }
 
         // Allow car messaging type.
-        if (isCarCompatibleMessagingNotification(alertEntry.getStatusBarNotification())) {
+        if (classification.isCarCompatibleMessaging()) {
             return true;
         }
 
@@ -594,6 +795,13 @@ public class CarHeadsUpNotificationManager
                 || Notification.CATEGORY_NAVIGATION.equals(notification.category);
     }
 
+    private RankingSnapshot getRankingSnapshot(NotificationListenerService.RankingMap rankingMap) {
+        if (mRankingSnapshot == null || !mRankingSnapshot.isSnapshotOf(rankingMap)) {
+            mRankingSnapshot = new RankingSnapshot(rankingMap, getRanking());
+        }
+        return mRankingSnapshot;
+    }
+
     @VisibleForTesting
     protected NotificationListenerService.Ranking getRanking() {
         return new NotificationListenerService.Ranking();
@@ -614,5 +822,6 @@ public class CarHeadsUpNotificationManager
     @VisibleForTesting
     public void setClickHandlerFactory(NotificationClickHandlerFactory clickHandlerFactory) {
         mClickHandlerFactory = clickHandlerFactory;
+        mViewPool.setClickHandlerFactory(clickHandlerFactory);
     }
 }
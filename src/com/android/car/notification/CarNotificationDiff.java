@@ -142,6 +142,7 @@ class CarNotificationDiff extends DiffUtil.Callback {
      * Deep comparison for {@link NotificationGroup}.
      *
      * <p> Compare the size and contents of each AlertEntry inside the NotificationGroup.
+     * A frozen group that is in both lists is taken as unchanged without comparing its content.
      *
      * <p> This method will only be called if {@link #areItemsTheSame} returns true.
      */
@@ -155,6 +156,11 @@ class CarNotificationDiff extends DiffUtil.Callback {
             return false;
         }
 
+        // A frozen group cannot change, so the same group has the same content.
+        if (oldItem == newItem && oldItem.isFrozen()) {
+            return true;
+        }
+
         if (!sameNotificationContent(
                 oldItem.getGroupSummaryNotification(), newItem.getGroupSummaryNotification())) {
             return false;
@@ -15,7 +15,6 @@
  */
 package com.android.car.notification;
 
-import android.annotation.Nullable;
 import android.app.ActivityManager;
 import android.app.NotificationManager;
 import android.content.ComponentName;
@@ -33,37 +32,38 @@ import android.util.Log;
 
 import com.android.car.notification.headsup.CarHeadsUpNotificationAppContainer;
 
-import java.util.HashMap;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * NotificationListenerService that fetches all notifications from system.
  */
 public class CarNotificationListener extends NotificationListenerService implements
-        CarHeadsUpNotificationManager.OnHeadsUpNotificationStateChange {
+        CarHeadsUpNotificationManager.OnHeadsUpNotificationStateChange,
+        PreprocessingManager.MaxStringLengthListener {
     private static final String TAG = "CarNotificationListener";
     static final String ACTION_LOCAL_BINDING = "local_binding";
     static final int NOTIFY_NOTIFICATION_POSTED = 1;
     static final int NOTIFY_NOTIFICATION_REMOVED = 2;
-    /** Temporary {@link Ranking} object that serves as a reused value holder */
-    final private Ranking mTemporaryRanking = new Ranking();
-
     private Handler mHandler;
     private RankingMap mRankingMap;
+    /** Allocation-free view of {@link #mRankingMap}, rebuilt lazily when the map changes. */
+    private RankingSnapshot mRankingSnapshot;
     private CarHeadsUpNotificationManager mHeadsUpManager;
     private NotificationDataManager mNotificationDataManager;
+    private PreprocessingManager mPreprocessingManager;
 
     /**
-     * Map that contains all the active notifications that are not currently HUN. These
+     * Store that contains all the active notifications that are not currently HUN. These
      * notifications may or may not be visible to the user if they get filtered out. The only time
-     * these will be removed from the map is when the {@llink NotificationListenerService} calls the
-     * onNotificationRemoved method. New notifications will be added to this map if the notification
-     * is posted as a non-HUN or when a HUN's state is changed to non-HUN.
+     * these will be removed from the store is when the {@llink NotificationListenerService} calls
+     * the onNotificationRemoved method. New notifications will be added to this store if the
+     * notification is posted as a non-HUN or when a HUN's state is changed to non-HUN.
      */
-    private Map<String, AlertEntry> mActiveNotifications = new HashMap<>();
+    private final ActiveNotificationStore mActiveNotifications = new ActiveNotificationStore();
 
     /**
      * Call this if to register this service as a system service and connect to HUN. This is useful
@@ -81,6 +81,8 @@ public class CarNotificationListener extends NotificationListenerService impleme
             NotificationDataManager notificationDataManager) {
         try {
             mNotificationDataManager = notificationDataManager;
+            mPreprocessingManager = PreprocessingManager.getInstance(context);
+            mPreprocessingManager.addMaxStringLengthListener(this);
             registerAsSystemService(context,
                     new ComponentName(context.getPackageName(), getClass().getCanonicalName()),
                     ActivityManager.getCurrentUser());
@@ -97,6 +99,8 @@ public class CarNotificationListener extends NotificationListenerService impleme
     public void onCreate() {
         super.onCreate();
         mNotificationDataManager = new NotificationDataManager();
+        mPreprocessingManager = PreprocessingManager.getInstance(/* context= */ this);
+        mPreprocessingManager.addMaxStringLengthListener(this);
         NotificationApplication app = (NotificationApplication) getApplication();
 
         app.getClickHandlerFactory().setNotificationDataManager(mNotificationDataManager);
@@ -106,6 +110,12 @@ public class CarNotificationListener extends NotificationListenerService impleme
         app.getCarUxRestrictionWrapper().setCarHeadsUpNotificationManager(mHeadsUpManager);
     }
 
+    @Override
+    public void onDestroy() {
+        mPreprocessingManager.removeMaxStringLengthListener(this);
+        super.onDestroy();
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
         return ACTION_LOCAL_BINDING.equals(intent.getAction())
@@ -123,7 +133,11 @@ public class CarNotificationListener extends NotificationListenerService impleme
         if (!isNotificationForCurrentUser(sbn)) {
             return;
         }
-        AlertEntry alertEntry = new AlertEntry(sbn);
+        AlertEntry alertEntry = createAlertEntry(sbn);
+        NotificationLatencyTracker.getInstance().onStage(alertEntry,
+                NotificationLatencyTracker.STAGE_RECEIVED);
+        // Classify the notification once for all of its consumers.
+        alertEntry.getClassification();
         onNotificationRankingUpdate(rankingMap);
         notifyNotificationPosted(alertEntry);
     }
@@ -136,11 +150,10 @@ public class CarNotificationListener extends NotificationListenerService impleme
         }
 
         Log.d(TAG, "onNotificationRemoved: " + sbn);
-        AlertEntry alertEntry = mActiveNotifications.get(sbn.getKey());
+        NotificationLatencyTracker.getInstance().stopTracking(sbn.getKey());
+        AlertEntry alertEntry = mActiveNotifications.remove(sbn.getKey());
 
-        if (alertEntry != null) {
-            mActiveNotifications.remove(alertEntry.getKey());
-        } else {
+        if (alertEntry == null) {
             // HUN notifications are not tracked in mActiveNotifications but still need to be
             // removed
             alertEntry = new AlertEntry(sbn);
@@ -152,41 +165,31 @@ public class CarNotificationListener extends NotificationListenerService impleme
     @Override
     public void onNotificationRankingUpdate(RankingMap rankingMap) {
         mRankingMap = rankingMap;
-        for (AlertEntry alertEntry : mActiveNotifications.values()) {
-            if (!mRankingMap.getRanking(alertEntry.getKey(), mTemporaryRanking)) {
-                continue;
-            }
-            String oldOverrideGroupKey =
-                    alertEntry.getStatusBarNotification().getOverrideGroupKey();
-            String newOverrideGroupKey = getOverrideGroupKey(alertEntry.getKey());
-            if (!Objects.equals(oldOverrideGroupKey, newOverrideGroupKey)) {
-                alertEntry.getStatusBarNotification().setOverrideGroupKey(newOverrideGroupKey);
-            }
+        // Regroup the notifications whose override group key changed.
+        for (AlertEntry alertEntry
+                : mActiveNotifications.updateOverrideGroupKeys(getRankingSnapshot())) {
+            sendNotificationEventToHandler(alertEntry, NOTIFY_NOTIFICATION_POSTED);
         }
     }
 
     /**
-     * Get the override group key of a {@link AlertEntry} given its key.
+     * Returns the {@link RankingSnapshot} of the current {@link RankingMap}.
      */
-    @Nullable
-    private String getOverrideGroupKey(String key) {
-        if (mRankingMap != null) {
-            mRankingMap.getRanking(key, mTemporaryRanking);
-            return mTemporaryRanking.getOverrideGroupKey();
+    private RankingSnapshot getRankingSnapshot() {
+        if (mRankingSnapshot == null || !mRankingSnapshot.isSnapshotOf(mRankingMap)) {
+            mRankingSnapshot = new RankingSnapshot(mRankingMap);
         }
-        return null;
+        return mRankingSnapshot;
     }
 
     /**
      * Get all active notifications that are not heads-up notifications.
      *
-     * @return a map of all active notifications with key being the notification key.
+     * @return a read-only map of all active notifications with key being the notification key.
+     * The same map is returned until the notifications or the current user change.
      */
     Map<String, AlertEntry> getNotifications() {
-        return mActiveNotifications.entrySet().stream()
-                .filter(x -> (isNotificationForCurrentUser(
-                        x.getValue().getStatusBarNotification())))
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        return mActiveNotifications.getNotifications(ActivityManager.getCurrentUser());
     }
 
     @Override
@@ -196,15 +199,42 @@ public class CarNotificationListener extends NotificationListenerService impleme
 
     @Override
     public void onListenerConnected() {
-        mActiveNotifications = Stream.of(getActiveNotifications()).collect(
-                Collectors.toMap(StatusBarNotification::getKey, sbn -> new AlertEntry(sbn)));
+        StatusBarNotification[] activeNotifications = getActiveNotifications();
+        List<AlertEntry> alertEntries = new ArrayList<>();
+        if (activeNotifications != null) {
+            for (StatusBarNotification sbn : activeNotifications) {
+                alertEntries.add(createAlertEntry(sbn));
+            }
+        }
+        mActiveNotifications.reset(alertEntries);
         mRankingMap = super.getCurrentRanking();
     }
 
+    /**
+     * Wraps the notification and optimizes it for driving. This is done on the main thread before
+     * the notification is shared, since the other threads never modify the notification.
+     */
+    private AlertEntry createAlertEntry(StatusBarNotification sbn) {
+        AlertEntry alertEntry = new AlertEntry(sbn);
+        return mPreprocessingManager.optimizeForDriving(alertEntry);
+    }
+
     @Override
     public void onListenerDisconnected() {
     }
 
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+        pw.println(TAG + ": " + mActiveNotifications.size() + " active notifications");
+        PackageTrustCache.getInstance(this).dump(pw);
+        PackageResourceCache.getInstance(this).dump(pw);
+        NotificationUtils.getContrastColorCache().dump(pw);
+        if (mHeadsUpManager != null) {
+            mHeadsUpManager.dump(pw);
+        }
+        NotificationLatencyTracker.getInstance().dump(pw);
+    }
+
     public void setHandler(Handler handler) {
         mHandler = handler;
     }
@@ -217,7 +247,7 @@ public class CarNotificationListener extends NotificationListenerService impleme
         }
 
         boolean isShowingHeadsUp = mHeadsUpManager.maybeShowHeadsUp(alertEntry, getCurrentRanking(),
-                mActiveNotifications);
+                mActiveNotifications.getAll());
 
         if (!isShowingHeadsUp) {
             postNewNotification(alertEntry);
@@ -240,6 +270,16 @@ public class CarNotificationListener extends NotificationListenerService impleme
         }
     }
 
+    @Override
+    public void onMaxStringLengthChanged() {
+        // The notifications are shared with the preprocessing thread, so the ones with texts that
+        // are now too long are replaced by trimmed copies.
+        for (AlertEntry alertEntry
+                : mActiveNotifications.replaceAll(mPreprocessingManager::copyOptimizedForDriving)) {
+            sendNotificationEventToHandler(alertEntry, NOTIFY_NOTIFICATION_POSTED);
+        }
+    }
+
     class LocalBinder extends Binder {
         public CarNotificationListener getService() {
             return CarNotificationListener.this;
@@ -247,7 +287,7 @@ public class CarNotificationListener extends NotificationListenerService impleme
     }
 
     private void postNewNotification(AlertEntry alertEntry) {
-        mActiveNotifications.put(alertEntry.getKey(), alertEntry);
+        mActiveNotifications.put(alertEntry);
         sendNotificationEventToHandler(alertEntry, NOTIFY_NOTIFICATION_POSTED);
     }
 
@@ -269,8 +309,7 @@ public class CarNotificationListener extends NotificationListenerService impleme
     // Don't show unseen markers for <= LOW importance notifications to be consistent
     // with how these notifications are handled on phones
     boolean shouldTrackUnseen(AlertEntry alertEntry) {
-        Ranking ranking = new NotificationListenerService.Ranking();
-        mRankingMap.getRanking(alertEntry.getKey(), ranking);
-        return ranking.getImportance() > NotificationManager.IMPORTANCE_LOW;
+        return getRankingSnapshot().getImportance(alertEntry.getKey())
+                > NotificationManager.IMPORTANCE_LOW;
     }
 }
@@ -248,11 +248,12 @@ public class CarNotificationView extends ConstraintLayout
      * <p>Note: Provided notifications might not have Views bound to them.</p>
      */
     private List<View> getNotificationViews(List<NotificationGroup> notifications) {
-        Set notificationIds = new HashSet();
+        Set<Long> notificationIds = new HashSet<>();
         notifications.forEach(notificationGroup -> {
-            long id = notificationGroup.isGroup() ? notificationGroup.getGroupKey().hashCode() :
-                    notificationGroup.getSingleNotification().getKey().hashCode();
-            notificationIds.add(id);
+            long id = mAdapter.getItemId(notificationGroup);
+            if (id != RecyclerView.NO_ID) {
+                notificationIds.add(id);
+            }
         });
 
         RecyclerView listView = findViewById(R.id.notifications);
@@ -20,12 +20,16 @@ import android.app.Notification;
 import android.car.drivingstate.CarUxRestrictions;
 import android.content.Context;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
@@ -42,6 +46,8 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
  * Notification data adapter that binds a notification to the corresponding view.
@@ -50,6 +56,9 @@ public class CarNotificationViewAdapter extends ContentLimitingAdapter<RecyclerV
         implements PreprocessingManager.CallStateListener {
     private static final String TAG = "CarNotificationAdapter";
 
+    // Shared by all adapters so that at most one diff is computed at a time.
+    private static Executor sDiffExecutor;
+
     private final Context mContext;
     private final LayoutInflater mInflater;
     private final int mMaxNumberGroupChildrenShown;
@@ -59,6 +68,8 @@ public class CarNotificationViewAdapter extends ContentLimitingAdapter<RecyclerV
     private final List<String> mExpandedNotifications = new ArrayList<>();
     private final CarNotificationItemController mNotificationItemController;
 
+    private final StableIdAllocator mStableIdAllocator = new StableIdAllocator();
+
     private List<NotificationGroup> mNotifications = new ArrayList<>();
     private LinearLayoutManager mLayoutManager;
     private RecyclerView.RecycledViewPool mViewPool;
@@ -70,6 +81,12 @@ public class CarNotificationViewAdapter extends ContentLimitingAdapter<RecyclerV
     private Set<AlertEntry> mChildNotificationsBeingCleared = new HashSet<>();
     private boolean mHasHeaderAndFooter;
     private int mMaxItems = ContentLimitingAdapter.UNLIMITED;
+    // Computes the diffs off the main thread, null if they are computed on the main thread.
+    @Nullable
+    private final Executor mDiffExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // Incremented for every new list so that diff results of outdated lists can be dropped.
+    private int mDiffGeneration;
 
     /**
      * Constructor for a notification adapter.
@@ -81,11 +98,24 @@ public class CarNotificationViewAdapter extends ContentLimitingAdapter<RecyclerV
      */
     public CarNotificationViewAdapter(Context context, boolean isGroupNotificationAdapter,
             @Nullable CarNotificationItemController notificationItemController) {
+        // Group adapters are bound together with their parent view holder and need their
+        // content right away.
+        this(context, isGroupNotificationAdapter, notificationItemController,
+                !isGroupNotificationAdapter && context.getResources().getBoolean(
+                        R.bool.config_computeNotificationDiffOnBackgroundThread)
+                        ? getDiffExecutor() : null);
+    }
+
+    @VisibleForTesting
+    CarNotificationViewAdapter(Context context, boolean isGroupNotificationAdapter,
+            @Nullable CarNotificationItemController notificationItemController,
+            @Nullable Executor diffExecutor) {
         mContext = context;
         mInflater = LayoutInflater.from(context);
         mMaxNumberGroupChildrenShown =
                 mContext.getResources().getInteger(R.integer.max_group_children_number);
         mIsGroupNotificationAdapter = isGroupNotificationAdapter;
+        mDiffExecutor = diffExecutor;
         mNotificationItemController = notificationItemController;
         setHasStableIds(true);
         if (!mIsGroupNotificationAdapter) {
@@ -168,6 +198,27 @@ public class CarNotificationViewAdapter extends ContentLimitingAdapter<RecyclerV
         } else {
             carNotificationTypeItem.bind(alertEntry, false, (CarNotificationBaseViewHolder) holder);
         }
+        trackLatency(alertEntry, holder.itemView);
+    }
+
+    /**
+     * Records that the notification has been bound and records its first draw.
+     */
+    private void trackLatency(AlertEntry alertEntry, View view) {
+        NotificationLatencyTracker tracker = NotificationLatencyTracker.getInstance();
+        if (alertEntry == null || !tracker.isPending(alertEntry)) {
+            return;
+        }
+        tracker.onStage(alertEntry, NotificationLatencyTracker.STAGE_BOUND);
+        view.getViewTreeObserver().addOnPreDrawListener(
+                new ViewTreeObserver.OnPreDrawListener() {
+                    @Override
+                    public boolean onPreDraw() {
+                        view.getViewTreeObserver().removeOnPreDrawListener(this);
+                        tracker.onStage(alertEntry, NotificationLatencyTracker.STAGE_DRAWN);
+                        return true;
+                    }
+                });
     }
 
     @Override
@@ -195,51 +246,28 @@ public class CarNotificationViewAdapter extends ContentLimitingAdapter<RecyclerV
             setExpanded(notificationGroup.getGroupKey(), false);
         }
 
-        Notification notification =
-                notificationGroup.getSingleNotification().getNotification();
-        Bundle extras = notification.extras;
-
-        String category = notification.category;
-        if (category != null) {
-            switch (category) {
-                case Notification.CATEGORY_CALL:
-                    return NotificationViewType.CALL;
-                case Notification.CATEGORY_CAR_EMERGENCY:
-                    return NotificationViewType.CAR_EMERGENCY;
-                case Notification.CATEGORY_CAR_WARNING:
-                    return NotificationViewType.CAR_WARNING;
-                case Notification.CATEGORY_CAR_INFORMATION:
-                    return mIsGroupNotificationAdapter
-                            ? NotificationViewType.CAR_INFORMATION_IN_GROUP
-                            : NotificationViewType.CAR_INFORMATION;
-                case Notification.CATEGORY_MESSAGE:
-                    return mIsGroupNotificationAdapter
-                            ? NotificationViewType.MESSAGE_IN_GROUP : NotificationViewType.MESSAGE;
-                default:
-                    break;
-            }
-        }
-
-        // progress
-        int progressMax = extras.getInt(Notification.EXTRA_PROGRESS_MAX);
-        boolean isIndeterminate = extras.getBoolean(
-                Notification.EXTRA_PROGRESS_INDETERMINATE);
-        boolean hasValidProgress = isIndeterminate || progressMax != 0;
-        boolean isProgress = extras.containsKey(Notification.EXTRA_PROGRESS)
-                && extras.containsKey(Notification.EXTRA_PROGRESS_MAX)
-                && hasValidProgress
-                && !notification.hasCompletedProgress();
-        if (isProgress) {
-            return mIsGroupNotificationAdapter
-                    ? NotificationViewType.PROGRESS_IN_GROUP : NotificationViewType.PROGRESS;
-        }
-
-        // inbox
-        boolean isInbox = extras.containsKey(Notification.EXTRA_TITLE_BIG)
-                && extras.containsKey(Notification.EXTRA_SUMMARY_TEXT);
-        if (isInbox) {
-            return mIsGroupNotificationAdapter
-                    ? NotificationViewType.INBOX_IN_GROUP : NotificationViewType.INBOX;
+        AlertEntry alertEntry = notificationGroup.getSingleNotification();
+        int viewType = alertEntry.getClassification().getPanelViewType();
+        switch (viewType) {
+            case NotificationViewType.CALL:
+            case NotificationViewType.CAR_EMERGENCY:
+            case NotificationViewType.CAR_WARNING:
+                return viewType;
+            case NotificationViewType.CAR_INFORMATION:
+                return mIsGroupNotificationAdapter
+                        ? NotificationViewType.CAR_INFORMATION_IN_GROUP
+                        : NotificationViewType.CAR_INFORMATION;
+            case NotificationViewType.MESSAGE:
+                return mIsGroupNotificationAdapter
+                        ? NotificationViewType.MESSAGE_IN_GROUP : NotificationViewType.MESSAGE;
+            case NotificationViewType.PROGRESS:
+                return mIsGroupNotificationAdapter
+                        ? NotificationViewType.PROGRESS_IN_GROUP : NotificationViewType.PROGRESS;
+            case NotificationViewType.INBOX:
+                return mIsGroupNotificationAdapter
+                        ? NotificationViewType.INBOX_IN_GROUP : NotificationViewType.INBOX;
+            default:
+                break;
         }
 
         // group summary
@@ -250,6 +278,7 @@ public class CarNotificationViewAdapter extends ContentLimitingAdapter<RecyclerV
 
         // the big text and big picture styles are fallen back to basic template in car
         // i.e. setting the big text and big picture does not have an effect
+        Bundle extras = alertEntry.getNotification().extras;
         boolean isBigText = extras.containsKey(Notification.EXTRA_BIG_TEXT);
         if (isBigText) {
             Log.i(TAG, "Big text style is not supported as a car notification");
@@ -303,9 +332,15 @@ public class CarNotificationViewAdapter extends ContentLimitingAdapter<RecyclerV
             return 1;
         }
 
-        return notificationGroup.isGroup()
-                ? notificationGroup.getGroupKey().hashCode()
-                : notificationGroup.getSingleNotification().getKey().hashCode();
+        return mStableIdAllocator.getId(notificationGroup);
+    }
+
+    /**
+     * Returns the item id of the notification group if it is in the list that is currently shown,
+     * or {@link RecyclerView#NO_ID} otherwise.
+     */
+    long getItemId(NotificationGroup notificationGroup) {
+        return mStableIdAllocator.peekId(notificationGroup);
     }
 
     /**
@@ -352,36 +387,70 @@ public class CarNotificationViewAdapter extends ContentLimitingAdapter<RecyclerV
     /**
      * Updates notifications and update views.
      *
+     * <p> Neither the list nor its groups are modified, so the caller can hand out read-only
+     * lists and keep them for later updates.
+     *
      * @param setRecyclerViewListHeaderAndFooter sets the header and footer on the entire list of
      * items within the recycler view. This is NOT the header/footer for the grouped notifications.
      */
     public void setNotifications(List<NotificationGroup> notifications,
             boolean setRecyclerViewListHeaderAndFooter) {
 
-        notifications.removeIf(notificationGroup ->
-                mChildNotificationsBeingCleared.contains(notificationGroup.getSingleNotification())
-        );
-
-        List<NotificationGroup> notificationGroupList = new ArrayList<>(notifications);
+        List<NotificationGroup> notificationGroupList = new ArrayList<>(notifications.size() + 2);
+        for (int i = 0; i < notifications.size(); i++) {
+            NotificationGroup notificationGroup = notifications.get(i);
+            if (!mChildNotificationsBeingCleared.contains(
+                    notificationGroup.getSingleNotification())) {
+                notificationGroupList.add(notificationGroup);
+            }
+        }
 
         if (setRecyclerViewListHeaderAndFooter) {
             // add header as the first item of the list.
             notificationGroupList.add(0, createNotificationHeader());
             // add footer as the last item of the list.
             notificationGroupList.add(createNotificationFooter());
-            mHasHeaderAndFooter = true;
-        } else {
-            mHasHeaderAndFooter = false;
         }
 
-        DiffUtil.DiffResult diffResult =
-                DiffUtil.calculateDiff(
-                        new CarNotificationDiff(mContext, mNotifications, notificationGroupList, mMaxItems),
-                        /* detectMoves= */ false);
+        int generation = ++mDiffGeneration;
+        CarNotificationDiff diff =
+                new CarNotificationDiff(mContext, mNotifications, notificationGroupList, mMaxItems);
+
+        if (mDiffExecutor == null) {
+            applyDiff(notificationGroupList, setRecyclerViewListHeaderAndFooter,
+                    DiffUtil.calculateDiff(diff, /* detectMoves= */ false));
+            return;
+        }
+
+        mDiffExecutor.execute(() -> {
+            DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(diff, /* detectMoves= */ false);
+            mMainHandler.post(() -> {
+                if (generation != mDiffGeneration) {
+                    // A newer list has been set in the meantime.
+                    return;
+                }
+                applyDiff(notificationGroupList, setRecyclerViewListHeaderAndFooter, diffResult);
+            });
+        });
+    }
+
+    private void applyDiff(List<NotificationGroup> notificationGroupList,
+            boolean hasHeaderAndFooter, DiffUtil.DiffResult diffResult) {
+        mHasHeaderAndFooter = hasHeaderAndFooter;
         mNotifications = notificationGroupList;
+        mStableIdAllocator.update(notificationGroupList);
         updateUnderlyingDataChanged(getUnrestrictedItemCount(), /* newAnchorIndex= */ 0);
         diffResult.dispatchUpdatesTo(this);
     }
+
+    private static synchronized Executor getDiffExecutor() {
+        if (sDiffExecutor == null) {
+            sDiffExecutor = Executors.newSingleThreadExecutor(
+                    runnable -> new Thread(runnable, TAG + "-diff"));
+        }
+        return sDiffExecutor;
+    }
+
     /**
      * Sets child notifications of the group notification that is in the process of being cleared.
      * This prevents these child notifications from appearing briefly while the clearing process is
@@ -408,6 +477,7 @@ public class CarNotificationViewAdapter extends ContentLimitingAdapter<RecyclerV
         NotificationGroup notificationGroupWithHeader = new NotificationGroup();
         notificationGroupWithHeader.setHeader(true);
         notificationGroupWithHeader.setGroupKey("notification_header");
+        notificationGroupWithHeader.freeze();
         return notificationGroupWithHeader;
     }
 
@@ -415,6 +485,7 @@ public class CarNotificationViewAdapter extends ContentLimitingAdapter<RecyclerV
         NotificationGroup notificationGroupWithFooter = new NotificationGroup();
         notificationGroupWithFooter.setFooter(true);
         notificationGroupWithFooter.setGroupKey("notification_footer");
+        notificationGroupWithFooter.freeze();
         return notificationGroupWithFooter;
     }
 
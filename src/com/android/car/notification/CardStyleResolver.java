@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.notification;
+
+import android.annotation.ColorInt;
+import android.app.Notification;
+import android.content.Context;
+import android.util.LruCache;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Resolves the colors a notification card is drawn with: its background, the primary and
+ * secondary foreground colors and the accent color.
+ *
+ * <p> Whether a notification may color its card depends on the trust level of the posting
+ * package, which takes a binder call to resolve, and the foreground colors of a colored card take
+ * a contrast search. The trust level is kept by the {@link NotificationClassification} of the
+ * notification, and the resolved styles are cached by theme, notification color and whether the
+ * card is colored, so binding a card that has been prefetched makes neither.
+ *
+ * <p> May be used on any thread.
+ */
+public class CardStyleResolver {
+    private static final int MAX_STYLES = 64;
+
+    private static CardStyleResolver sInstance;
+
+    private final Context mContext;
+    private final LruCache<StyleKey, CardStyle> mStyles = new LruCache<>(MAX_STYLES);
+
+    /**
+     * The theme colors and configuration the card styles are derived from. Read it from the
+     * context the cards are inflated with.
+     */
+    public static final class Theme {
+        @ColorInt
+        private final int mBackgroundColor;
+        @ColorInt
+        private final int mAccentColor;
+        @ColorInt
+        private final int mPrimaryForegroundColor;
+        @ColorInt
+        private final int mSecondaryForegroundColor;
+        private final boolean mEnableCardBackgroundColorForCategoryNavigation;
+        private final boolean mEnableCardBackgroundColorForSystemApp;
+        private final boolean mEnableSmallIconAccentColor;
+
+        private Theme(Context context) {
+            mBackgroundColor = NotificationUtils.getAttrColor(context,
+                    android.R.attr.colorPrimary);
+            mAccentColor = NotificationUtils.getAttrColor(context, android.R.attr.colorAccent);
+            mPrimaryForegroundColor = context.getColor(R.color.primary_text_color);
+            mSecondaryForegroundColor = context.getColor(R.color.secondary_text_color);
+            mEnableCardBackgroundColorForCategoryNavigation = context.getResources().getBoolean(
+                    R.bool.config_enableCardBackgroundColorForCategoryNavigation);
+            mEnableCardBackgroundColorForSystemApp = context.getResources().getBoolean(
+                    R.bool.config_enableCardBackgroundColorForSystemApp);
+            mEnableSmallIconAccentColor =
+                    context.getResources().getBoolean(R.bool.config_enableSmallIconAccentColor);
+        }
+
+        /**
+         * Reads the theme of the given context.
+         */
+        public static Theme from(Context context) {
+            return new Theme(context);
+        }
+
+        /**
+         * Returns the default card background color.
+         */
+        @ColorInt
+        public int getBackgroundColor() {
+            return mBackgroundColor;
+        }
+
+        /**
+         * Returns the accent color of a notification with the given color.
+         */
+        @ColorInt
+        public int getAccentColor(@ColorInt int notificationColor) {
+            if (mEnableSmallIconAccentColor && notificationColor != Notification.COLOR_DEFAULT) {
+                return notificationColor;
+            }
+            return mAccentColor;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Theme)) {
+                return false;
+            }
+            Theme theme = (Theme) o;
+            return mBackgroundColor == theme.mBackgroundColor
+                    && mAccentColor == theme.mAccentColor
+                    && mPrimaryForegroundColor == theme.mPrimaryForegroundColor
+                    && mSecondaryForegroundColor == theme.mSecondaryForegroundColor
+                    && mEnableCardBackgroundColorForCategoryNavigation
+                            == theme.mEnableCardBackgroundColorForCategoryNavigation
+                    && mEnableCardBackgroundColorForSystemApp
+                            == theme.mEnableCardBackgroundColorForSystemApp
+                    && mEnableSmallIconAccentColor == theme.mEnableSmallIconAccentColor;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mBackgroundColor, mAccentColor, mPrimaryForegroundColor,
+                    mSecondaryForegroundColor, mEnableCardBackgroundColorForCategoryNavigation,
+                    mEnableCardBackgroundColorForSystemApp, mEnableSmallIconAccentColor);
+        }
+    }
+
+    /**
+     * The resolved colors of a notification card.
+     */
+    public static final class CardStyle {
+        @ColorInt
+        private final int mBackgroundColor;
+        @ColorInt
+        private final int mPrimaryForegroundColor;
+        @ColorInt
+        private final int mSecondaryForegroundColor;
+        @ColorInt
+        private final int mAccentColor;
+        private final boolean mHasCustomBackgroundColor;
+
+        private CardStyle(Theme theme, @ColorInt int notificationColor,
+                boolean hasCustomBackgroundColor) {
+            mHasCustomBackgroundColor = hasCustomBackgroundColor;
+            mAccentColor = theme.getAccentColor(notificationColor);
+            if (hasCustomBackgroundColor) {
+                mBackgroundColor = notificationColor;
+                mPrimaryForegroundColor = NotificationUtils.resolveContrastColor(
+                        theme.mPrimaryForegroundColor, notificationColor);
+                mSecondaryForegroundColor = NotificationUtils.resolveContrastColor(
+                        theme.mSecondaryForegroundColor, notificationColor);
+            } else {
+                mBackgroundColor = theme.mBackgroundColor;
+                mPrimaryForegroundColor = theme.mPrimaryForegroundColor;
+                mSecondaryForegroundColor = theme.mSecondaryForegroundColor;
+            }
+        }
+
+        @ColorInt
+        public int getBackgroundColor() {
+            return mBackgroundColor;
+        }
+
+        @ColorInt
+        public int getPrimaryForegroundColor() {
+            return mPrimaryForegroundColor;
+        }
+
+        @ColorInt
+        public int getSecondaryForegroundColor() {
+            return mSecondaryForegroundColor;
+        }
+
+        @ColorInt
+        public int getAccentColor() {
+            return mAccentColor;
+        }
+
+        /**
+         * Returns whether the card is drawn with the color of the notification instead of the
+         * default background color.
+         */
+        public boolean hasCustomBackgroundColor() {
+            return mHasCustomBackgroundColor;
+        }
+    }
+
+    private static final class StyleKey {
+        private final Theme mTheme;
+        @ColorInt
+        private final int mNotificationColor;
+        private final boolean mHasCustomBackgroundColor;
+
+        StyleKey(Theme theme, @ColorInt int notificationColor,
+                boolean hasCustomBackgroundColor) {
+            mTheme = theme;
+            mNotificationColor = notificationColor;
+            mHasCustomBackgroundColor = hasCustomBackgroundColor;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof StyleKey)) {
+                return false;
+            }
+            StyleKey key = (StyleKey) o;
+            return mNotificationColor == key.mNotificationColor
+                    && mHasCustomBackgroundColor == key.mHasCustomBackgroundColor
+                    && mTheme.equals(key.mTheme);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mTheme, mNotificationColor, mHasCustomBackgroundColor);
+        }
+    }
+
+    private CardStyleResolver(Context context) {
+        mContext = context.getApplicationContext() != null
+                ? context.getApplicationContext() : context;
+    }
+
+    public static synchronized CardStyleResolver getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new CardStyleResolver(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Drops the shared instance so that the next {@link #getInstance} call starts with an empty
+     * cache.
+     */
+    @VisibleForTesting
+    static synchronized void resetInstance() {
+        sInstance = null;
+    }
+
+    /**
+     * Returns the style of the card of the notification.
+     *
+     * @param isInGroup whether the notification is shown as a child of a notification group,
+     *         whose cards are never colored.
+     */
+    public CardStyle resolve(Theme theme, AlertEntry alertEntry, boolean isInGroup) {
+        Notification notification = alertEntry.getNotification();
+        int color = notification.color;
+        // The trust level is only needed for the notifications that ask for a colored card.
+        boolean hasCustomBackgroundColor = !isInGroup
+                && color != Notification.COLOR_DEFAULT
+                && notification.extras.getBoolean(Notification.EXTRA_COLORIZED, false)
+                && canChangeCardBackgroundColor(theme, alertEntry.getClassification());
+
+        StyleKey key = new StyleKey(theme, color, hasCustomBackgroundColor);
+        CardStyle style = mStyles.get(key);
+        if (style == null) {
+            style = new CardStyle(theme, color, hasCustomBackgroundColor);
+            mStyles.put(key, style);
+        }
+        return style;
+    }
+
+    /**
+     * Resolves the card styles of the notifications ahead of binding them. Meant to be called off
+     * the main thread.
+     */
+    public void prefetch(Theme theme, List<NotificationGroup> notificationGroups) {
+        for (NotificationGroup notificationGroup : notificationGroups) {
+            AlertEntry groupSummary = notificationGroup.getGroupSummaryNotification();
+            if (groupSummary != null) {
+                resolve(theme, groupSummary, /* isInGroup= */ false);
+            }
+            for (AlertEntry alertEntry : notificationGroup.getChildNotifications()) {
+                prefetch(theme, alertEntry);
+            }
+        }
+    }
+
+    /**
+     * Resolves the card style of the notification ahead of binding it. Meant to be called off the
+     * main thread.
+     */
+    public void prefetch(Theme theme, AlertEntry alertEntry) {
+        resolve(theme, alertEntry, /* isInGroup= */ false);
+    }
+
+    private boolean canChangeCardBackgroundColor(Theme theme,
+            NotificationClassification classification) {
+        // A package that is signed with the platform key passes both trust checks.
+        int trustLevel = classification.getTrustLevel(mContext);
+
+        boolean isSystemApp = theme.mEnableCardBackgroundColorForSystemApp
+                && trustLevel >= NotificationClassification.TRUST_SYSTEM;
+        boolean isSignedWithPlatformKey =
+                trustLevel == NotificationClassification.TRUST_PLATFORM_KEY;
+        boolean isNavigationCategory = theme.mEnableCardBackgroundColorForCategoryNavigation
+                && classification.getCategory() == NotificationClassification.Category.NAVIGATION;
+        return isSystemApp || isNavigationCategory || isSignedWithPlatformKey;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.notification;
+
+import android.annotation.ColorInt;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size memo table of the contrast color searches of {@link NotificationUtils}.
+ *
+ * <p> Apps color their notifications with a handful of brand colors and the cards use a handful
+ * of theme colors, so the same foreground and background pairs are searched over and over again.
+ * The table is direct mapped on the pair packed into a {@code long}: a pair that maps to an
+ * occupied slot replaces its entry. Entries are immutable and slots are replaced atomically, so
+ * the table may be used from any thread without locking; two threads missing on the same pair
+ * both run the search and store the same result.
+ */
+class ContrastColorCache {
+    private static final String TAG = "ContrastColorCache";
+    /** 2^64 divided by the golden ratio, spreads the packed colors over the table. */
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    /** Finds a foreground color with enough contrast against a background color. */
+    interface Solver {
+        @ColorInt
+        int solve(@ColorInt int foregroundColor, @ColorInt int backgroundColor);
+    }
+
+    private static final class Entry {
+        private final long mKey;
+        @ColorInt
+        private final int mColor;
+
+        Entry(long key, @ColorInt int color) {
+            mKey = key;
+            mColor = color;
+        }
+    }
+
+    private final Solver mSolver;
+    private final AtomicReferenceArray<Entry> mEntries;
+    private final int mHashShift;
+    private final LongAdder mHitCount = new LongAdder();
+    private final LongAdder mMissCount = new LongAdder();
+
+    /**
+     * @param size the number of slots of the table, a power of two.
+     */
+    ContrastColorCache(int size, Solver solver) {
+        if (size <= 0 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("size must be a power of two: " + size);
+        }
+        mSolver = solver;
+        mEntries = new AtomicReferenceArray<>(size);
+        mHashShift = Long.SIZE - Integer.numberOfTrailingZeros(size);
+    }
+
+    /**
+     * Returns the result of the {@link Solver} for the pair of colors, searching only if the pair
+     * is not in the table.
+     */
+    @ColorInt
+    int get(@ColorInt int foregroundColor, @ColorInt int backgroundColor) {
+        long key = ((long) foregroundColor << 32) | (backgroundColor & 0xFFFFFFFFL);
+        int index = getIndex(key);
+        Entry entry = mEntries.get(index);
+        if (entry != null && entry.mKey == key) {
+            mHitCount.increment();
+            return entry.mColor;
+        }
+        mMissCount.increment();
+        int color = mSolver.solve(foregroundColor, backgroundColor);
+        mEntries.set(index, new Entry(key, color));
+        return color;
+    }
+
+    /** Returns the number of lookups that were answered from the table. */
+    long getHitCount() {
+        return mHitCount.sum();
+    }
+
+    /** Returns the number of lookups that required a search. */
+    long getMissCount() {
+        return mMissCount.sum();
+    }
+
+    /** Prints the state of the cache. */
+    void dump(PrintWriter pw) {
+        long hits = getHitCount();
+        long misses = getMissCount();
+        long lookups = hits + misses;
+        pw.println(TAG + ":");
+        pw.println("  size=" + mEntries.length() + " hits=" + hits + " misses=" + misses
+                + " hitRate=" + (lookups == 0 ? 0 : hits * 100 / lookups) + "%");
+    }
+
+    private int getIndex(long key) {
+        if (mHashShift == Long.SIZE) {
+            // A single slot; shifting a long by 64 is a no-op in Java.
+            return 0;
+        }
+        return (int) ((key * HASH_MULTIPLIER) >>> mHashShift);
+    }
+}
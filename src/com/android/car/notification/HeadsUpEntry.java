@@ -18,38 +18,32 @@ package com.android.car.notification;
 
 import android.app.Notification;
 import android.os.Bundle;
-import android.os.Handler;
 import android.service.notification.StatusBarNotification;
 import android.view.View;
+import android.view.ViewTreeObserver.OnGlobalLayoutListener;
 
 import com.android.car.notification.template.CarNotificationBaseViewHolder;
 
 /**
  * Class to store the state for Heads Up Notifications. Each notification will have its own post
- * time, handler, and Layout. This class ensures to store it as a separate state so that each Heads
- * up notification can be controlled independently.
+ * time and Layout. This class ensures to store it as a separate state so that each Heads up
+ * notification can be controlled independently.
  */
 public class HeadsUpEntry extends AlertEntry {
 
-    private final Handler mHandler;
     private View mNotificationView;
     private CarNotificationBaseViewHolder mCarNotificationBaseViewHolder;
+    private CarNotificationTypeItem mNotificationTypeItem;
+    private AlertEntry mAlertEntry;
+    private OnGlobalLayoutListener mOnGlobalLayoutListener;
 
     boolean mIsAlertAgain;
     boolean mIsNewHeadsUp;
+    boolean mIsRemovalScheduled;
 
     HeadsUpEntry(StatusBarNotification statusBarNotification) {
         super(statusBarNotification);
-        mHandler = new Handler();
-    }
-
-    /**
-     * Handler will use the method {@link Handler#postDelayed(Runnable, long)} which will control
-     * the dismiss time for the Heads Up notification. All the notifications should have their own
-     * handler to control this time individually.
-     */
-    Handler getHandler() {
-        return mHandler;
+        mAlertEntry = this;
     }
 
     /**
@@ -70,4 +64,38 @@ public class HeadsUpEntry extends AlertEntry {
     CarNotificationBaseViewHolder getViewHolder() {
         return mCarNotificationBaseViewHolder;
     }
+
+    /**
+     * Type of the template that the notification view was inflated from.
+     */
+    void setNotificationTypeItem(CarNotificationTypeItem notificationTypeItem) {
+        mNotificationTypeItem = notificationTypeItem;
+    }
+
+    CarNotificationTypeItem getNotificationTypeItem() {
+        return mNotificationTypeItem;
+    }
+
+    /**
+     * Latest version of the notification that is shown by this heads up notification.
+     */
+    void setAlertEntry(AlertEntry alertEntry) {
+        mAlertEntry = alertEntry;
+    }
+
+    AlertEntry getAlertEntry() {
+        return mAlertEntry;
+    }
+
+    /**
+     * Listener that animates the notification view in after its first layout, {@code null} if
+     * there is none or it has already run.
+     */
+    void setOnGlobalLayoutListener(OnGlobalLayoutListener onGlobalLayoutListener) {
+        mOnGlobalLayoutListener = onGlobalLayoutListener;
+    }
+
+    OnGlobalLayoutListener getOnGlobalLayoutListener() {
+        return mOnGlobalLayoutListener;
+    }
 }
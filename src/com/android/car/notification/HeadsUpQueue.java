@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.notification;
+
+import android.annotation.Nullable;
+import android.app.Notification;
+import android.service.notification.NotificationListenerService;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Heads-up notifications that are waiting for a free slot on the screen, highest priority first.
+ *
+ * <p> Notifications are ordered by the priority of their category (car emergency, call,
+ * navigation, message, then everything else), then by importance, then by the order in which
+ * they were queued. A notification that waits longer than the maximum wait time is stale and
+ * should be shown in the notification center instead. Must be used on the main thread.
+ */
+class HeadsUpQueue {
+    static final int PRIORITY_OTHER = 0;
+    static final int PRIORITY_MESSAGE = 1;
+    static final int PRIORITY_NAVIGATION = 2;
+    static final int PRIORITY_CALL = 3;
+    static final int PRIORITY_EMERGENCY = 4;
+
+    private static final Comparator<PendingHeadsUp> COMPARATOR =
+            Comparator.<PendingHeadsUp>comparingInt(pending -> pending.mPriority).reversed()
+                    .thenComparing(Comparator.<PendingHeadsUp>comparingInt(
+                            pending -> pending.mImportance).reversed())
+                    .thenComparingLong(pending -> pending.mSequence);
+
+    private final long mMaxWaitMs;
+    private final PriorityQueue<PendingHeadsUp> mQueue = new PriorityQueue<>(COMPARATOR);
+    private final Map<String, PendingHeadsUp> mPendingByKey = new HashMap<>();
+    private long mNextSequence;
+
+    /**
+     * A heads-up notification that is waiting to be shown.
+     */
+    static final class PendingHeadsUp {
+        private final AlertEntry mAlertEntry;
+        private final NotificationListenerService.RankingMap mRankingMap;
+        private final int mPriority;
+        private final int mImportance;
+        private final long mSequence;
+        private final long mDeadline;
+
+        private PendingHeadsUp(AlertEntry alertEntry,
+                NotificationListenerService.RankingMap rankingMap, int importance, long sequence,
+                long deadline) {
+            mAlertEntry = alertEntry;
+            mRankingMap = rankingMap;
+            mPriority = getPriority(alertEntry);
+            mImportance = importance;
+            mSequence = sequence;
+            mDeadline = deadline;
+        }
+
+        AlertEntry getAlertEntry() {
+            return mAlertEntry;
+        }
+
+        NotificationListenerService.RankingMap getRankingMap() {
+            return mRankingMap;
+        }
+    }
+
+    /**
+     * @param maxWaitMs time after which a queued notification is stale.
+     */
+    HeadsUpQueue(long maxWaitMs) {
+        mMaxWaitMs = maxWaitMs;
+    }
+
+    /**
+     * Returns the priority of the category of the notification, higher is more urgent.
+     */
+    static int getPriority(AlertEntry alertEntry) {
+        String category = alertEntry.getNotification().category;
+        if (category == null) {
+            return PRIORITY_OTHER;
+        }
+        switch (category) {
+            case Notification.CATEGORY_CAR_EMERGENCY:
+                return PRIORITY_EMERGENCY;
+            case Notification.CATEGORY_CALL:
+                return PRIORITY_CALL;
+            case Notification.CATEGORY_NAVIGATION:
+                return PRIORITY_NAVIGATION;
+            case Notification.CATEGORY_MESSAGE:
+                return PRIORITY_MESSAGE;
+            default:
+                return PRIORITY_OTHER;
+        }
+    }
+
+    /**
+     * Queues the notification. An update of a notification that is already queued replaces it
+     * and keeps its place in the order of arrival and its deadline.
+     */
+    void add(AlertEntry alertEntry, NotificationListenerService.RankingMap rankingMap,
+            int importance, long now) {
+        PendingHeadsUp old = mPendingByKey.remove(alertEntry.getKey());
+        PendingHeadsUp pending;
+        if (old != null) {
+            mQueue.remove(old);
+            pending = new PendingHeadsUp(alertEntry, rankingMap, importance, old.mSequence,
+                    old.mDeadline);
+        } else {
+            pending = new PendingHeadsUp(alertEntry, rankingMap, importance, mNextSequence++,
+                    now + mMaxWaitMs);
+        }
+        mQueue.add(pending);
+        mPendingByKey.put(alertEntry.getKey(), pending);
+    }
+
+    /**
+     * Removes and returns the notification with the highest priority, or {@code null} if the
+     * queue is empty.
+     */
+    @Nullable
+    PendingHeadsUp poll() {
+        PendingHeadsUp pending = mQueue.poll();
+        if (pending != null) {
+            mPendingByKey.remove(pending.mAlertEntry.getKey());
+        }
+        return pending;
+    }
+
+    /**
+     * Removes the notification with the given key.
+     *
+     * @return {@code true} if the notification was queued.
+     */
+    boolean remove(String key) {
+        PendingHeadsUp pending = mPendingByKey.remove(key);
+        if (pending == null) {
+            return false;
+        }
+        mQueue.remove(pending);
+        return true;
+    }
+
+    boolean contains(String key) {
+        return mPendingByKey.containsKey(key);
+    }
+
+    int size() {
+        return mQueue.size();
+    }
+
+    /**
+     * Removes and returns the notifications that have waited longer than the maximum wait time.
+     */
+    List<PendingHeadsUp> removeStale(long now) {
+        List<PendingHeadsUp> stale = new ArrayList<>();
+        for (PendingHeadsUp pending : mPendingByKey.values()) {
+            if (pending.mDeadline <= now) {
+                stale.add(pending);
+            }
+        }
+        for (int i = 0; i < stale.size(); i++) {
+            remove(stale.get(i).mAlertEntry.getKey());
+        }
+        return stale;
+    }
+
+    /**
+     * Returns the time at which the next queued notification becomes stale, or
+     * {@link Long#MAX_VALUE} if the queue is empty.
+     */
+    long getNextDeadline() {
+        long nextDeadline = Long.MAX_VALUE;
+        for (PendingHeadsUp pending : mPendingByKey.values()) {
+            nextDeadline = Math.min(nextDeadline, pending.mDeadline);
+        }
+        return nextDeadline;
+    }
+
+    void dump(PrintWriter pw) {
+        pw.println("HeadsUpQueue: " + mQueue.size() + " queued, maxWaitMs=" + mMaxWaitMs);
+        PriorityQueue<PendingHeadsUp> copy = new PriorityQueue<>(mQueue);
+        while (!copy.isEmpty()) {
+            PendingHeadsUp pending = copy.poll();
+            pw.println("  " + pending.mAlertEntry.getKey() + " priority=" + pending.mPriority
+                    + " importance=" + pending.mImportance + " deadline=" + pending.mDeadline);
+        }
+    }
+}
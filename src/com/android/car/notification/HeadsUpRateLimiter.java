@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.notification;
+
+import android.app.Notification;
+import android.content.Context;
+import android.os.SystemClock;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits how often new heads-up notifications can be shown, per package and per category.
+ *
+ * <p> Every package and every category has a token bucket: showing a heads-up notification takes
+ * a token from both buckets of the notification, and each bucket gets a token back at a fixed
+ * interval up to its capacity. A notification that finds either bucket empty is not shown as a
+ * heads-up. Calls, car emergencies, navigation and messages are never limited. Must be used on the
+ * main thread.
+ */
+class HeadsUpRateLimiter {
+    /** Bucket key of the notifications that do not have a category. */
+    private static final String NO_CATEGORY = "none";
+
+    private final int mPackageCapacity;
+    private final long mPackageRefillIntervalMs;
+    private final int mCategoryCapacity;
+    private final long mCategoryRefillIntervalMs;
+    private final LongSupplier mClock;
+    private final Map<String, TokenBucket> mPackageBuckets = new HashMap<>();
+    private final Map<String, TokenBucket> mCategoryBuckets = new HashMap<>();
+    /** Number of heads-up notifications that were dropped, per package. */
+    private final Map<String, Integer> mDropCounts = new HashMap<>();
+    private int mTotalDropCount;
+
+    private static final class TokenBucket {
+        private final int mCapacity;
+        private final long mRefillIntervalMs;
+        private int mTokens;
+        private long mLastRefillTime;
+
+        TokenBucket(int capacity, long refillIntervalMs, long now) {
+            mCapacity = capacity;
+            mRefillIntervalMs = refillIntervalMs;
+            mTokens = capacity;
+            mLastRefillTime = now;
+        }
+
+        boolean hasToken(long now) {
+            long refills = (now - mLastRefillTime) / mRefillIntervalMs;
+            if (refills > 0) {
+                mTokens = (int) Math.min(mCapacity, mTokens + refills);
+                // Keep the remainder so that a token is due a full interval after the last one.
+                mLastRefillTime = mTokens == mCapacity ? now
+                        : mLastRefillTime + refills * mRefillIntervalMs;
+            }
+            return mTokens > 0;
+        }
+
+        void take() {
+            mTokens--;
+        }
+    }
+
+    HeadsUpRateLimiter(Context context) {
+        this(context.getResources().getInteger(R.integer.headsup_rate_limit_package_capacity),
+                context.getResources().getInteger(
+                        R.integer.headsup_rate_limit_package_refill_interval_ms),
+                context.getResources().getInteger(R.integer.headsup_rate_limit_category_capacity),
+                context.getResources().getInteger(
+                        R.integer.headsup_rate_limit_category_refill_interval_ms),
+                SystemClock::uptimeMillis);
+    }
+
+    /**
+     * A capacity of 0 or less turns off the corresponding limit.
+     */
+    @VisibleForTesting
+    HeadsUpRateLimiter(int packageCapacity, long packageRefillIntervalMs, int categoryCapacity,
+            long categoryRefillIntervalMs, LongSupplier clock) {
+        mPackageCapacity = packageCapacity;
+        mPackageRefillIntervalMs = Math.max(1, packageRefillIntervalMs);
+        mCategoryCapacity = categoryCapacity;
+        mCategoryRefillIntervalMs = Math.max(1, categoryRefillIntervalMs);
+        mClock = clock;
+    }
+
+    /**
+     * Takes a token for the notification if it can be shown as a heads-up.
+     *
+     * @return {@code false} if the package or the category of the notification is over its limit,
+     * in which case the drop is counted.
+     */
+    boolean tryAcquire(AlertEntry alertEntry) {
+        String category = alertEntry.getNotification().category;
+        if (isExempt(category)) {
+            return true;
+        }
+
+        long now = mClock.getAsLong();
+        String packageName = alertEntry.getStatusBarNotification().getPackageName();
+        TokenBucket packageBucket = mPackageCapacity > 0
+                ? getBucket(mPackageBuckets, packageName, mPackageCapacity,
+                        mPackageRefillIntervalMs, now)
+                : null;
+        TokenBucket categoryBucket = mCategoryCapacity > 0
+                ? getBucket(mCategoryBuckets, category == null ? NO_CATEGORY : category,
+                        mCategoryCapacity, mCategoryRefillIntervalMs, now)
+                : null;
+
+        // Check both buckets before taking from either, so that a drop does not use up a token.
+        if ((packageBucket != null && !packageBucket.hasToken(now))
+                || (categoryBucket != null && !categoryBucket.hasToken(now))) {
+            mDropCounts.merge(packageName, 1, Integer::sum);
+            mTotalDropCount++;
+            return false;
+        }
+        if (packageBucket != null) {
+            packageBucket.take();
+        }
+        if (categoryBucket != null) {
+            categoryBucket.take();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of heads-up notifications of the package that were dropped.
+     */
+    @VisibleForTesting
+    int getDropCount(String packageName) {
+        return mDropCounts.getOrDefault(packageName, 0);
+    }
+
+    /**
+     * Prints the drop counters, most dropped packages first.
+     */
+    void dump(PrintWriter pw) {
+        pw.println("HeadsUpRateLimiter:");
+        pw.println("  packageCapacity=" + mPackageCapacity
+                + " packageRefillIntervalMs=" + mPackageRefillIntervalMs
+                + " categoryCapacity=" + mCategoryCapacity
+                + " categoryRefillIntervalMs=" + mCategoryRefillIntervalMs);
+        pw.println("  dropped=" + mTotalDropCount);
+        mDropCounts.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .forEach(entry -> pw.println("  " + entry.getKey() + ": " + entry.getValue()));
+    }
+
+    private static boolean isExempt(String category) {
+        return Notification.CATEGORY_CALL.equals(category)
+                || Notification.CATEGORY_CAR_EMERGENCY.equals(category)
+                || Notification.CATEGORY_NAVIGATION.equals(category)
+                || Notification.CATEGORY_MESSAGE.equals(category);
+    }
+
+    private static TokenBucket getBucket(Map<String, TokenBucket> buckets, String key,
+            int capacity, long refillIntervalMs, long now) {
+        TokenBucket bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = new TokenBucket(capacity, refillIntervalMs, now);
+            buckets.put(key, bucket);
+        }
+        return bucket;
+    }
+}
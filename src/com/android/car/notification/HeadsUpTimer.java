@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.notification;
+
+import android.os.Handler;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Runs the timed actions of the heads-up notifications, such as auto-dismiss, on a single
+ * {@link Handler}.
+ *
+ * <p> Every key has at most one pending action. Deadlines are kept in a map and only the earliest
+ * one is posted to the handler, so that moving a deadline, which happens on every rotary focus
+ * change of a heads-up notification, does not post anything unless it becomes the earliest one.
+ * Times are taken from a monotonic clock such as {@link android.os.SystemClock#uptimeMillis}.
+ * Must be used on the thread of the handler.
+ */
+class HeadsUpTimer {
+    private final Handler mHandler;
+    private final LongSupplier mClock;
+    private final Map<String, Deadline> mDeadlines = new HashMap<>();
+    private final Runnable mWakeUp = this::onWakeUp;
+    /** Time at which {@link #mWakeUp} is posted, {@link Long#MAX_VALUE} if it is not posted. */
+    private long mWakeUpTime = Long.MAX_VALUE;
+
+    private static final class Deadline {
+        private final long mTime;
+        private final Runnable mAction;
+
+        Deadline(long time, Runnable action) {
+            mTime = time;
+            mAction = action;
+        }
+    }
+
+    HeadsUpTimer(Handler handler, LongSupplier clock) {
+        mHandler = handler;
+        mClock = clock;
+    }
+
+    /**
+     * Runs the action after the delay, replacing the pending action of the key if any.
+     */
+    void schedule(String key, long delayMs, Runnable action) {
+        long time = mClock.getAsLong() + delayMs;
+        mDeadlines.put(key, new Deadline(time, action));
+        if (time < mWakeUpTime) {
+            postWakeUp(time);
+        }
+    }
+
+    /**
+     * Cancels the pending action of the key, if any.
+     */
+    void cancel(String key) {
+        // The wake up is left in place; it finds nothing to run and posts the next one.
+        mDeadlines.remove(key);
+    }
+
+    boolean isScheduled(String key) {
+        return mDeadlines.containsKey(key);
+    }
+
+    /**
+     * Prints the pending deadlines relative to now.
+     */
+    void dump(PrintWriter pw) {
+        long now = mClock.getAsLong();
+        pw.println("HeadsUpTimer: " + mDeadlines.size() + " pending");
+        for (Map.Entry<String, Deadline> entry : mDeadlines.entrySet()) {
+            pw.println("  " + entry.getKey() + " in " + (entry.getValue().mTime - now) + "ms");
+        }
+    }
+
+    private void onWakeUp() {
+        mWakeUpTime = Long.MAX_VALUE;
+        long now = mClock.getAsLong();
+        List<Map.Entry<String, Deadline>> due = new ArrayList<>();
+        for (Map.Entry<String, Deadline> entry : mDeadlines.entrySet()) {
+            if (entry.getValue().mTime <= now) {
+                due.add(entry);
+            }
+        }
+        for (int i = 0; i < due.size(); i++) {
+            mDeadlines.remove(due.get(i).getKey());
+        }
+        for (int i = 0; i < due.size(); i++) {
+            due.get(i).getValue().mAction.run();
+        }
+
+        long next = Long.MAX_VALUE;
+        for (Deadline deadline : mDeadlines.values()) {
+            next = Math.min(next, deadline.mTime);
+        }
+        if (next != Long.MAX_VALUE && next < mWakeUpTime) {
+            postWakeUp(next);
+        }
+    }
+
+    private void postWakeUp(long time) {
+        mHandler.removeCallbacks(mWakeUp);
+        mWakeUpTime = time;
+        mHandler.postAtTime(mWakeUp, time);
+    }
+}
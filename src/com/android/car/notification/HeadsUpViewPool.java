@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.car.notification;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.view.LayoutInflater;
+import android.view.View;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.android.car.notification.template.CarNotificationBaseViewHolder;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Pool of inflated heads-up notification views and their view holders, kept per
+ * {@link CarNotificationTypeItem}.
+ *
+ * <p> Inflating the heads-up template is the most expensive part of showing a new heads-up
+ * notification. Views are returned to the pool once their heads-up notification has been removed
+ * from the screen, and the pool is warmed up for the most common types while the main thread is
+ * idle. Must be used on the main thread.
+ */
+class HeadsUpViewPool {
+
+    /** Types for which views are inflated ahead of time. */
+    private static final CarNotificationTypeItem[] WARM_UP_TYPES = {
+            CarNotificationTypeItem.MESSAGE,
+            CarNotificationTypeItem.CALL,
+            CarNotificationTypeItem.NAVIGATION,
+            CarNotificationTypeItem.BASIC
+    };
+
+    /** An inflated heads-up view and the view holder that binds it. */
+    static final class PooledView {
+        private final View mView;
+        private final CarNotificationBaseViewHolder mViewHolder;
+
+        PooledView(View view, CarNotificationBaseViewHolder viewHolder) {
+            mView = view;
+            mViewHolder = viewHolder;
+        }
+
+        View getView() {
+            return mView;
+        }
+
+        CarNotificationBaseViewHolder getViewHolder() {
+            return mViewHolder;
+        }
+    }
+
+    private final LayoutInflater mInflater;
+    private final int mMaxPoolSize;
+    private final Map<CarNotificationTypeItem, ArrayDeque<PooledView>> mPool =
+            new EnumMap<>(CarNotificationTypeItem.class);
+
+    private NotificationClickHandlerFactory mClickHandlerFactory;
+    private int mHitCount;
+    private int mMissCount;
+    private int mWarmUpIndex;
+
+    private final MessageQueue.IdleHandler mWarmUpHandler = this::warmUpNext;
+
+    HeadsUpViewPool(LayoutInflater inflater, NotificationClickHandlerFactory clickHandlerFactory,
+            int maxPoolSize) {
+        mInflater = inflater;
+        mClickHandlerFactory = clickHandlerFactory;
+        mMaxPoolSize = maxPoolSize;
+    }
+
+    /**
+     * Starts inflating views for the common notification types whenever the main thread is idle.
+     */
+    void warmUp() {
+        if (mMaxPoolSize <= 0) {
+            return;
+        }
+        mWarmUpIndex = 0;
+        Looper.myQueue().removeIdleHandler(mWarmUpHandler);
+        Looper.myQueue().addIdleHandler(mWarmUpHandler);
+    }
+
+    /**
+     * Inflates the next missing warm up view. Returns {@code false} once the pools of all warm up
+     * types are full.
+     */
+    @VisibleForTesting
+    boolean warmUpNext() {
+        // Inflate one view per idle callback so that the main thread is never blocked for long.
+        while (mWarmUpIndex < WARM_UP_TYPES.length * mMaxPoolSize) {
+            CarNotificationTypeItem typeItem = WARM_UP_TYPES[mWarmUpIndex % WARM_UP_TYPES.length];
+            mWarmUpIndex++;
+            if (getPoolSize(typeItem) < mMaxPoolSize) {
+                getPool(typeItem).push(inflate(typeItem));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a view for the type, either from the pool or newly inflated.
+     */
+    PooledView acquire(CarNotificationTypeItem typeItem) {
+        ArrayDeque<PooledView> pool = mPool.get(typeItem);
+        if (pool != null && !pool.isEmpty()) {
+            mHitCount++;
+            return pool.pop();
+        }
+        mMissCount++;
+        return inflate(typeItem);
+    }
+
+    /**
+     * Returns a view that is no longer shown to the pool. The view is dropped if the pool of its
+     * type is full.
+     */
+    void release(CarNotificationTypeItem typeItem, View view,
+            CarNotificationBaseViewHolder viewHolder) {
+        if (getPoolSize(typeItem) >= mMaxPoolSize || view.getParent() != null) {
+            return;
+        }
+        // Undo the changes made by the heads-up animations and the swipe gesture.
+        view.animate().cancel();
+        view.setAlpha(1f);
+        view.setTranslationX(0f);
+        view.setTranslationY(0f);
+        View cardView = view.findViewById(R.id.card_view);
+        if (cardView != null) {
+            cardView.setAlpha(1f);
+            cardView.setTranslationX(0f);
+            cardView.setTranslationY(0f);
+        }
+        getPool(typeItem).push(new PooledView(view, viewHolder));
+    }
+
+    /**
+     * Sets the click handler factory of the view holders that are created from now on and drops
+     * the pooled views that use the previous one.
+     */
+    void setClickHandlerFactory(NotificationClickHandlerFactory clickHandlerFactory) {
+        mClickHandlerFactory = clickHandlerFactory;
+        mPool.clear();
+    }
+
+    /** Returns the number of views that were taken from the pool. */
+    int getHitCount() {
+        return mHitCount;
+    }
+
+    /** Returns the number of views that had to be inflated on demand. */
+    int getMissCount() {
+        return mMissCount;
+    }
+
+    @VisibleForTesting
+    int getPoolSize(CarNotificationTypeItem typeItem) {
+        ArrayDeque<PooledView> pool = mPool.get(typeItem);
+        return pool == null ? 0 : pool.size();
+    }
+
+    /** Prints the state of the pool. */
+    void dump(PrintWriter pw) {
+        int total = mHitCount + mMissCount;
+        pw.println("HeadsUpViewPool:");
+        pw.println("  maxPoolSize=" + mMaxPoolSize + " hits=" + mHitCount
+                + " misses=" + mMissCount
+                + " hitRate=" + (total == 0 ? 0 : mHitCount * 100 / total) + "%");
+        for (Map.Entry<CarNotificationTypeItem, ArrayDeque<PooledView>> entry
+                : mPool.entrySet()) {
+            pw.println("  " + entry.getKey() + ": " + entry.getValue().size() + " pooled");
+        }
+    }
+
+    private ArrayDeque<PooledView> getPool(CarNotificationTypeItem typeItem) {
+        ArrayDeque<PooledView> pool = mPool.get(typeItem);
+        if (pool == null) {
+            pool = new ArrayDeque<>(mMaxPoolSize);
+            mPool.put(typeItem, pool);
+        }
+        return pool;
+    }
+
+    private PooledView inflate(CarNotificationTypeItem typeItem) {
+        View view = mInflater.inflate(typeItem.getHeadsUpTemplate(), /* root= */ null);
+        return new PooledView(view, typeItem.getViewHolder(view, mClickHandlerFactory));
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.notification;
+
+import android.app.Notification;
+import android.content.Context;
+import android.os.Bundle;
+import android.service.notification.StatusBarNotification;
+
+import com.android.car.assist.client.CarAssistUtils;
+
+/**
+ * The facts about a posted notification that the notification center, the heads-up notifications
+ * and the click handlers need over and over again, e.g. its view type and whether it is a car
+ * compatible messaging notification.
+ *
+ * <p> A {@link StatusBarNotification} is not modified once it is posted, and an update of a
+ * notification is posted as a new {@link StatusBarNotification}, so these facts are computed once
+ * per {@link AlertEntry}. They are classified when the notification is received, see
+ * {@link AlertEntry#getClassification}.
+ *
+ * <p> The trust level of the posting package needs a {@link Context}; it is resolved the first
+ * time it is requested and kept from then on.
+ */
+public final class NotificationClassification {
+
+    /** The category of the notification as far as the car UI is concerned. */
+    public enum Category {
+        CAR_EMERGENCY,
+        CALL,
+        NAVIGATION,
+        CAR_WARNING,
+        CAR_INFORMATION,
+        MESSAGE,
+        OTHER
+    }
+
+    /** The trust level has not been resolved yet. */
+    private static final int TRUST_UNKNOWN = -1;
+    /** The package is neither a system app nor signed with the platform key. */
+    public static final int TRUST_NONE = 0;
+    /** The package is a system app that is not privileged. */
+    public static final int TRUST_SYSTEM = 1;
+    /** The package is a privileged system app. */
+    public static final int TRUST_SYSTEM_PRIVILEGED = 2;
+    /** The package is signed with the platform key. */
+    public static final int TRUST_PLATFORM_KEY = 3;
+
+    private final String mPackageName;
+    private final Category mCategory;
+    private final CarNotificationTypeItem mHeadsUpType;
+    @NotificationViewType
+    private final int mPanelViewType;
+    private final boolean mIsCarCompatibleMessaging;
+    private final boolean mIsProgress;
+    private final boolean mIsInbox;
+    private volatile int mTrustLevel = TRUST_UNKNOWN;
+
+    private NotificationClassification(StatusBarNotification statusBarNotification) {
+        Notification notification = statusBarNotification.getNotification();
+        Bundle extras = notification.extras;
+        mPackageName = statusBarNotification.getPackageName();
+        mCategory = getCategory(notification.category);
+        mIsCarCompatibleMessaging =
+                CarAssistUtils.isCarCompatibleMessagingNotification(statusBarNotification);
+
+        int progressMax = extras.getInt(Notification.EXTRA_PROGRESS_MAX);
+        boolean isIndeterminate = extras.getBoolean(Notification.EXTRA_PROGRESS_INDETERMINATE);
+        boolean hasValidProgress = isIndeterminate || progressMax != 0;
+        mIsProgress = extras.containsKey(Notification.EXTRA_PROGRESS)
+                && extras.containsKey(Notification.EXTRA_PROGRESS_MAX)
+                && hasValidProgress
+                && !notification.hasCompletedProgress();
+        mIsInbox = extras.containsKey(Notification.EXTRA_TITLE_BIG)
+                && extras.containsKey(Notification.EXTRA_SUMMARY_TEXT);
+
+        mHeadsUpType = getHeadsUpType(mCategory, extras);
+        mPanelViewType = getPanelViewType(mCategory, mIsProgress, mIsInbox);
+    }
+
+    /**
+     * Classifies the notification.
+     */
+    static NotificationClassification classify(StatusBarNotification statusBarNotification) {
+        return new NotificationClassification(statusBarNotification);
+    }
+
+    public Category getCategory() {
+        return mCategory;
+    }
+
+    /**
+     * Returns the template of the notification when it is shown as a heads-up notification.
+     */
+    public CarNotificationTypeItem getHeadsUpType() {
+        return mHeadsUpType;
+    }
+
+    /**
+     * Returns the view type of the notification when it is shown on its own in the notification
+     * center, i.e. not as a child of a group. Notifications that are shown with the basic
+     * template return {@link NotificationViewType#BASIC}; whether they are shown as a group
+     * summary depends on the other notifications of the group.
+     */
+    @NotificationViewType
+    public int getPanelViewType() {
+        return mPanelViewType;
+    }
+
+    /**
+     * See {@link CarAssistUtils#isCarCompatibleMessagingNotification}.
+     */
+    public boolean isCarCompatibleMessaging() {
+        return mIsCarCompatibleMessaging;
+    }
+
+    /**
+     * Returns {@code true} if the notification shows a progress that has not completed yet.
+     */
+    public boolean isProgress() {
+        return mIsProgress;
+    }
+
+    /**
+     * Returns {@code true} if the notification uses the inbox style.
+     */
+    public boolean isInbox() {
+        return mIsInbox;
+    }
+
+    /**
+     * Returns the trust level of the package that posted the notification, one of
+     * {@link #TRUST_NONE}, {@link #TRUST_SYSTEM}, {@link #TRUST_SYSTEM_PRIVILEGED} and
+     * {@link #TRUST_PLATFORM_KEY}. Each level implies the trust of the levels below it.
+     */
+    public int getTrustLevel(Context context) {
+        int trustLevel = mTrustLevel;
+        if (trustLevel == TRUST_UNKNOWN) {
+            trustLevel = resolveTrustLevel(PackageTrustCache.getInstance(context), mPackageName);
+            mTrustLevel = trustLevel;
+        }
+        return trustLevel;
+    }
+
+    /**
+     * Returns {@code true} if the package that posted the notification is signed with the
+     * platform key or is a privileged system app.
+     */
+    public boolean isSystemPrivilegedOrPlatformKey(Context context) {
+        return getTrustLevel(context) >= TRUST_SYSTEM_PRIVILEGED;
+    }
+
+    private static int resolveTrustLevel(PackageTrustCache packageTrustCache,
+            String packageName) {
+        if (packageTrustCache.isSignedWithPlatformKey(packageName)) {
+            return TRUST_PLATFORM_KEY;
+        }
+        if (!packageTrustCache.isSystemApp(packageName)) {
+            return TRUST_NONE;
+        }
+        return packageTrustCache.isPrivilegedApp(packageName)
+                ? TRUST_SYSTEM_PRIVILEGED : TRUST_SYSTEM;
+    }
+
+    private static Category getCategory(String category) {
+        if (category == null) {
+            return Category.OTHER;
+        }
+        switch (category) {
+            case Notification.CATEGORY_CAR_EMERGENCY:
+                return Category.CAR_EMERGENCY;
+            case Notification.CATEGORY_CALL:
+                return Category.CALL;
+            case Notification.CATEGORY_NAVIGATION:
+                return Category.NAVIGATION;
+            case Notification.CATEGORY_CAR_WARNING:
+                return Category.CAR_WARNING;
+            case Notification.CATEGORY_CAR_INFORMATION:
+                return Category.CAR_INFORMATION;
+            case Notification.CATEGORY_MESSAGE:
+                return Category.MESSAGE;
+            default:
+                return Category.OTHER;
+        }
+    }
+
+    /**
+     * Note that the layout chosen can be different for the same notification in the
+     * notification center.
+     */
+    private static CarNotificationTypeItem getHeadsUpType(Category category, Bundle extras) {
+        switch (category) {
+            case CAR_EMERGENCY:
+                return CarNotificationTypeItem.EMERGENCY;
+            case NAVIGATION:
+                return CarNotificationTypeItem.NAVIGATION;
+            case CALL:
+                return CarNotificationTypeItem.CALL;
+            case CAR_WARNING:
+                return CarNotificationTypeItem.WARNING;
+            case CAR_INFORMATION:
+                return CarNotificationTypeItem.INFORMATION;
+            case MESSAGE:
+                return CarNotificationTypeItem.MESSAGE;
+            default:
+                break;
+        }
+        if (extras.containsKey(Notification.EXTRA_BIG_TEXT)
+                && extras.containsKey(Notification.EXTRA_SUMMARY_TEXT)) {
+            return CarNotificationTypeItem.INBOX;
+        }
+        // progress, media, big text, big picture, and basic templates
+        return CarNotificationTypeItem.BASIC;
+    }
+
+    @NotificationViewType
+    private static int getPanelViewType(Category category, boolean isProgress,
+            boolean isInbox) {
+        switch (category) {
+            case CALL:
+                return NotificationViewType.CALL;
+            case CAR_EMERGENCY:
+                return NotificationViewType.CAR_EMERGENCY;
+            case CAR_WARNING:
+                return NotificationViewType.CAR_WARNING;
+            case CAR_INFORMATION:
+                return NotificationViewType.CAR_INFORMATION;
+            case MESSAGE:
+                return NotificationViewType.MESSAGE;
+            default:
+                break;
+        }
+        if (isProgress) {
+            return NotificationViewType.PROGRESS;
+        }
+        if (isInbox) {
+            return NotificationViewType.INBOX;
+        }
+        // basic, big text, big picture
+        return NotificationViewType.BASIC;
+    }
+}
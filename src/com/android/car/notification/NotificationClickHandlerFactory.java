@@ -157,8 +157,7 @@ public class NotificationClickHandlerFactory {
                     /* rank= */ -1, /* count= */ -1, /* visible= */ true);
             boolean canceledExceptionThrown = false;
             int semanticAction = action.getSemanticAction();
-            if (CarAssistUtils.isCarCompatibleMessagingNotification(
-                    alertEntry.getStatusBarNotification())) {
+            if (alertEntry.getClassification().isCarCompatibleMessaging()) {
                 if (semanticAction == Notification.Action.SEMANTIC_ACTION_REPLY) {
                     Context context = v.getContext().getApplicationContext();
                     Intent resultIntent = addCannedReplyMessage(action, context);
@@ -199,8 +198,7 @@ public class NotificationClickHandlerFactory {
      */
     public View.OnClickListener getPlayClickHandler(AlertEntry messageNotification) {
         return view -> {
-            if (!CarAssistUtils.isCarCompatibleMessagingNotification(
-                    messageNotification.getStatusBarNotification())) {
+            if (!messageNotification.getClassification().isCarCompatibleMessaging()) {
                 return;
             }
             Context context = view.getContext().getApplicationContext();
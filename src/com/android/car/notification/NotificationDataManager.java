@@ -17,8 +17,6 @@ package com.android.car.notification;
 
 import android.util.Log;
 
-import com.android.car.assist.client.CarAssistUtils;
-
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -84,8 +82,7 @@ public class NotificationDataManager {
     }
 
     void addNewMessageNotification(AlertEntry alertEntry) {
-        if (CarAssistUtils.isCarCompatibleMessagingNotification(
-                alertEntry.getStatusBarNotification())) {
+        if (alertEntry.getClassification().isCarCompatibleMessaging()) {
             mMessageNotificationToMuteStateMap
                     .putIfAbsent(alertEntry.getKey(), /* muteState= */ false);
 
@@ -108,6 +105,16 @@ public class NotificationDataManager {
         }
     }
 
+    /**
+     * Tracks the notification as unseen if it is not tracked yet.
+     */
+    void trackUnseenNotification(AlertEntry alertEntry) {
+        if (mUnseenNotificationMap.putIfAbsent(alertEntry.getKey(), true) == null
+                && mOnUnseenCountUpdateListener != null) {
+            mOnUnseenCountUpdateListener.onUnseenCountUpdate();
+        }
+    }
+
     void updateUnseenNotification(List<NotificationGroup> notificationGroups) {
         Set<String> currentNotificationKeys = new HashSet<>();
 
@@ -151,8 +158,7 @@ public class NotificationDataManager {
      * It also determines the title of the notification's "Mute" button.
      **/
     public void toggleMute(AlertEntry alertEntry) {
-        if (CarAssistUtils.isCarCompatibleMessagingNotification(
-                alertEntry.getStatusBarNotification())) {
+        if (alertEntry.getClassification().isCarCompatibleMessaging()) {
             String sbnKey = alertEntry.getKey();
             Boolean currentMute = mMessageNotificationToMuteStateMap.get(sbnKey);
             if (currentMute != null) {
@@ -21,6 +21,7 @@ import android.app.Notification;
 import android.os.Bundle;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -31,11 +32,18 @@ import java.util.List;
  * <li>One group summary notification with no child notifications</li>
  * <li>A group of notifications with a group summary notification</li>
  * </ol>
+ *
+ * <p> A group can be frozen once it is complete. A frozen group cannot be modified, so a list of
+ * frozen groups that is handed to the adapter stays valid for diffing while newer lists are
+ * built. Newer lists share the groups that did not change and replace the others with modified
+ * copies, see {@link #NotificationGroup(NotificationGroup)}.
  */
 public class NotificationGroup {
 
     private String mGroupKey;
     private final List<AlertEntry> mNotifications = new ArrayList<>();
+    private final List<AlertEntry> mReadOnlyNotifications =
+            Collections.unmodifiableList(mNotifications);
     @Nullable
     private List<String> mChildTitles;
     @Nullable
@@ -43,6 +51,7 @@ public class NotificationGroup {
 
     private boolean mIsHeader;
     private boolean mIsFooter;
+    private boolean mIsFrozen;
 
     public NotificationGroup() {
     }
@@ -51,20 +60,88 @@ public class NotificationGroup {
         addNotification(alertEntry);
     }
 
+    /**
+     * Creates a shallow copy of the given notification group. The {@link AlertEntry}s are shared
+     * but the child list is not, so the copy can be modified without affecting the original. The
+     * copy of a frozen group is not frozen.
+     */
+    public NotificationGroup(NotificationGroup group) {
+        mGroupKey = group.mGroupKey;
+        mNotifications.addAll(group.mNotifications);
+        mChildTitles = group.mChildTitles;
+        mGroupSummaryNotification = group.mGroupSummaryNotification;
+        mIsHeader = group.mIsHeader;
+        mIsFooter = group.mIsFooter;
+    }
+
     public void addNotification(AlertEntry alertEntry) {
+        assertNotFrozen();
         assertSameGroupKey(alertEntry.getStatusBarNotification().getGroupKey());
         mNotifications.add(alertEntry);
     }
 
+    /**
+     * Replaces the child notification or the group summary notification that has the same key as
+     * {@code alertEntry}.
+     *
+     * @return {@code true} if a notification was replaced.
+     */
+    boolean replaceNotification(AlertEntry alertEntry) {
+        assertNotFrozen();
+        if (mGroupSummaryNotification != null
+                && mGroupSummaryNotification.getKey().equals(alertEntry.getKey())) {
+            setGroupSummaryNotification(alertEntry);
+            return true;
+        }
+        for (int i = 0; i < mNotifications.size(); i++) {
+            if (mNotifications.get(i).getKey().equals(alertEntry.getKey())) {
+                assertSameGroupKey(alertEntry.getStatusBarNotification().getGroupKey());
+                mNotifications.set(i, alertEntry);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes the child notification with the given key.
+     *
+     * @return {@code true} if a child notification was removed.
+     */
+    boolean removeNotification(String key) {
+        assertNotFrozen();
+        for (int i = 0; i < mNotifications.size(); i++) {
+            if (mNotifications.get(i).getKey().equals(key)) {
+                mNotifications.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
     void setGroupSummaryNotification(AlertEntry groupSummaryNotification) {
+        assertNotFrozen();
         assertSameGroupKey(groupSummaryNotification.getStatusBarNotification().getGroupKey());
         mGroupSummaryNotification = groupSummaryNotification;
     }
 
     void setGroupKey(@NonNull String groupKey) {
+        assertNotFrozen();
         mGroupKey = groupKey;
     }
 
+    /**
+     * Makes this group read-only. Modifying a frozen group throws an
+     * {@link IllegalStateException}.
+     */
+    void freeze() {
+        mIsFrozen = true;
+    }
+
+    boolean isFrozen() {
+        return mIsFrozen;
+    }
+
     /**
      * Returns the group key of this notification group.
      *
@@ -101,6 +178,7 @@ public class NotificationGroup {
      * Set this to true if a header needs to be displayed with a title and a clear all button.
      */
     public void setHeader(boolean header) {
+        assertNotFrozen();
         mIsHeader = header;
     }
 
@@ -115,6 +193,7 @@ public class NotificationGroup {
      * Set this to true if a footer needs to be displayed with a clear all button.
      */
     public void setFooter(boolean footer) {
+        assertNotFrozen();
         mIsFooter = footer;
     }
 
@@ -140,10 +219,10 @@ public class NotificationGroup {
     }
 
     /**
-     * Returns the list of the child notifications.
+     * Returns the list of the child notifications. The list is read-only if the group is frozen.
      */
     public List<AlertEntry> getChildNotifications() {
-        return mNotifications;
+        return mIsFrozen ? mReadOnlyNotifications : mNotifications;
     }
 
     /**
@@ -158,6 +237,7 @@ public class NotificationGroup {
      * Sets the list of child notification titles.
      */
     public void setChildTitles(List<String> childTitles) {
+        assertNotFrozen();
         mChildTitles = childTitles;
     }
 
@@ -226,6 +306,13 @@ public class NotificationGroup {
         return getSingleNotification();
     }
 
+    private void assertNotFrozen() {
+        if (mIsFrozen) {
+            throw new IllegalStateException("Notification group is frozen. mGroupKey: "
+                    + mGroupKey);
+        }
+    }
+
     private void assertSameGroupKey(String groupKey) {
         if (mGroupKey == null) {
             setGroupKey(groupKey);
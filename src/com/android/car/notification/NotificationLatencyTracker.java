@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.car.notification;
+
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.ArrayMap;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.PrintWriter;
+import java.util.Map;
+
+/**
+ * Measures how long it takes for a posted notification to reach the screen.
+ *
+ * <p> Each {@link AlertEntry} is stamped when it passes one of the stages below. Once the
+ * notification has been drawn, either as a heads-up notification or as a row of the notification
+ * center, the time from {@link #STAGE_RECEIVED} to every later stage is added to a histogram of
+ * the notification's category. The histograms are printed by {@link #dump}, and each notification
+ * is also traced as an async section from receipt to first draw.
+ *
+ * <p> A notification stops being tracked without being recorded when it is removed, replaced by a
+ * newer post of the same key, filtered out of the notification center, or received while the
+ * notification center is hidden, so that its trace section is always ended and the histograms do
+ * not count how long the notification center was closed.
+ *
+ * <p> Stages that a notification skips, e.g. a heads-up notification is never preprocessed, are
+ * not recorded for that notification.
+ *
+ * <p> The time it takes to bring the notification center up to date when it is opened is kept in
+ * a separate histogram.
+ */
+public class NotificationLatencyTracker {
+    private static final String TAG = "NotificationLatency";
+
+    /** The listener received the notification. */
+    public static final int STAGE_RECEIVED = 0;
+    /** The notification event was handed to the notification center. */
+    public static final int STAGE_DISPATCHED = 1;
+    /** The notification was grouped and ranked. */
+    public static final int STAGE_PREPROCESSED = 2;
+    /** The notification was bound to a view. */
+    public static final int STAGE_BOUND = 3;
+    /** The view of the notification was drawn for the first time. */
+    public static final int STAGE_DRAWN = 4;
+    static final int STAGE_COUNT = 5;
+
+    private static final String[] STAGE_NAMES =
+            {"received", "dispatched", "preprocessed", "bound", "drawn"};
+    private static final String NO_CATEGORY = "none";
+
+    /** Upper bounds in milliseconds of the histogram buckets, the last bucket is unbounded. */
+    @VisibleForTesting
+    static final long[] BUCKET_UPPER_BOUNDS_MS =
+            {1, 2, 4, 8, 16, 32, 64, 128, 256, 512, 1024, 2048};
+
+    private static NotificationLatencyTracker sInstance;
+
+    private final Object mLock = new Object();
+    /** Histograms keyed by category, indexed by stage and then by bucket. */
+    @GuardedBy("mLock")
+    private final Map<String, long[][]> mHistograms = new ArrayMap<>();
+    @GuardedBy("mLock")
+    private final long[] mPanelOpenHistogram = new long[BUCKET_UPPER_BOUNDS_MS.length + 1];
+    /** The notifications that were received but have not been drawn yet, by key. */
+    @GuardedBy("mLock")
+    private final Map<String, AlertEntry> mPendingEntries = new ArrayMap<>();
+
+    public static synchronized NotificationLatencyTracker getInstance() {
+        if (sInstance == null) {
+            sInstance = new NotificationLatencyTracker();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Drops the shared instance so that the next {@link #getInstance} call starts with empty
+     * histograms.
+     */
+    @VisibleForTesting
+    static synchronized void resetInstance() {
+        sInstance = null;
+    }
+
+    /**
+     * Stamps the notification with the current time for the stage. Only the first time a
+     * notification reaches a stage is recorded, and only notifications that were stamped with
+     * {@link #STAGE_RECEIVED} are tracked.
+     */
+    public void onStage(AlertEntry alertEntry, int stage) {
+        onStage(alertEntry, stage, SystemClock.elapsedRealtimeNanos());
+    }
+
+    @VisibleForTesting
+    void onStage(AlertEntry alertEntry, int stage, long timeNanos) {
+        if (alertEntry == null) {
+            return;
+        }
+        if (stage == STAGE_RECEIVED) {
+            if (!alertEntry.setLatencyStageTime(STAGE_RECEIVED, timeNanos)) {
+                return;
+            }
+            AlertEntry replacedEntry;
+            synchronized (mLock) {
+                replacedEntry = mPendingEntries.put(alertEntry.getKey(), alertEntry);
+            }
+            if (replacedEntry != null) {
+                // The replaced notification is never drawn.
+                endSection(replacedEntry);
+            }
+            Trace.beginAsyncSection(getSectionName(alertEntry), getCookie(alertEntry));
+            return;
+        }
+        if (!isPending(alertEntry) || !alertEntry.setLatencyStageTime(stage, timeNanos)) {
+            return;
+        }
+        if (stage == STAGE_DRAWN && removePending(alertEntry)) {
+            endSection(alertEntry);
+            record(alertEntry);
+        }
+    }
+
+    /**
+     * Stops tracking the notification without recording it, e.g. because it was filtered out or
+     * received while the notification center was hidden.
+     */
+    public void stopTracking(AlertEntry alertEntry) {
+        if (alertEntry != null && removePending(alertEntry)) {
+            endSection(alertEntry);
+        }
+    }
+
+    /**
+     * Stops tracking the notification with the key without recording it, because it was removed.
+     */
+    public void stopTracking(String key) {
+        AlertEntry alertEntry;
+        synchronized (mLock) {
+            alertEntry = mPendingEntries.remove(key);
+        }
+        if (alertEntry != null) {
+            endSection(alertEntry);
+        }
+    }
+
+    /**
+     * Records the time it took to bring the notification center up to date when it was opened.
+     */
+    public void onPanelOpened(long latencyNanos) {
+        synchronized (mLock) {
+            mPanelOpenHistogram[getBucket(latencyNanos / 1_000_000)]++;
+        }
+    }
+
+    /**
+     * Returns {@code true} if the notification was received but has not been drawn yet.
+     */
+    public boolean isPending(AlertEntry alertEntry) {
+        synchronized (mLock) {
+            return mPendingEntries.get(alertEntry.getKey()) == alertEntry;
+        }
+    }
+
+    /**
+     * Returns the number of notifications that were received but have not been drawn yet.
+     */
+    @VisibleForTesting
+    int getPendingCount() {
+        synchronized (mLock) {
+            return mPendingEntries.size();
+        }
+    }
+
+    /**
+     * Returns the number of notifications of the category for which the stage was recorded.
+     */
+    @VisibleForTesting
+    long getCount(String category, int stage) {
+        synchronized (mLock) {
+            long[][] histogram = mHistograms.get(category == null ? NO_CATEGORY : category);
+            if (histogram == null) {
+                return 0;
+            }
+            long count = 0;
+            for (long bucket : histogram[stage]) {
+                count += bucket;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Returns the number of times the notification center was opened.
+     */
+    @VisibleForTesting
+    long getPanelOpenCount() {
+        synchronized (mLock) {
+            long count = 0;
+            for (long bucket : mPanelOpenHistogram) {
+                count += bucket;
+            }
+            return count;
+        }
+    }
+
+    /** Prints the latency histograms. */
+    public void dump(PrintWriter pw) {
+        long panelOpenCount = getPanelOpenCount();
+        synchronized (mLock) {
+            if (panelOpenCount > 0) {
+                pw.println(TAG + ": panel open in ms (p50/p90/p99, count): "
+                        + getPercentile(mPanelOpenHistogram, panelOpenCount, 50) + "/"
+                        + getPercentile(mPanelOpenHistogram, panelOpenCount, 90) + "/"
+                        + getPercentile(mPanelOpenHistogram, panelOpenCount, 99) + ", "
+                        + panelOpenCount);
+            }
+            pw.println(TAG + ": latency from receipt in ms (p50/p90/p99, count)");
+            for (Map.Entry<String, long[][]> entry : mHistograms.entrySet()) {
+                pw.println("  " + entry.getKey() + ":");
+                for (int stage = STAGE_DISPATCHED; stage < STAGE_COUNT; stage++) {
+                    long[] buckets = entry.getValue()[stage];
+                    long count = 0;
+                    for (long bucket : buckets) {
+                        count += bucket;
+                    }
+                    if (count == 0) {
+                        continue;
+                    }
+                    pw.println("    " + STAGE_NAMES[stage] + ": "
+                            + getPercentile(buckets, count, 50) + "/"
+                            + getPercentile(buckets, count, 90) + "/"
+                            + getPercentile(buckets, count, 99) + ", " + count);
+                }
+            }
+        }
+    }
+
+    private void record(AlertEntry alertEntry) {
+        long receivedNanos = alertEntry.getLatencyStageTime(STAGE_RECEIVED);
+        String category = alertEntry.getNotification().category;
+        synchronized (mLock) {
+            long[][] histogram = mHistograms.get(category == null ? NO_CATEGORY : category);
+            if (histogram == null) {
+                histogram = new long[STAGE_COUNT][BUCKET_UPPER_BOUNDS_MS.length + 1];
+                mHistograms.put(category == null ? NO_CATEGORY : category, histogram);
+            }
+            for (int stage = STAGE_DISPATCHED; stage < STAGE_COUNT; stage++) {
+                long stageNanos = alertEntry.getLatencyStageTime(stage);
+                if (stageNanos == 0) {
+                    continue;
+                }
+                histogram[stage][getBucket((stageNanos - receivedNanos) / 1_000_000)]++;
+            }
+        }
+    }
+
+    @VisibleForTesting
+    static int getBucket(long latencyMs) {
+        for (int i = 0; i < BUCKET_UPPER_BOUNDS_MS.length; i++) {
+            if (latencyMs <= BUCKET_UPPER_BOUNDS_MS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_UPPER_BOUNDS_MS.length;
+    }
+
+    /**
+     * Returns the upper bound of the bucket that holds the percentile, or ">" followed by the
+     * largest bound if it falls in the unbounded bucket.
+     */
+    private static String getPercentile(long[] buckets, long count, int percentile) {
+        long threshold = (count * percentile + 99) / 100;
+        long seen = 0;
+        for (int i = 0; i < BUCKET_UPPER_BOUNDS_MS.length; i++) {
+            seen += buckets[i];
+            if (seen >= threshold) {
+                return String.valueOf(BUCKET_UPPER_BOUNDS_MS[i]);
+            }
+        }
+        return ">" + BUCKET_UPPER_BOUNDS_MS[BUCKET_UPPER_BOUNDS_MS.length - 1];
+    }
+
+    /**
+     * Removes the notification from the pending notifications.
+     *
+     * @return {@code false} if it was not pending.
+     */
+    private boolean removePending(AlertEntry alertEntry) {
+        synchronized (mLock) {
+            if (mPendingEntries.get(alertEntry.getKey()) != alertEntry) {
+                return false;
+            }
+            mPendingEntries.remove(alertEntry.getKey());
+            return true;
+        }
+    }
+
+    private static void endSection(AlertEntry alertEntry) {
+        Trace.endAsyncSection(getSectionName(alertEntry), getCookie(alertEntry));
+    }
+
+    private static String getSectionName(AlertEntry alertEntry) {
+        String category = alertEntry.getNotification().category;
+        return TAG + ":" + (category == null ? NO_CATEGORY : category);
+    }
+
+    private static int getCookie(AlertEntry alertEntry) {
+        return System.identityHashCode(alertEntry);
+    }
+}
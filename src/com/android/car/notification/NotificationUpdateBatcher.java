@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.car.notification;
+
+import android.os.Handler;
+import android.view.Choreographer;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Coalesces the notification events that arrive within a frame so that the notification center
+ * is updated at most once per frame.
+ *
+ * <p> Events are kept per notification key:
+ * <ul>
+ * <li> a newer event for the same key replaces the pending one, so only the latest post of a
+ * notification is applied.
+ * <li> a removal replaces a pending post of the same notification.
+ * </ul>
+ *
+ * <p> The pending events are delivered on the next frame, or after the maximum latency if no
+ * frame is drawn in the meantime. Must be used on the main thread.
+ */
+class NotificationUpdateBatcher {
+
+    /** Receives the coalesced notification events. */
+    interface Callback {
+        /**
+         * Called with the pending events in the order of their latest occurrence.
+         */
+        void onNotificationUpdates(List<Update> updates);
+    }
+
+    /** A single notification event. */
+    static final class Update {
+        private final int mUpdateType;
+        private final AlertEntry mAlertEntry;
+
+        Update(int updateType, AlertEntry alertEntry) {
+            mUpdateType = updateType;
+            mAlertEntry = alertEntry;
+        }
+
+        /**
+         * Returns either {@link CarNotificationListener#NOTIFY_NOTIFICATION_POSTED} or
+         * {@link CarNotificationListener#NOTIFY_NOTIFICATION_REMOVED}.
+         */
+        int getUpdateType() {
+            return mUpdateType;
+        }
+
+        AlertEntry getAlertEntry() {
+            return mAlertEntry;
+        }
+    }
+
+    private final LinkedHashMap<String, Update> mPendingUpdates = new LinkedHashMap<>();
+    private final Choreographer mChoreographer;
+    private final Handler mHandler;
+    private final long mMaxLatencyMs;
+    private final Callback mCallback;
+    private final Choreographer.FrameCallback mFrameCallback = frameTimeNanos -> flush();
+    private final Runnable mFlushRunnable = this::flush;
+
+    private boolean mIsFlushScheduled;
+
+    NotificationUpdateBatcher(Choreographer choreographer, Handler handler, long maxLatencyMs,
+            Callback callback) {
+        mChoreographer = choreographer;
+        mHandler = handler;
+        mMaxLatencyMs = maxLatencyMs;
+        mCallback = callback;
+    }
+
+    /**
+     * Queues a notification event. The event is delivered immediately if batching is disabled.
+     */
+    void enqueue(int updateType, AlertEntry alertEntry) {
+        Update update = new Update(updateType, alertEntry);
+        if (mMaxLatencyMs <= 0) {
+            mCallback.onNotificationUpdates(Collections.singletonList(update));
+            return;
+        }
+
+        // Remove first so that the key moves to the position of its latest event.
+        mPendingUpdates.remove(alertEntry.getKey());
+        mPendingUpdates.put(alertEntry.getKey(), update);
+
+        if (!mIsFlushScheduled) {
+            mIsFlushScheduled = true;
+            mChoreographer.postFrameCallback(mFrameCallback);
+            mHandler.postDelayed(mFlushRunnable, mMaxLatencyMs);
+        }
+    }
+
+    /**
+     * Delivers all pending events now.
+     */
+    void flush() {
+        cancelScheduledFlush();
+        if (mPendingUpdates.isEmpty()) {
+            return;
+        }
+
+        List<Update> updates = new ArrayList<>(mPendingUpdates.values());
+        mPendingUpdates.clear();
+        mCallback.onNotificationUpdates(updates);
+    }
+
+    /**
+     * Drops all pending events.
+     */
+    void clear() {
+        cancelScheduledFlush();
+        mPendingUpdates.clear();
+    }
+
+    /**
+     * Returns the number of notifications that have pending events.
+     */
+    @VisibleForTesting
+    int getPendingUpdateCount() {
+        return mPendingUpdates.size();
+    }
+
+    private void cancelScheduledFlush() {
+        if (!mIsFlushScheduled) {
+            return;
+        }
+        mIsFlushScheduled = false;
+        mChoreographer.removeFrameCallback(mFrameCallback);
+        mHandler.removeCallbacks(mFlushRunnable);
+    }
+}
@@ -17,27 +17,25 @@
 package com.android.car.notification;
 
 import android.annotation.ColorInt;
-import android.app.ActivityManager;
-import android.app.Notification;
 import android.content.Context;
-import android.content.pm.PackageInfo;
-import android.content.pm.PackageManager;
 import android.content.res.TypedArray;
 import android.graphics.Color;
-import android.os.Bundle;
 import android.service.notification.StatusBarNotification;
-import android.util.Log;
 
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.graphics.ColorUtils;
 
 public class NotificationUtils {
-    private static final String TAG = "NotificationUtils";
     private static final int MAX_FIND_COLOR_STEPS = 15;
     private static final double MIN_COLOR_CONTRAST = 0.00001;
     private static final double MIN_CONTRAST_RATIO = 4.5;
     private static final double MIN_LIGHTNESS = 0;
     private static final float MAX_LIGHTNESS = 1;
     private static final float LIGHT_COLOR_LUMINANCE_THRESHOLD = 0.5f;
+    private static final int CONTRAST_COLOR_CACHE_SIZE = 256;
+
+    private static final ContrastColorCache sContrastColorCache = new ContrastColorCache(
+            CONTRAST_COLOR_CACHE_SIZE, NotificationUtils::resolveContrastColorUncached);
 
     private NotificationUtils() {
     }
@@ -85,10 +83,8 @@ public class NotificationUtils {
      */
     public static boolean isSystemApp(Context context,
             StatusBarNotification statusBarNotification) {
-        PackageInfo packageInfo = getPackageInfo(context, statusBarNotification);
-        if (packageInfo == null) return false;
-
-        return packageInfo.applicationInfo.isSystemApp();
+        return PackageTrustCache.getInstance(context)
+                .isSystemApp(statusBarNotification.getPackageName());
     }
 
     /**
@@ -96,10 +92,8 @@ public class NotificationUtils {
      */
     public static boolean isSignedWithPlatformKey(Context context,
             StatusBarNotification statusBarNotification) {
-        PackageInfo packageInfo = getPackageInfo(context, statusBarNotification);
-        if (packageInfo == null) return false;
-
-        return packageInfo.applicationInfo.isSignedWithPlatformKey();
+        return PackageTrustCache.getInstance(context)
+                .isSignedWithPlatformKey(statusBarNotification.getPackageName());
     }
 
     /**
@@ -108,37 +102,13 @@ public class NotificationUtils {
      * in the notification center.
      */
     public static CarNotificationTypeItem getNotificationViewType(AlertEntry alertEntry) {
-        String category = alertEntry.getNotification().category;
-        if (category != null) {
-            switch (category) {
-                case Notification.CATEGORY_CAR_EMERGENCY:
-                    return CarNotificationTypeItem.EMERGENCY;
-                case Notification.CATEGORY_NAVIGATION:
-                    return CarNotificationTypeItem.NAVIGATION;
-                case Notification.CATEGORY_CALL:
-                    return CarNotificationTypeItem.CALL;
-                case Notification.CATEGORY_CAR_WARNING:
-                    return CarNotificationTypeItem.WARNING;
-                case Notification.CATEGORY_CAR_INFORMATION:
-                    return CarNotificationTypeItem.INFORMATION;
-                case Notification.CATEGORY_MESSAGE:
-                    return CarNotificationTypeItem.MESSAGE;
-                default:
-                    break;
-            }
-        }
-        Bundle extras = alertEntry.getNotification().extras;
-        if (extras.containsKey(Notification.EXTRA_BIG_TEXT)
-                && extras.containsKey(Notification.EXTRA_SUMMARY_TEXT)) {
-            return CarNotificationTypeItem.INBOX;
-        }
-        // progress, media, big text, big picture, and basic templates
-        return CarNotificationTypeItem.BASIC;
+        return alertEntry.getClassification().getHeadsUpType();
     }
 
     /**
      * Resolves a Notification's color such that it has enough contrast to be used as the
-     * color for the Notification's action and header text.
+     * color for the Notification's action and header text. The results are memoized, see
+     * {@link ContrastColorCache}.
      *
      * @param backgroundColor the background color to ensure the contrast against.
      * @return a color of the same hue as {@code notificationColor} with enough contrast against
@@ -146,9 +116,25 @@ public class NotificationUtils {
      */
     public static int resolveContrastColor(
             @ColorInt int notificationColor, @ColorInt int backgroundColor) {
+        return sContrastColorCache.get(notificationColor, backgroundColor);
+    }
+
+    /**
+     * Same as {@link #resolveContrastColor}, but always searches for the color.
+     */
+    @VisibleForTesting
+    static int resolveContrastColorUncached(
+            @ColorInt int notificationColor, @ColorInt int backgroundColor) {
         return getContrastedForegroundColor(notificationColor, backgroundColor, MIN_CONTRAST_RATIO);
     }
 
+    /**
+     * Returns the memo table of {@link #resolveContrastColor}.
+     */
+    static ContrastColorCache getContrastColorCache() {
+        return sContrastColorCache;
+    }
+
     /**
      * Returns true if a color is considered a light color.
      */
@@ -158,32 +144,18 @@ public class NotificationUtils {
 
     private static boolean isSystemPrivilegedOrPlatformKeyInner(Context context,
             AlertEntry alertEntry, boolean checkForPrivilegedApp) {
-        PackageInfo packageInfo = getPackageInfo(context, alertEntry.getStatusBarNotification());
-        if (packageInfo == null) return false;
+        PackageTrustCache packageTrustCache = PackageTrustCache.getInstance(context);
+        String packageName = alertEntry.getStatusBarNotification().getPackageName();
 
         // Only include the privilegedApp check if the caller wants this check.
         boolean isPrivilegedApp =
-                (!checkForPrivilegedApp) || packageInfo.applicationInfo.isPrivilegedApp();
+                (!checkForPrivilegedApp) || packageTrustCache.isPrivilegedApp(packageName);
 
-        return (packageInfo.applicationInfo.isSignedWithPlatformKey() ||
-                (packageInfo.applicationInfo.isSystemApp()
+        return (packageTrustCache.isSignedWithPlatformKey(packageName) ||
+                (packageTrustCache.isSystemApp(packageName)
                         && isPrivilegedApp));
     }
 
-    private static PackageInfo getPackageInfo(Context context,
-            StatusBarNotification statusBarNotification) {
-        PackageManager packageManager = context.getPackageManager();
-        PackageInfo packageInfo = null;
-        try {
-            packageInfo = packageManager.getPackageInfoAsUser(
-                    statusBarNotification.getPackageName(), /* flags= */ 0,
-                    ActivityManager.getCurrentUser());
-        } catch (PackageManager.NameNotFoundException ex) {
-            Log.e(TAG, "package not found: " + statusBarNotification.getPackageName());
-        }
-        return packageInfo;
-    }
-
     /**
      * Finds a suitable color such that there's enough contrast.
      *
@@ -1,19 +1,35 @@
 package com.android.car.notification;
 
+import android.app.Notification;
 import android.car.drivingstate.CarUxRestrictions;
 import android.os.Build;
 import android.os.Handler;
+import android.os.Looper;
 import android.os.Message;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.service.notification.NotificationListenerService.RankingMap;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.View;
 import android.widget.Toast;
 
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
  * This class is a bridge to collect signals from the notification and ux restriction services and
  * trigger the correct UI updates.
+ *
+ * <p> While the notification view is hidden, notification updates only keep the unseen count up
+ * to date and mark the notifications dirty. The notifications are reprocessed once, when the main
+ * thread is idle after the updates have settled, or at the latest when the view becomes visible.
+ *
+ * <p> The notifications are filtered, grouped and ranked by a {@link PreprocessingWorker} on the
+ * thread of the {@link PreprocessingManager}. The main thread only hands the notification updates
+ * over and binds the processed notifications to the view.
  */
 public class NotificationViewController {
 
@@ -24,8 +40,29 @@ public class NotificationViewController {
     private CarUxRestrictionManagerWrapper mUxResitrictionListener;
     private NotificationDataManager mNotificationDataManager;
     private NotificationUpdateHandler mNotificationUpdateHandler = new NotificationUpdateHandler();
+    private final NotificationUpdateBatcher mNotificationUpdateBatcher;
+    private final PreprocessingWorker mPreprocessingWorker;
+    private final CardStyleResolver mCardStyleResolver;
+    private final CardStyleResolver.Theme mCardStyleTheme;
+    /** Processed notifications last handed to the view. */
+    private List<NotificationGroup> mShownNotifications;
+    /** Ranking snapshot for the filtering done on the main thread. */
+    private RankingSnapshot mRankingSnapshot;
+    /** Time at which the view became visible, 0 once its notifications are up to date. */
+    private long mPanelOpenStartNanos;
     private boolean mShowLessImportantNotifications;
     private boolean mIsVisible;
+    /** Whether the notifications changed since they were last handed to the view. */
+    private boolean mIsDirty;
+    private final int mHiddenRefreshDelayMs;
+    private final MessageQueue.IdleHandler mIdleRefresh = () -> {
+        refreshIfDirty();
+        return false;
+    };
+    private final Runnable mScheduleIdleRefresh = () -> {
+        Looper.myQueue().removeIdleHandler(mIdleRefresh);
+        Looper.myQueue().addIdleHandler(mIdleRefresh);
+    };
 
     public NotificationViewController(CarNotificationView carNotificationView,
             PreprocessingManager preprocessingManager,
@@ -37,6 +74,18 @@ public class NotificationViewController {
         mCarNotificationListener = carNotificationListener;
         mUxResitrictionListener = uxResitrictionListener;
         mNotificationDataManager = notificationDataManager;
+        mNotificationUpdateBatcher = new NotificationUpdateBatcher(
+                Choreographer.getInstance(),
+                mNotificationUpdateHandler,
+                carNotificationView.getContext().getResources().getInteger(
+                        R.integer.notification_update_batch_max_latency_ms),
+                this::onNotificationUpdates);
+        mPreprocessingWorker = new PreprocessingWorker(preprocessingManager.getExecutor(),
+                mNotificationUpdateHandler, this::onNotificationsProcessed);
+        mCardStyleResolver = CardStyleResolver.getInstance(carNotificationView.getContext());
+        mCardStyleTheme = CardStyleResolver.Theme.from(carNotificationView.getContext());
+        mHiddenRefreshDelayMs = carNotificationView.getContext().getResources().getInteger(
+                R.integer.notification_hidden_refresh_delay_ms);
 
         // Long clicking on the notification center title toggles hiding media, navigation, and
         // less important (< IMPORTANCE_DEFAULT) ongoing foreground service notifications.
@@ -78,6 +127,7 @@ public class NotificationViewController {
      */
     public void disable() {
         mCarNotificationListener.setHandler(null);
+        mNotificationUpdateBatcher.flush();
         mUxResitrictionListener.setCarNotificationView(null);
     }
 
@@ -86,67 +136,185 @@ public class NotificationViewController {
      */
     public void onVisibilityChanged(boolean isVisible) {
         mIsVisible = isVisible;
-        // Reset and collapse all groups when notification view disappears.
-        if (!mIsVisible) {
+        if (mIsVisible) {
+            mPanelOpenStartNanos = SystemClock.elapsedRealtimeNanos();
+            refreshIfDirty();
+            if (!mPreprocessingWorker.isPending()) {
+                onPanelUpToDate();
+            }
+            return;
+        }
+        mPanelOpenStartNanos = 0;
+        // Collapse all groups when notification view disappears and reset the notifications
+        // once the main thread is idle.
+        // The reset includes all pending updates.
+        mNotificationUpdateBatcher.clear();
+        mCarNotificationView.resetState();
+        markDirty();
+    }
+
+    /**
+     * Marks the notifications dirty and schedules a reset for when the main thread is idle.
+     */
+    private void markDirty() {
+        mIsDirty = true;
+        mNotificationUpdateHandler.removeCallbacks(mScheduleIdleRefresh);
+        mNotificationUpdateHandler.postDelayed(mScheduleIdleRefresh, mHiddenRefreshDelayMs);
+    }
+
+    private void refreshIfDirty() {
+        mNotificationUpdateHandler.removeCallbacks(mScheduleIdleRefresh);
+        Looper.myQueue().removeIdleHandler(mIdleRefresh);
+        if (mIsDirty) {
             resetNotifications(mShowLessImportantNotifications);
-            mCarNotificationView.resetState();
         }
     }
 
+    /**
+     * Records how long it took for the notifications to be up to date after the view became
+     * visible.
+     */
+    private void onPanelUpToDate() {
+        if (mPanelOpenStartNanos == 0) {
+            return;
+        }
+        NotificationLatencyTracker.getInstance().onPanelOpened(
+                SystemClock.elapsedRealtimeNanos() - mPanelOpenStartNanos);
+        mPanelOpenStartNanos = 0;
+    }
+
     /**
      * Reset notifications to the latest state.
      */
     private void resetNotifications(boolean showLessImportantNotifications) {
-        mPreprocessingManager.init(
-                mCarNotificationListener.getNotifications(),
-                mCarNotificationListener.getCurrentRanking());
-
-        List<NotificationGroup> notificationGroups = mPreprocessingManager.process(
-                showLessImportantNotifications,
-                mCarNotificationListener.getNotifications(),
-                mCarNotificationListener.getCurrentRanking());
-
-        List<NotificationGroup> unseenNotifications = notificationGroups.stream()
-                .filter(g -> g.getChildNotifications().stream()
-                        .anyMatch(mCarNotificationListener::shouldTrackUnseen))
-                .collect(Collectors.toList());
-
-        mNotificationDataManager.updateUnseenNotification(unseenNotifications);
-        mCarNotificationView.setNotifications(notificationGroups);
+        mIsDirty = false;
+        Map<String, AlertEntry> notifications = mCarNotificationListener.getNotifications();
+        RankingMap rankingMap = mCarNotificationListener.getCurrentRanking();
+        mPreprocessingWorker.reset(() -> {
+            Trace.beginSection(TAG + "#reset");
+            try {
+                List<NotificationGroup> notificationGroups = mPreprocessingManager.init(
+                        notifications, rankingMap, showLessImportantNotifications);
+                // Spare the main thread the trust checks and contrast searches of binding.
+                mCardStyleResolver.prefetch(mCardStyleTheme, notificationGroups);
+                return notificationGroups;
+            } finally {
+                Trace.endSection();
+            }
+        });
+    }
+
+    /**
+     * Hands the processed notifications to the view. The unseen notifications are recomputed
+     * when the notifications were reset.
+     */
+    private void onNotificationsProcessed(List<NotificationGroup> notificationGroups,
+            boolean isReset) {
+        if (isReset) {
+            List<NotificationGroup> unseenNotifications = notificationGroups.stream()
+                    .filter(g -> g.getChildNotifications().stream()
+                            .anyMatch(mCarNotificationListener::shouldTrackUnseen))
+                    .collect(Collectors.toList());
+
+            mNotificationDataManager.updateUnseenNotification(unseenNotifications);
+        }
+        if (notificationGroups != mShownNotifications) {
+            mShownNotifications = notificationGroups;
+            mCarNotificationView.setNotifications(notificationGroups);
+        }
+        onPanelUpToDate();
     }
 
     /**
      * Update notifications: no grouping/ranking updates will go through.
      * Insertion, deletion and content update will apply immediately.
+     *
+     * <p> All updates are applied to the {@link PreprocessingManager} first and the result is
+     * handed to the view once, so that only one diff is computed for the whole batch.
      */
-    private void updateNotifications(
-            boolean showLessImportantNotifications, int what, AlertEntry alertEntry) {
+    private void updateNotifications(boolean showLessImportantNotifications,
+            List<NotificationUpdateBatcher.Update> updates) {
+        RankingMap rankingMap = mCarNotificationListener.getCurrentRanking();
+        mPreprocessingWorker.update(() -> {
+            List<NotificationGroup> notificationGroups = null;
+            for (NotificationUpdateBatcher.Update update : updates) {
+                if (mPreprocessingManager.shouldFilter(update.getAlertEntry(), rankingMap)) {
+                    // if the new notification should be filtered out, skip it
+                    NotificationLatencyTracker.getInstance().stopTracking(
+                            update.getAlertEntry());
+                    continue;
+                }
+
+                notificationGroups = mPreprocessingManager.updateNotifications(
+                        showLessImportantNotifications,
+                        update.getAlertEntry(),
+                        update.getUpdateType(),
+                        rankingMap);
+                if (update.getUpdateType() != CarNotificationListener.NOTIFY_NOTIFICATION_REMOVED) {
+                    mCardStyleResolver.prefetch(mCardStyleTheme, update.getAlertEntry());
+                }
+                NotificationLatencyTracker.getInstance().onStage(update.getAlertEntry(),
+                        NotificationLatencyTracker.STAGE_PREPROCESSED);
+            }
+            return notificationGroups;
+        });
+    }
 
-        if (mPreprocessingManager.shouldFilter(alertEntry,
-                mCarNotificationListener.getCurrentRanking())) {
-            // if the new notification should be filtered out, return early
+    private void onNotificationUpdates(List<NotificationUpdateBatcher.Update> updates) {
+        if (mIsVisible) {
+            updateNotifications(mShowLessImportantNotifications, updates);
             return;
         }
+        NotificationLatencyTracker tracker = NotificationLatencyTracker.getInstance();
+        for (NotificationUpdateBatcher.Update update : updates) {
+            // The notification is drawn when the view is opened, which says nothing about the
+            // latency of the notification.
+            tracker.stopTracking(update.getAlertEntry());
+            updateUnseenNotification(update);
+        }
+        markDirty();
+    }
 
-        mCarNotificationView.setNotifications(
-                mPreprocessingManager.updateNotifications(
-                        showLessImportantNotifications,
-                        alertEntry,
-                        what,
-                        mCarNotificationListener.getCurrentRanking()));
+    /**
+     * Applies an update to the unseen notifications without reprocessing the notifications. Only
+     * notifications that would be shown as children of a notification group are tracked, the
+     * same ones as {@link NotificationDataManager#updateUnseenNotification} tracks on reset.
+     */
+    private void updateUnseenNotification(NotificationUpdateBatcher.Update update) {
+        AlertEntry alertEntry = update.getAlertEntry();
+        if (update.getUpdateType() == CarNotificationListener.NOTIFY_NOTIFICATION_REMOVED) {
+            mNotificationDataManager.untrackUnseenNotification(alertEntry);
+            return;
+        }
+        Notification notification = alertEntry.getNotification();
+        if (notification.isGroupSummary()
+                || Notification.CATEGORY_CALL.equals(notification.category)
+                || (!mShowLessImportantNotifications
+                        && mPreprocessingManager.shouldFilter(alertEntry, getRankingSnapshot()))
+                || !mCarNotificationListener.shouldTrackUnseen(alertEntry)) {
+            return;
+        }
+        mNotificationDataManager.trackUnseenNotification(alertEntry);
+    }
+
+    /**
+     * Returns the snapshot of the current ranking map. The snapshots of the
+     * {@link PreprocessingManager} belong to its thread.
+     */
+    private RankingSnapshot getRankingSnapshot() {
+        RankingMap rankingMap = mCarNotificationListener.getCurrentRanking();
+        if (mRankingSnapshot == null || !mRankingSnapshot.isSnapshotOf(rankingMap)) {
+            mRankingSnapshot = new RankingSnapshot(rankingMap);
+        }
+        return mRankingSnapshot;
     }
 
     private class NotificationUpdateHandler extends Handler {
         @Override
         public void handleMessage(Message message) {
-            if (mIsVisible) {
-                updateNotifications(
-                        mShowLessImportantNotifications,
-                        message.what,
-                        (AlertEntry) message.obj);
-            } else {
-                resetNotifications(mShowLessImportantNotifications);
-            }
+            NotificationLatencyTracker.getInstance().onStage((AlertEntry) message.obj,
+                    NotificationLatencyTracker.STAGE_DISPATCHED);
+            mNotificationUpdateBatcher.enqueue(message.what, (AlertEntry) message.obj);
         }
     }
 }
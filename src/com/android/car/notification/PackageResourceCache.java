@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.car.notification;
+
+import android.annotation.Nullable;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.Icon;
+import android.service.notification.StatusBarNotification;
+import android.util.LruCache;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.PrintWriter;
+
+/**
+ * Bounded cache of the package resources that are needed to bind notification headers: the
+ * package context, the application label, whether the package may substitute its app name and the
+ * drawables of resource based small icons.
+ *
+ * <p> Entries are keyed by user and package. They are dropped when the package is added, removed,
+ * replaced or changed, and all entries are dropped when the locale changes since the labels and
+ * icons may be localized.
+ *
+ * <p> Drawables are cached as {@link Drawable.ConstantState} and a new {@link Drawable} is created
+ * for every caller so that tints and color filters are never shared between views. Must be used on
+ * the main thread.
+ */
+public class PackageResourceCache {
+    private static final String TAG = "PackageResourceCache";
+    private static final int MAX_PACKAGES = 32;
+    private static final int MAX_ICONS = 64;
+
+    private static PackageResourceCache sInstance;
+
+    private final Context mContext;
+    private final LruCache<String, PackageEntry> mPackages = new LruCache<>(MAX_PACKAGES);
+    private final LruCache<String, Drawable.ConstantState> mIcons = new LruCache<>(MAX_ICONS);
+
+    @VisibleForTesting
+    final BroadcastReceiver mInvalidationReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (Intent.ACTION_LOCALE_CHANGED.equals(intent.getAction())
+                    || intent.getData() == null) {
+                invalidateAll();
+                return;
+            }
+            invalidatePackage(intent.getData().getSchemeSpecificPart());
+        }
+    };
+
+    private static final class PackageEntry {
+        private final Context mPackageContext;
+        private CharSequence mLabel;
+        private boolean mIsLabelLoaded;
+        private Boolean mCanSubstituteAppName;
+
+        PackageEntry(Context packageContext) {
+            mPackageContext = packageContext;
+        }
+    }
+
+    private PackageResourceCache(Context context) {
+        mContext = context.getApplicationContext() != null
+                ? context.getApplicationContext() : context;
+
+        IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addDataScheme("package");
+        // The process may run as a different user than the foreground user, e.g. the headless
+        // system user, so package changes are observed for all users.
+        mContext.registerReceiverForAllUsers(mInvalidationReceiver, packageFilter,
+                /* broadcastPermission= */ null, /* scheduler= */ null);
+        mContext.registerReceiver(mInvalidationReceiver,
+                new IntentFilter(Intent.ACTION_LOCALE_CHANGED));
+    }
+
+    public static PackageResourceCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PackageResourceCache(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Drops the shared instance so that the next {@link #getInstance} call starts with an empty
+     * cache.
+     */
+    @VisibleForTesting
+    static void resetInstance() {
+        sInstance = null;
+    }
+
+    /**
+     * Returns the context of the package that posted the notification.
+     */
+    public Context getPackageContext(StatusBarNotification sbn) {
+        return getPackageEntry(sbn).mPackageContext;
+    }
+
+    /**
+     * Returns the application label of the package that posted the notification, or {@code null}
+     * if it has none.
+     */
+    @Nullable
+    public CharSequence getApplicationLabel(StatusBarNotification sbn) {
+        PackageEntry entry = getPackageEntry(sbn);
+        if (!entry.mIsLabelLoaded) {
+            Context packageContext = entry.mPackageContext;
+            entry.mLabel = packageContext.getPackageManager()
+                    .getApplicationLabel(packageContext.getApplicationInfo());
+            entry.mIsLabelLoaded = true;
+        }
+        return entry.mLabel;
+    }
+
+    /**
+     * Returns {@code true} if the package that posted the notification holds
+     * {@link android.Manifest.permission#SUBSTITUTE_NOTIFICATION_APP_NAME}.
+     */
+    public boolean canSubstituteAppName(StatusBarNotification sbn) {
+        PackageEntry entry = getPackageEntry(sbn);
+        if (entry.mCanSubstituteAppName == null) {
+            entry.mCanSubstituteAppName = PackageManager.PERMISSION_GRANTED
+                    == entry.mPackageContext.getPackageManager().checkPermission(
+                    android.Manifest.permission.SUBSTITUTE_NOTIFICATION_APP_NAME,
+                    sbn.getPackageName());
+        }
+        return entry.mCanSubstituteAppName;
+    }
+
+    /**
+     * Loads the small icon of the notification. Resource based icons are loaded once per package
+     * and resource id; other icons are loaded every time.
+     */
+    @Nullable
+    public Drawable loadSmallIcon(StatusBarNotification sbn) {
+        Icon icon = sbn.getNotification().getSmallIcon();
+        if (icon == null) {
+            return null;
+        }
+        Context packageContext = getPackageContext(sbn);
+        if (icon.getType() != Icon.TYPE_RESOURCE) {
+            return icon.loadDrawable(packageContext);
+        }
+
+        String key = getIconKey(sbn, icon);
+        Drawable.ConstantState constantState = mIcons.get(key);
+        if (constantState != null) {
+            return constantState.newDrawable(packageContext.getResources());
+        }
+
+        Drawable drawable = icon.loadDrawable(packageContext);
+        if (drawable != null && drawable.getConstantState() != null) {
+            mIcons.put(key, drawable.getConstantState());
+        }
+        return drawable;
+    }
+
+    /**
+     * Removes the cached resources of the package for all users.
+     */
+    public void invalidatePackage(String packageName) {
+        for (String key : mPackages.snapshot().keySet()) {
+            if (isKeyOfPackage(key, packageName)) {
+                mPackages.remove(key);
+            }
+        }
+        for (String key : mIcons.snapshot().keySet()) {
+            if (isKeyOfPackage(key, packageName)) {
+                mIcons.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Removes all cached resources.
+     */
+    public void invalidateAll() {
+        mPackages.evictAll();
+        mIcons.evictAll();
+    }
+
+    /** Prints the state of the cache. */
+    public void dump(PrintWriter pw) {
+        pw.println(TAG + ":");
+        pw.println("  packages: " + mPackages);
+        pw.println("  icons: " + mIcons);
+    }
+
+    private PackageEntry getPackageEntry(StatusBarNotification sbn) {
+        String key = getPackageKey(sbn);
+        PackageEntry entry = mPackages.get(key);
+        if (entry == null) {
+            entry = new PackageEntry(sbn.getPackageContext(mContext));
+            mPackages.put(key, entry);
+        }
+        return entry;
+    }
+
+    private static String getPackageKey(StatusBarNotification sbn) {
+        return sbn.getPackageName() + "/" + sbn.getUser().getIdentifier();
+    }
+
+    private static String getIconKey(StatusBarNotification sbn, Icon icon) {
+        return icon.getResPackage() + "/" + sbn.getUser().getIdentifier() + "/" + icon.getResId();
+    }
+
+    private static boolean isKeyOfPackage(String key, String packageName) {
+        return key.startsWith(packageName)
+                && key.length() > packageName.length()
+                && key.charAt(packageName.length()) == '/';
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.car.notification;
+
+import android.app.ActivityManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.UserHandle;
+import android.util.ArrayMap;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.PrintWriter;
+
+/**
+ * Per-user, per-package cache of the trust related properties of the packages that post
+ * notifications, i.e. whether a package is signed with the platform key, is a system app and is a
+ * privileged app.
+ *
+ * <p> Resolving these properties requires a binder call to the {@link PackageManager}, which is
+ * too expensive to make for every notification that is filtered or considered for heads-up. The
+ * cache is invalidated when packages are added, removed, replaced or changed, and when the
+ * foreground user switches.
+ */
+public class PackageTrustCache {
+    private static final String TAG = "PackageTrustCache";
+
+    @VisibleForTesting
+    static final int FLAG_SIGNED_WITH_PLATFORM_KEY = 1;
+    @VisibleForTesting
+    static final int FLAG_SYSTEM_APP = 1 << 1;
+    @VisibleForTesting
+    static final int FLAG_PRIVILEGED_APP = 1 << 2;
+
+    private static PackageTrustCache sInstance;
+
+    private final Context mContext;
+    private final Object mLock = new Object();
+
+    /** Trust flags of the packages, keyed by user id and then by package name. */
+    @GuardedBy("mLock")
+    private final SparseArray<ArrayMap<String, Integer>> mTrustFlags = new SparseArray<>();
+    @GuardedBy("mLock")
+    private int mCurrentUser = UserHandle.USER_NULL;
+    @GuardedBy("mLock")
+    private long mHitCount;
+    @GuardedBy("mLock")
+    private long mMissCount;
+    @GuardedBy("mLock")
+    private long mInvalidationCount;
+
+    @VisibleForTesting
+    final BroadcastReceiver mPackageChangeReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            String action = intent.getAction();
+            if (Intent.ACTION_USER_SWITCHED.equals(action)) {
+                invalidateAll();
+                return;
+            }
+            if (intent.getData() != null) {
+                invalidatePackage(intent.getData().getSchemeSpecificPart());
+            }
+        }
+    };
+
+    private PackageTrustCache(Context context) {
+        mContext = context.getApplicationContext() != null
+                ? context.getApplicationContext() : context;
+
+        IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addDataScheme("package");
+        // The process may run as a different user than the foreground user, e.g. the headless
+        // system user, so package changes are observed for all users.
+        mContext.registerReceiverForAllUsers(mPackageChangeReceiver, packageFilter,
+                /* broadcastPermission= */ null, /* scheduler= */ null);
+        mContext.registerReceiver(mPackageChangeReceiver,
+                new IntentFilter(Intent.ACTION_USER_SWITCHED));
+    }
+
+    public static synchronized PackageTrustCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PackageTrustCache(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Drops the shared instance so that the next {@link #getInstance} call starts with an empty
+     * cache.
+     */
+    @VisibleForTesting
+    static synchronized void resetInstance() {
+        sInstance = null;
+    }
+
+    /**
+     * Returns {@code true} if the package is signed with the platform key for the current user.
+     */
+    public boolean isSignedWithPlatformKey(String packageName) {
+        return (getTrustFlags(packageName) & FLAG_SIGNED_WITH_PLATFORM_KEY) != 0;
+    }
+
+    /**
+     * Returns {@code true} if the package is a system app for the current user.
+     */
+    public boolean isSystemApp(String packageName) {
+        return (getTrustFlags(packageName) & FLAG_SYSTEM_APP) != 0;
+    }
+
+    /**
+     * Returns {@code true} if the package is a privileged app for the current user.
+     */
+    public boolean isPrivilegedApp(String packageName) {
+        return (getTrustFlags(packageName) & FLAG_PRIVILEGED_APP) != 0;
+    }
+
+    /**
+     * Returns the trust flags of the package for the current user. Packages that cannot be found
+     * have no flags set.
+     */
+    @VisibleForTesting
+    int getTrustFlags(String packageName) {
+        int userId;
+        long invalidationCount;
+        synchronized (mLock) {
+            if (mCurrentUser == UserHandle.USER_NULL) {
+                mCurrentUser = ActivityManager.getCurrentUser();
+            }
+            userId = mCurrentUser;
+            ArrayMap<String, Integer> userFlags = mTrustFlags.get(userId);
+            Integer flags = userFlags == null ? null : userFlags.get(packageName);
+            if (flags != null) {
+                mHitCount++;
+                return flags;
+            }
+            mMissCount++;
+            invalidationCount = mInvalidationCount;
+        }
+
+        int flags = loadTrustFlags(packageName, userId);
+
+        synchronized (mLock) {
+            // Do not store the result if the user switched or the cache was invalidated while the
+            // package was being loaded, since the result may be stale.
+            if (userId == mCurrentUser && invalidationCount == mInvalidationCount) {
+                ArrayMap<String, Integer> userFlags = mTrustFlags.get(userId);
+                if (userFlags == null) {
+                    userFlags = new ArrayMap<>();
+                    mTrustFlags.put(userId, userFlags);
+                }
+                userFlags.put(packageName, flags);
+            }
+        }
+        return flags;
+    }
+
+    private int loadTrustFlags(String packageName, int userId) {
+        PackageInfo packageInfo = null;
+        try {
+            packageInfo = mContext.getPackageManager().getPackageInfoAsUser(
+                    packageName, /* flags= */ 0, userId);
+        } catch (PackageManager.NameNotFoundException ex) {
+            Log.e(TAG, "package not found: " + packageName);
+        }
+        if (packageInfo == null || packageInfo.applicationInfo == null) {
+            return 0;
+        }
+
+        ApplicationInfo applicationInfo = packageInfo.applicationInfo;
+        int flags = 0;
+        if (applicationInfo.isSignedWithPlatformKey()) {
+            flags |= FLAG_SIGNED_WITH_PLATFORM_KEY;
+        }
+        if (applicationInfo.isSystemApp()) {
+            flags |= FLAG_SYSTEM_APP;
+        }
+        if (applicationInfo.isPrivilegedApp()) {
+            flags |= FLAG_PRIVILEGED_APP;
+        }
+        return flags;
+    }
+
+    /**
+     * Removes the cached flags of the package for all users.
+     */
+    public void invalidatePackage(String packageName) {
+        synchronized (mLock) {
+            for (int i = 0; i < mTrustFlags.size(); i++) {
+                mTrustFlags.valueAt(i).remove(packageName);
+            }
+            mInvalidationCount++;
+        }
+    }
+
+    /**
+     * Removes all cached flags and re-reads the current user on the next lookup.
+     */
+    public void invalidateAll() {
+        synchronized (mLock) {
+            mTrustFlags.clear();
+            mCurrentUser = UserHandle.USER_NULL;
+            mInvalidationCount++;
+        }
+    }
+
+    /** Returns the number of lookups that were served from the cache. */
+    public long getHitCount() {
+        synchronized (mLock) {
+            return mHitCount;
+        }
+    }
+
+    /** Returns the number of lookups that required a call to the {@link PackageManager}. */
+    public long getMissCount() {
+        synchronized (mLock) {
+            return mMissCount;
+        }
+    }
+
+    /** Prints the state of the cache. */
+    public void dump(PrintWriter pw) {
+        synchronized (mLock) {
+            pw.println(TAG + ":");
+            pw.println("  currentUser=" + mCurrentUser);
+            pw.println("  hits=" + mHitCount + " misses=" + mMissCount
+                    + " invalidations=" + mInvalidationCount);
+            for (int i = 0; i < mTrustFlags.size(); i++) {
+                pw.println("  user " + mTrustFlags.keyAt(i) + ": "
+                        + mTrustFlags.valueAt(i).size() + " packages");
+            }
+        }
+    }
+}
@@ -39,15 +39,24 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.SortedMap;
-import java.util.TreeMap;
-import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
  * Manager that filters, groups and ranks the notifications in the notification center.
  *
  * <p> Note that heads-up notifications have a different filtering mechanism and is managed by
  * {@link CarHeadsUpNotificationManager}.
+ *
+ * <p> The notifications of the notification center are kept between calls. {@link #init},
+ * {@link #process}, {@link #updateNotifications} and {@link #shouldFilter(AlertEntry, RankingMap)}
+ * must all be called on the same thread, which is the thread of {@link #getExecutor} in the app.
+ *
+ * <p> The notifications are shared with the main thread and are never modified on that thread.
+ * They are optimized for driving by {@link #optimizeForDriving(AlertEntry)} on the main thread
+ * before they are shared, and group summaries whose timestamp is updated are replaced by copies.
+ * When the maximum length of the texts changes, the main thread replaces the shared notifications
+ * by copies from {@link #copyOptimizedForDriving(AlertEntry)}.
  */
 public class PreprocessingManager {
 
@@ -59,21 +68,49 @@ public class PreprocessingManager {
         void onCallStateChanged(boolean isInCall);
     }
 
+    /** Listener that will be notified when the maximum length of the texts changes. **/
+    public interface MaxStringLengthListener {
+        /**
+         * Called on the main thread after the maximum length changed. Notifications that are
+         * received from then on are trimmed to the new length.
+         */
+        void onMaxStringLengthChanged();
+    }
+
     private static final String TAG = "PreprocessingManager";
+    private static final Comparator<String> GROUP_KEY_COMPARATOR =
+            Comparator.nullsFirst(Comparator.naturalOrder());
 
     private final String mEllipsizedString;
     private final Context mContext;
 
     private static PreprocessingManager sInstance;
 
-    private int mMaxStringLength = Integer.MAX_VALUE;
+    // Set on the main thread and read by the preprocessing thread.
+    private volatile int mMaxStringLength = Integer.MAX_VALUE;
+    private Executor mExecutor;
     private Map<String, AlertEntry> mOldNotifications;
+    /** Whether {@link #mOldNotifications} is a copy that may be updated in place. */
+    private boolean mOwnsOldNotifications;
     private List<NotificationGroup> mOldProcessedNotifications;
     private NotificationListenerService.RankingMap mOldRankingMap;
+    private RankingSnapshot mOldRankingSnapshot;
+    private RankingSnapshot mRankingSnapshot;
     private Map<String, Integer> mRanking = new HashMap<>();
+    // Maps the key of every notification in mOldProcessedNotifications (both child and group
+    // summary notifications) to the NotificationGroup that currently holds it.
+    private final Map<String, NotificationGroup> mProcessedGroupIndex = new HashMap<>();
+    // Scratch index and buffer of group(), kept so that their capacity is reused across calls.
+    // This makes group() non-reentrant: it must only be called from a single thread at a time.
+    private final Map<String, NotificationGroup> mGroupIndex = new HashMap<>();
+    private final List<NotificationGroup> mGroupBuffer = new ArrayList<>();
+    private boolean mOldShowLessImportantNotifications;
+    // Copies of the group summaries whose timestamp was updated, by notification key.
+    private final Map<String, SummaryCopy> mSummaryCopies = new HashMap<>();
 
     private boolean mIsInCall;
     private List<CallStateListener> mCallStateListeners = new ArrayList<>();
+    private List<MaxStringLengthListener> mMaxStringLengthListeners = new ArrayList<>();
 
     @VisibleForTesting
     final BroadcastReceiver mIntentReceiver = new BroadcastReceiver() {
@@ -107,40 +144,87 @@ public class PreprocessingManager {
     }
 
     /**
-     * Initialize the data when the UI becomes foreground.
+     * Returns the executor of the thread that owns the notifications of this manager.
+     */
+    synchronized Executor getExecutor() {
+        if (mExecutor == null) {
+            mExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, TAG));
+        }
+        return mExecutor;
+    }
+
+    /**
+     * Initialize the data when the UI becomes foreground. The map of notifications may be a
+     * read-only snapshot; it is kept as it is and only copied by the first update that changes
+     * it, see {@link #updateNotifications}.
      */
     public void init(Map<String, AlertEntry> notifications, RankingMap rankingMap) {
+        init(notifications, rankingMap, /* showLessImportantNotifications= */ false);
+    }
+
+    /**
+     * Initialize the data like {@link #init(Map, RankingMap)} and process the notifications once.
+     *
+     * @param showLessImportantNotifications whether less important notifications should be shown.
+     * @return the processed notifications in a read-only list, the same as {@link #process}
+     * returns for the given notifications.
+     */
+    public List<NotificationGroup> init(Map<String, AlertEntry> notifications,
+            RankingMap rankingMap, boolean showLessImportantNotifications) {
         mOldNotifications = notifications;
+        mOwnsOldNotifications = false;
         mOldRankingMap = rankingMap;
-        mOldProcessedNotifications =
-                process(/* showLessImportantNotifications = */ false, notifications, rankingMap);
+        mOldRankingSnapshot = new RankingSnapshot(rankingMap);
+        reprocess(showLessImportantNotifications);
+        return mOldProcessedNotifications;
     }
 
     /**
      * Process the given notifications. In order for DiffUtil to work, the adapter needs a new
-     * data object each time it updates, therefore wrapping the return value in a new list.
+     * data object each time it updates, therefore the processed notifications are returned as a
+     * new read-only list of frozen {@link NotificationGroup}s that is never modified afterwards.
      *
      * @param showLessImportantNotifications whether less important notifications should be shown.
      * @param notifications the list of notifications to be processed.
      * @param rankingMap the ranking map for the notifications.
-     * @return the processed notifications in a new list.
+     * @return the processed notifications in a new read-only list.
      */
     public List<NotificationGroup> process(
             boolean showLessImportantNotifications,
             Map<String, AlertEntry> notifications,
             RankingMap rankingMap) {
 
-        return new ArrayList<>(
-                rank(group(optimizeForDriving(
+        return freeze(
+                rank(group(
                         filter(showLessImportantNotifications,
                                 new ArrayList<>(notifications.values()),
-                                rankingMap))),
+                                rankingMap)),
                         rankingMap));
     }
 
+    /**
+     * Freezes the groups of the list and returns a read-only view of it. The caller must not keep
+     * a modifiable reference to the list.
+     */
+    private static List<NotificationGroup> freeze(List<NotificationGroup> notifications) {
+        for (int i = 0; i < notifications.size(); i++) {
+            notifications.get(i).freeze();
+        }
+        return Collections.unmodifiableList(notifications);
+    }
+
     /**
      * Create a new list of notifications based on existing list.
      *
+     * <p> Lists returned earlier are never modified. The new list shares the
+     * {@link NotificationGroup}s that did not change with the previous list, so the adapter can
+     * tell them apart by identity.
+     *
+     * <p> Updates and removals of notifications that are already shown are applied incrementally
+     * by only replacing the affected {@link NotificationGroup}. The full {@link #process} pipeline
+     * is only run when the update can change the grouping of other notifications, e.g. when a
+     * group summary is removed or when a notification moves to another group.
+     *
      * @param showLessImportantNotifications whether less important notifications should be shown.
      * @param newRankingMap the latest ranking map for the notifications.
      * @return the new notification group list that should be shown to the user.
@@ -152,31 +236,163 @@ public class PreprocessingManager {
             RankingMap newRankingMap) {
 
         if (updateType == CarNotificationListener.NOTIFY_NOTIFICATION_REMOVED) {
-            // removal of a notification is the same as a normal preprocessing
-            mOldNotifications.remove(alertEntry.getKey());
-            mOldProcessedNotifications =
-                    process(showLessImportantNotifications, mOldNotifications, mOldRankingMap);
+            AlertEntry oldNotification =
+                    getMutableOldNotifications().remove(alertEntry.getKey());
+            if (showLessImportantNotifications != mOldShowLessImportantNotifications
+                    || !removeIncrementally(alertEntry.getKey(), oldNotification)) {
+                reprocess(showLessImportantNotifications);
+            }
         }
 
         if (updateType == CarNotificationListener.NOTIFY_NOTIFICATION_POSTED) {
-            AlertEntry notification = optimizeForDriving(alertEntry);
-            boolean isUpdate = mOldNotifications.containsKey(notification.getKey());
-            if (isUpdate) {
+            AlertEntry oldNotification =
+                    getMutableOldNotifications().put(alertEntry.getKey(), alertEntry);
+            if (oldNotification != null) {
                 // if is an update of the previous notification
-                mOldNotifications.put(notification.getKey(), notification);
-                mOldProcessedNotifications = process(showLessImportantNotifications,
-                        mOldNotifications, mOldRankingMap);
+                if (showLessImportantNotifications != mOldShowLessImportantNotifications
+                        || !updateIncrementally(showLessImportantNotifications,
+                                oldNotification, alertEntry)) {
+                    reprocess(showLessImportantNotifications);
+                }
             } else {
                 // insert a new notification into the list
-                mOldNotifications.put(notification.getKey(), notification);
-                mOldProcessedNotifications = new ArrayList<>(
-                        additionalRank(additionalGroup(alertEntry), newRankingMap));
+                mOldProcessedNotifications =
+                        freeze(additionalRank(additionalGroup(alertEntry), newRankingMap));
             }
         }
 
         return mOldProcessedNotifications;
     }
 
+    /**
+     * Returns the notifications to update, copying the map given to {@link #init} the first time.
+     */
+    private Map<String, AlertEntry> getMutableOldNotifications() {
+        if (!mOwnsOldNotifications) {
+            mOldNotifications = new HashMap<>(mOldNotifications);
+            mOwnsOldNotifications = true;
+        }
+        return mOldNotifications;
+    }
+
+    /**
+     * Runs the full {@link #process} pipeline on all notifications and rebuilds the index of the
+     * processed notification groups.
+     */
+    private void reprocess(boolean showLessImportantNotifications) {
+        // Forget the copies of the summaries that are no longer posted.
+        mSummaryCopies.values().removeIf(
+                summaryCopy -> mOldNotifications.get(summaryCopy.mSummary.getKey())
+                        != summaryCopy.mSummary);
+        mOldShowLessImportantNotifications = showLessImportantNotifications;
+        mOldProcessedNotifications =
+                process(showLessImportantNotifications, mOldNotifications, mOldRankingMap);
+        mProcessedGroupIndex.clear();
+        mOldProcessedNotifications.forEach(this::indexGroup);
+    }
+
+    private void indexGroup(NotificationGroup group) {
+        AlertEntry summary = group.getGroupSummaryNotification();
+        if (summary != null) {
+            mProcessedGroupIndex.put(summary.getKey(), group);
+        }
+        group.getChildNotifications().forEach(
+                notification -> mProcessedGroupIndex.put(notification.getKey(), group));
+    }
+
+    /**
+     * Replaces {@code oldGroup} with {@code newGroup} in a copy of the processed notifications so
+     * that the list previously handed out to the adapter stays untouched. Only the list is
+     * copied; the other groups are shared.
+     */
+    private void replaceGroup(NotificationGroup oldGroup, @Nullable NotificationGroup newGroup) {
+        List<NotificationGroup> notifications = new ArrayList<>(mOldProcessedNotifications);
+        int index = notifications.indexOf(oldGroup);
+        if (newGroup == null) {
+            notifications.remove(index);
+        } else {
+            notifications.set(index, newGroup);
+            indexGroup(newGroup);
+        }
+        mOldProcessedNotifications = freeze(notifications);
+    }
+
+    /**
+     * Applies an update of a notification that has already been processed without re-processing
+     * the other notifications.
+     *
+     * @return {@code false} if the update could affect the grouping or the filtering of the
+     * notifications and a full re-process is required.
+     */
+    private boolean updateIncrementally(boolean showLessImportantNotifications,
+            AlertEntry oldNotification, AlertEntry newNotification) {
+        boolean isFiltered = Notification.CATEGORY_CALL.equals(
+                newNotification.getNotification().category)
+                || (!showLessImportantNotifications
+                && shouldFilter(newNotification, mOldRankingMap));
+
+        NotificationGroup oldGroup = mProcessedGroupIndex.get(newNotification.getKey());
+        if (oldGroup == null) {
+            // The notification was not shown; nothing changes if it is still filtered out.
+            return isFiltered;
+        }
+
+        if (isFiltered
+                || !TextUtils.equals(oldGroup.getGroupKey(),
+                        newNotification.getStatusBarNotification().getGroupKey())
+                || oldNotification.getNotification().isGroupSummary()
+                != newNotification.getNotification().isGroupSummary()) {
+            return false;
+        }
+
+        NotificationGroup newGroup = new NotificationGroup(oldGroup);
+        if (!newGroup.replaceNotification(newNotification)) {
+            return false;
+        }
+        if (newGroup.isGroup()) {
+            Collections.sort(newGroup.getChildNotifications(),
+                    new InGroupComparator(getRankingSnapshot(mOldRankingMap)));
+        }
+        updateGroupSummaryTimestamp(newGroup);
+        replaceGroup(oldGroup, newGroup);
+        return true;
+    }
+
+    /**
+     * Applies the removal of a notification without re-processing the other notifications.
+     *
+     * @return {@code false} if the removal could affect the grouping of the remaining
+     * notifications and a full re-process is required.
+     */
+    private boolean removeIncrementally(String key, @Nullable AlertEntry oldNotification) {
+        NotificationGroup oldGroup = mProcessedGroupIndex.remove(key);
+        if (oldGroup == null) {
+            // The notification was not shown.
+            return true;
+        }
+
+        if (oldNotification == null || oldNotification.getNotification().isGroupSummary()) {
+            // Without the summary the remaining children may have to be ungrouped.
+            mProcessedGroupIndex.put(key, oldGroup);
+            return false;
+        }
+
+        NotificationGroup newGroup = new NotificationGroup(oldGroup);
+        newGroup.removeNotification(key);
+        if (newGroup.getChildCount() == 0) {
+            // Groups with no child notifications are not shown.
+            AlertEntry summary = newGroup.getGroupSummaryNotification();
+            if (summary != null) {
+                mProcessedGroupIndex.remove(summary.getKey());
+            }
+            replaceGroup(oldGroup, /* newGroup= */ null);
+            return true;
+        }
+        updateGroupSummaryTimestamp(newGroup);
+        replaceGroup(oldGroup, newGroup);
+        return true;
+    }
+
     /** Add {@link CallStateListener} in order to be notified when call state is changed. **/
     public void addCallStateListener(CallStateListener listener) {
         if (mCallStateListeners.contains(listener)) return;
@@ -189,12 +405,38 @@ public class PreprocessingManager {
         mCallStateListeners.remove(listener);
     }
 
+    /**
+     * Add {@link MaxStringLengthListener} in order to be notified when the maximum length of the
+     * texts is changed.
+     */
+    public void addMaxStringLengthListener(MaxStringLengthListener listener) {
+        if (mMaxStringLengthListeners.contains(listener)) return;
+        mMaxStringLengthListeners.add(listener);
+    }
+
+    /**
+     * Remove {@link MaxStringLengthListener} to stop getting notified when the maximum length of
+     * the texts is changed.
+     */
+    public void removeMaxStringLengthListener(MaxStringLengthListener listener) {
+        mMaxStringLengthListeners.remove(listener);
+    }
+
     /**
      * Returns true if the current {@link AlertEntry} should be filtered out and not
      * added to the list.
      */
     boolean shouldFilter(AlertEntry alertEntry, RankingMap rankingMap) {
-        return isLessImportantForegroundNotification(alertEntry, rankingMap)
+        return shouldFilter(alertEntry, getRankingSnapshot(rankingMap));
+    }
+
+    /**
+     * Same as {@link #shouldFilter(AlertEntry, RankingMap)} but reads the importance from the
+     * given snapshot instead of the snapshots of this manager, so it can be called on any thread
+     * that owns the snapshot.
+     */
+    boolean shouldFilter(AlertEntry alertEntry, RankingSnapshot rankingSnapshot) {
+        return isLessImportantForegroundNotification(alertEntry, rankingSnapshot)
                 || isMediaOrNavigationNotification(alertEntry);
     }
 
@@ -208,7 +450,8 @@ public class PreprocessingManager {
             RankingMap rankingMap) {
         // remove notifications that should be filtered.
         if (!showLessImportantNotifications) {
-            notifications.removeIf(alertEntry -> shouldFilter(alertEntry, rankingMap));
+            RankingSnapshot rankingSnapshot = getRankingSnapshot(rankingMap);
+            notifications.removeIf(alertEntry -> shouldFilter(alertEntry, rankingSnapshot));
         }
 
         // Call notifications should not be shown in the panel.
@@ -222,7 +465,7 @@ public class PreprocessingManager {
     }
 
     private boolean isLessImportantForegroundNotification(AlertEntry alertEntry,
-            RankingMap rankingMap) {
+            RankingSnapshot rankingSnapshot) {
         boolean isForeground =
                 (alertEntry.getNotification().flags
                         & Notification.FLAG_FOREGROUND_SERVICE) != 0;
@@ -231,15 +474,10 @@ public class PreprocessingManager {
             return false;
         }
 
-        int importance = 0;
-        NotificationListenerService.Ranking ranking =
-                new NotificationListenerService.Ranking();
-        if (rankingMap.getRanking(alertEntry.getKey(), ranking)) {
-            importance = ranking.getImportance();
-        }
+        int importance = rankingSnapshot.getImportance(alertEntry.getKey());
 
         return importance < NotificationManager.IMPORTANCE_DEFAULT
-                && NotificationUtils.isSystemPrivilegedOrPlatformKey(mContext, alertEntry);
+                && alertEntry.getClassification().isSystemPrivilegedOrPlatformKey(mContext);
     }
 
     private boolean isMediaOrNavigationNotification(AlertEntry alertEntry) {
@@ -248,22 +486,12 @@ public class PreprocessingManager {
                 || Notification.CATEGORY_NAVIGATION.equals(notification.category);
     }
 
-    /**
-     * Process a list of {@link AlertEntry}s to be driving optimized.
-     *
-     * <p> Note that the string length limit is always respected regardless of whether distraction
-     * optimization is required.
-     */
-    private List<AlertEntry> optimizeForDriving(List<AlertEntry> notifications) {
-        notifications.forEach(notification -> notification = optimizeForDriving(notification));
-        return notifications;
-    }
-
     /**
      * Helper method that optimize a single {@link AlertEntry} for driving.
      *
      * <p> Currently only trimming texts that have visual effects in car. Operation is done on
-     * the original notification object passed in; no new object is created.
+     * the original notification object passed in; no new object is created. It must therefore be
+     * called before the notification is shared with other threads.
      *
      * <p> Note that message notifications are not trimmed, so that messages are preserved for
      * assistant read-out. Instead, {@link MessageNotificationViewHolder} will be responsible
@@ -290,19 +518,48 @@ public class PreprocessingManager {
         return alertEntry;
     }
 
+    /**
+     * Same as {@link #optimizeForDriving(AlertEntry)} but leaves the notification untouched, so
+     * it can be used for notifications that are shared with other threads.
+     *
+     * <p> Texts that were trimmed before are not restored if the maximum length grows.
+     *
+     * @return a trimmed copy of the notification, or the notification itself if none of its texts
+     * is too long.
+     */
+    AlertEntry copyOptimizedForDriving(AlertEntry alertEntry) {
+        Notification notification = alertEntry.getNotification();
+        if (Notification.CATEGORY_MESSAGE.equals(notification.category)) {
+            return alertEntry;
+        }
+
+        Bundle extras = notification.extras;
+        if (isTooLong(extras.getCharSequence(Notification.EXTRA_TITLE))
+                || isTooLong(extras.getCharSequence(Notification.EXTRA_TEXT))
+                || isTooLong(extras.getCharSequence(Notification.EXTRA_TITLE_BIG))
+                || isTooLong(extras.getCharSequence(Notification.EXTRA_SUMMARY_TEXT))) {
+            return optimizeForDriving(new AlertEntry(alertEntry, notification.clone()));
+        }
+        return alertEntry;
+    }
+
     /**
      * Helper method that takes a string and trims the length to the maximum character allowed
      * by the {@link CarUxRestrictionsManager}.
      */
     @Nullable
     public CharSequence trimText(@Nullable CharSequence text) {
-        if (TextUtils.isEmpty(text) || text.length() < mMaxStringLength) {
+        if (!isTooLong(text)) {
             return text;
         }
         int maxLength = mMaxStringLength - mEllipsizedString.length();
         return text.toString().substring(0, maxLength).concat(mEllipsizedString);
     }
 
+    private boolean isTooLong(@Nullable CharSequence text) {
+        return !TextUtils.isEmpty(text) && text.length() > mMaxStringLength;
+    }
+
     /**
      * Group notifications that have the same group key.
      *
@@ -312,142 +569,170 @@ public class PreprocessingManager {
      *
      * <p> A group of child notifications without a summary notification will not be grouped.
      *
+     * <p> Groups are returned in the order their first notification appears in {@code list}.
+     * This method reuses scratch state of the manager and is not reentrant.
+     *
      * @param list list of ungrouped {@link AlertEntry}s.
      * @return list of grouped notifications as {@link NotificationGroup}s.
      */
     @VisibleForTesting
     List<NotificationGroup> group(List<AlertEntry> list) {
-        SortedMap<String, NotificationGroup> groupedNotifications = new TreeMap<>();
-
-        // First pass: group all notifications according to their groupKey.
-        for (int i = 0; i < list.size(); i++) {
-            AlertEntry alertEntry = list.get(i);
-            Notification notification = alertEntry.getNotification();
-
-            String groupKey;
-            if (Notification.CATEGORY_CALL.equals(notification.category)) {
-                // DO NOT group CATEGORY_CALL.
-                groupKey = UUID.randomUUID().toString();
-            } else {
-                groupKey = alertEntry.getStatusBarNotification().getGroupKey();
-            }
+        List<NotificationGroup> groupList = mGroupBuffer;
+        try {
+            // First pass: group all notifications according to their groupKey. Groups are kept
+            // in the order in which their first notification appears in the list.
+            for (int i = 0; i < list.size(); i++) {
+                AlertEntry alertEntry = list.get(i);
+                Notification notification = alertEntry.getNotification();
+
+                String groupKey;
+                if (Notification.CATEGORY_CALL.equals(notification.category)) {
+                    // DO NOT group CATEGORY_CALL. The notification key is unique and can not be
+                    // equal to the group key of another notification, so the call stays alone.
+                    groupKey = alertEntry.getKey();
+                } else {
+                    groupKey = alertEntry.getStatusBarNotification().getGroupKey();
+                }
 
-            if (!groupedNotifications.containsKey(groupKey)) {
-                NotificationGroup notificationGroup = new NotificationGroup();
-                groupedNotifications.put(groupKey, notificationGroup);
-            }
-            if (notification.isGroupSummary()) {
-                groupedNotifications.get(groupKey)
-                        .setGroupSummaryNotification(alertEntry);
-            } else {
-                groupedNotifications.get(groupKey).addNotification(alertEntry);
+                NotificationGroup notificationGroup = mGroupIndex.get(groupKey);
+                if (notificationGroup == null) {
+                    notificationGroup = new NotificationGroup();
+                    mGroupIndex.put(groupKey, notificationGroup);
+                    groupList.add(notificationGroup);
+                }
+                if (notification.isGroupSummary()) {
+                    notificationGroup.setGroupSummaryNotification(alertEntry);
+                } else {
+                    notificationGroup.addNotification(alertEntry);
+                }
             }
-        }
 
-        // Second pass: remove automatically generated group summary if it contains no child
-        // notifications. This can happen if a notification group only contains less important
-        // notifications that are filtered out in the previous filter step.
-        List<NotificationGroup> groupList = new ArrayList<>(groupedNotifications.values());
-        groupList.removeIf(
-                notificationGroup -> {
-                    AlertEntry summaryNotification =
-                            notificationGroup.getGroupSummaryNotification();
-                    return notificationGroup.getChildCount() == 0
-                            && summaryNotification != null
-                            && summaryNotification.getStatusBarNotification().getOverrideGroupKey()
-                            != null;
-                });
-
-        // Third pass: a notification group without a group summary should be restored back into
-        // individual notifications.
-        List<NotificationGroup> validGroupList = new ArrayList<>();
-        groupList.forEach(
-                group -> {
-                    if (group.getChildCount() > 1 && group.getGroupSummaryNotification() == null) {
-                        group.getChildNotifications().forEach(
-                                notification -> {
-                                    NotificationGroup newGroup = new NotificationGroup();
-                                    newGroup.addNotification(notification);
-                                    validGroupList.add(newGroup);
-                                });
-                    } else {
-                        validGroupList.add(group);
+            // Second pass:
+            // - groups with no child notifications are removed. This includes automatically
+            //   generated group summaries whose children are all less important notifications
+            //   that were filtered out in the previous filter step.
+            // - a notification group without a group summary is restored back into individual
+            //   notifications.
+            // - if a notification is a group notification, the timestamp is updated if one of
+            //   the children notifications shows a timestamp.
+            List<NotificationGroup> validGroupList = new ArrayList<>(groupList.size());
+            for (int i = 0; i < groupList.size(); i++) {
+                NotificationGroup group = groupList.get(i);
+                if (group.getChildCount() == 0) {
+                    continue;
+                }
+                if (group.getChildCount() > 1 && group.getGroupSummaryNotification() == null) {
+                    List<AlertEntry> childNotifications = group.getChildNotifications();
+                    for (int j = 0; j < childNotifications.size(); j++) {
+                        validGroupList.add(new NotificationGroup(childNotifications.get(j)));
                     }
-                });
-
-        // Fourth Pass: group notifications with no child notifications should be removed.
-        validGroupList.removeIf(notificationGroup ->
-                notificationGroup.getChildNotifications().isEmpty());
-
-        // Fifth pass: if a notification is a group notification, update the timestamp if one of
-        // the children notifications shows a timestamp.
-        validGroupList.forEach(group -> {
-            if (!group.isGroup()) {
-                return;
-            }
-
-            AlertEntry groupSummaryNotification = group.getGroupSummaryNotification();
-            boolean showWhen = false;
-            long greatestTimestamp = 0;
-            for (AlertEntry notification : group.getChildNotifications()) {
-                if (notification.getNotification().showsTime()) {
-                    showWhen = true;
-                    greatestTimestamp = Math.max(greatestTimestamp,
-                            notification.getNotification().when);
+                    continue;
                 }
+                updateGroupSummaryTimestamp(group);
+                validGroupList.add(group);
             }
+            return validGroupList;
+        } finally {
+            // Do not hold on to the notifications until the next call.
+            mGroupIndex.clear();
+            groupList.clear();
+        }
+    }
+
+    /**
+     * Updates the timestamp of the group summary notification to the greatest timestamp of the
+     * child notifications if one of them shows a timestamp.
+     *
+     * <p> The summary is shared with the main thread, so it is not modified. The group gets a copy
+     * of the summary with the updated timestamp instead, which is kept until the summary or the
+     * timestamp changes.
+     */
+    private void updateGroupSummaryTimestamp(NotificationGroup group) {
+        if (!group.isGroup()) {
+            return;
+        }
 
-            if (showWhen) {
-                groupSummaryNotification.getNotification().extras.putBoolean(
-                        Notification.EXTRA_SHOW_WHEN, true);
-                groupSummaryNotification.getNotification().when = greatestTimestamp;
+        AlertEntry groupSummaryNotification = group.getGroupSummaryNotification();
+        SummaryCopy summaryCopy = mSummaryCopies.get(groupSummaryNotification.getKey());
+        if (summaryCopy != null && summaryCopy.mCopy == groupSummaryNotification) {
+            // Start over from the summary that was posted.
+            groupSummaryNotification = summaryCopy.mSummary;
+        }
+        boolean showWhen = false;
+        long greatestTimestamp = 0;
+        for (AlertEntry notification : group.getChildNotifications()) {
+            if (notification.getNotification().showsTime()) {
+                showWhen = true;
+                greatestTimestamp = Math.max(greatestTimestamp,
+                        notification.getNotification().when);
             }
-        });
+        }
 
-        return validGroupList;
+        Notification notification = groupSummaryNotification.getNotification();
+        if (!showWhen || (notification.showsTime() && notification.when == greatestTimestamp)) {
+            group.setGroupSummaryNotification(groupSummaryNotification);
+            return;
+        }
+        if (summaryCopy == null || summaryCopy.mSummary != groupSummaryNotification
+                || summaryCopy.mCopy.getNotification().when != greatestTimestamp) {
+            Notification notificationCopy = notification.clone();
+            notificationCopy.extras.putBoolean(Notification.EXTRA_SHOW_WHEN, true);
+            notificationCopy.when = greatestTimestamp;
+            summaryCopy = new SummaryCopy(groupSummaryNotification,
+                    new AlertEntry(groupSummaryNotification, notificationCopy));
+            mSummaryCopies.put(groupSummaryNotification.getKey(), summaryCopy);
+        }
+        group.setGroupSummaryNotification(summaryCopy.mCopy);
     }
 
     /**
      * Add new NotificationGroup to an existing list of NotificationGroups.
      *
      * @param newNotification the {@link AlertEntry} that should be added to the list.
-     * @return list of grouped notifications as {@link NotificationGroup}s.
+     * @return a new list of grouped notifications as {@link NotificationGroup}s that shares the
+     * existing groups. The existing list is not modified.
      */
     @VisibleForTesting
     protected List<NotificationGroup> additionalGroup(AlertEntry newNotification) {
         Notification notification = newNotification.getNotification();
+        List<NotificationGroup> notifications = new ArrayList<>(mOldProcessedNotifications);
 
         if (notification.isGroupSummary()) {
             // if child notifications already exist, ignore this insertion
             for (String key : mOldNotifications.keySet()) {
                 if (hasSameGroupKey(mOldNotifications.get(key), newNotification)) {
-                    return mOldProcessedNotifications;
+                    return notifications;
                 }
             }
             // if child notifications do not exist, insert the summary as a new notification
             NotificationGroup newGroup = new NotificationGroup();
             newGroup.setGroupSummaryNotification(newNotification);
-            mOldProcessedNotifications.add(newGroup);
-            return mOldProcessedNotifications;
+            newGroup.freeze();
+            notifications.add(newGroup);
+            indexGroup(newGroup);
+            return notifications;
         } else {
-            for (int i = 0; i < mOldProcessedNotifications.size(); i++) {
-                NotificationGroup oldGroup = mOldProcessedNotifications.get(i);
+            NotificationGroup newGroup = new NotificationGroup(newNotification);
+            newGroup.freeze();
+            indexGroup(newGroup);
+            for (int i = 0; i < notifications.size(); i++) {
+                NotificationGroup oldGroup = notifications.get(i);
                 // if a group already exists
                 if (TextUtils.equals(oldGroup.getGroupKey(),
                         newNotification.getStatusBarNotification().getGroupKey())) {
                     // if a standalone group summary exists, replace the group summary notification
                     if (oldGroup.getChildCount() == 0) {
-                        mOldProcessedNotifications.add(i, new NotificationGroup(newNotification));
-                        return mOldProcessedNotifications;
+                        notifications.add(i, newGroup);
+                        return notifications;
                     }
                     // if a group already exist with multiple children, insert outside of the group
-                    mOldProcessedNotifications.add(new NotificationGroup(newNotification));
-                    return mOldProcessedNotifications;
+                    notifications.add(newGroup);
+                    return notifications;
                 }
             }
             // if it is a new notification, insert directly
-            mOldProcessedNotifications.add(new NotificationGroup(newNotification));
-            return mOldProcessedNotifications;
+            notifications.add(newGroup);
+            return notifications;
         }
     }
 
@@ -462,15 +747,15 @@ public class PreprocessingManager {
     @VisibleForTesting
     protected List<NotificationGroup> rank(List<NotificationGroup> notifications,
             RankingMap rankingMap) {
+        RankingSnapshot rankingSnapshot = getRankingSnapshot(rankingMap);
 
-        Collections.sort(notifications, new NotificationComparator(rankingMap));
+        Collections.sort(notifications, new NotificationComparator(rankingSnapshot));
 
         // Rank within each group
+        InGroupComparator inGroupComparator = new InGroupComparator(rankingSnapshot);
         notifications.forEach(notificationGroup -> {
             if (notificationGroup.isGroup()) {
-                Collections.sort(
-                        notificationGroup.getChildNotifications(),
-                        new InGroupComparator(rankingMap));
+                Collections.sort(notificationGroup.getChildNotifications(), inGroupComparator);
             }
         });
         return notifications;
@@ -488,22 +773,44 @@ public class PreprocessingManager {
         return notifications;
     }
 
+    /**
+     * Returns the {@link RankingSnapshot} of the given {@link RankingMap}. Snapshots of the
+     * initial ranking map and of the most recently used ranking map are cached.
+     */
+    private RankingSnapshot getRankingSnapshot(@Nullable RankingMap rankingMap) {
+        if (mOldRankingSnapshot != null && mOldRankingSnapshot.isSnapshotOf(rankingMap)) {
+            return mOldRankingSnapshot;
+        }
+        if (mRankingSnapshot == null || !mRankingSnapshot.isSnapshotOf(rankingMap)) {
+            mRankingSnapshot = new RankingSnapshot(rankingMap);
+        }
+        return mRankingSnapshot;
+    }
+
     @VisibleForTesting
     protected Map getOldNotifications() {
         return mOldNotifications;
     }
 
     public void setCarUxRestrictionManagerWrapper(CarUxRestrictionManagerWrapper manager) {
+        int maxStringLength;
         try {
             if (manager == null || manager.getCurrentCarUxRestrictions() == null) {
                 return;
             }
-            mMaxStringLength =
+            maxStringLength =
                     manager.getCurrentCarUxRestrictions().getMaxRestrictedStringLength();
         } catch (RuntimeException e) {
-            mMaxStringLength = Integer.MAX_VALUE;
+            maxStringLength = Integer.MAX_VALUE;
             Log.e(TAG, "Failed to get UxRestrictions thus running unrestricted", e);
         }
+        if (maxStringLength == mMaxStringLength) {
+            return;
+        }
+        mMaxStringLength = maxStringLength;
+        for (MaxStringLengthListener listener : mMaxStringLengthListeners) {
+            listener.onMaxStringLengthChanged();
+        }
     }
 
     /**
@@ -511,10 +818,10 @@ public class PreprocessingManager {
      * supplied, sort by the global ranking order.
      */
     private static class InGroupComparator implements Comparator<AlertEntry> {
-        private final RankingMap mRankingMap;
+        private final RankingSnapshot mRankingSnapshot;
 
-        InGroupComparator(RankingMap rankingMap) {
-            mRankingMap = rankingMap;
+        InGroupComparator(RankingSnapshot rankingSnapshot) {
+            mRankingSnapshot = rankingSnapshot;
         }
 
         @Override
@@ -525,39 +832,27 @@ public class PreprocessingManager {
                         right.getNotification().getSortKey());
             }
 
-            NotificationListenerService.Ranking leftRanking =
-                    new NotificationListenerService.Ranking();
-            mRankingMap.getRanking(left.getKey(), leftRanking);
-
-            NotificationListenerService.Ranking rightRanking =
-                    new NotificationListenerService.Ranking();
-            mRankingMap.getRanking(right.getKey(), rightRanking);
-
-            return leftRanking.getRank() - rightRanking.getRank();
+            return mRankingSnapshot.getRank(left.getKey())
+                    - mRankingSnapshot.getRank(right.getKey());
         }
     }
 
     /**
      * Comparator that sorts the notification groups by their representative notification's rank.
+     * Groups of the same rank are sorted by their group key.
      */
-    private class NotificationComparator implements Comparator<NotificationGroup> {
-        private final NotificationListenerService.RankingMap mRankingMap;
+    private static class NotificationComparator implements Comparator<NotificationGroup> {
+        private final RankingSnapshot mRankingSnapshot;
 
-        NotificationComparator(NotificationListenerService.RankingMap rankingMap) {
-            mRankingMap = rankingMap;
+        NotificationComparator(RankingSnapshot rankingSnapshot) {
+            mRankingSnapshot = rankingSnapshot;
         }
 
         @Override
         public int compare(NotificationGroup left, NotificationGroup right) {
-            NotificationListenerService.Ranking leftRanking =
-                    new NotificationListenerService.Ranking();
-            mRankingMap.getRanking(left.getNotificationForSorting().getKey(), leftRanking);
-
-            NotificationListenerService.Ranking rightRanking =
-                    new NotificationListenerService.Ranking();
-            mRankingMap.getRanking(right.getNotificationForSorting().getKey(), rightRanking);
-
-            return leftRanking.getRank() - rightRanking.getRank();
+            int result = mRankingSnapshot.getRank(left.getNotificationForSorting().getKey())
+                    - mRankingSnapshot.getRank(right.getNotificationForSorting().getKey());
+            return result != 0 ? result : compareGroupKeys(left, right);
         }
     }
 
@@ -565,7 +860,8 @@ public class PreprocessingManager {
      * Comparator that sorts the notification groups by their representative notification's
      * rank using both of the initial ranking map and the current ranking map.
      *
-     * <p>Cache the ranking value so that it doesn't change over time.</p>
+     * <p>Cache the ranking value so that it doesn't change over time. Groups of the same rank are
+     * sorted by their group key.</p>
      */
     private class AdditionalNotificationComparator implements Comparator<NotificationGroup> {
         private final RankingMap mNewRankingMap;
@@ -578,28 +874,45 @@ public class PreprocessingManager {
         public int compare(NotificationGroup left, NotificationGroup right) {
             int leftRankingNumber = getRanking(left, mNewRankingMap);
             int rightRankingNumber = getRanking(right, mNewRankingMap);
-            return leftRankingNumber - rightRankingNumber;
+            int result = leftRankingNumber - rightRankingNumber;
+            return result != 0 ? result : compareGroupKeys(left, right);
         }
     }
 
+    /**
+     * Orders two groups by their group key, with groups without a key first, so that groups of the
+     * same rank keep a stable order regardless of the order in which they were grouped.
+     */
+    private static int compareGroupKeys(NotificationGroup left, NotificationGroup right) {
+        return GROUP_KEY_COMPARATOR.compare(left.getGroupKey(), right.getGroupKey());
+    }
+
     private int getRanking(NotificationGroup group, RankingMap newRankingMap) {
         int rankingNumber;
 
         if (mRanking.containsKey(group.getGroupKey())) {
             rankingNumber = mRanking.get(group.getGroupKey());
         } else {
-            NotificationListenerService.Ranking rightRanking =
-                    new NotificationListenerService.Ranking();
-            if (!mOldRankingMap.getRanking(
-                    group.getNotificationForSorting().getKey(), rightRanking)) {
-                if (newRankingMap != null) {
-                    newRankingMap.getRanking(
-                            group.getNotificationForSorting().getKey(), rightRanking);
-                }
+            String key = group.getNotificationForSorting().getKey();
+            RankingSnapshot oldRankingSnapshot = getRankingSnapshot(mOldRankingMap);
+            if (oldRankingSnapshot.hasRanking(key)) {
+                rankingNumber = oldRankingSnapshot.getRank(key);
+            } else {
+                rankingNumber = getRankingSnapshot(newRankingMap).getRank(key);
             }
-            rankingNumber = rightRanking.getRank();
         }
         mRanking.putIfAbsent(group.getGroupKey(), rankingNumber);
         return rankingNumber;
     }
+
+    /** A group summary and the copy of it with the updated timestamp of its group. */
+    private static final class SummaryCopy {
+        private final AlertEntry mSummary;
+        private final AlertEntry mCopy;
+
+        SummaryCopy(AlertEntry summary, AlertEntry copy) {
+            mSummary = summary;
+            mCopy = copy;
+        }
+    }
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.notification;
+
+import android.annotation.Nullable;
+import android.os.Handler;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the preprocessing of the notification center off the main thread and hands the processed
+ * notifications back to the main thread.
+ *
+ * <p> Tasks run one at a time, in the order they are submitted, on the executor of the
+ * {@link PreprocessingManager}, which is the only thread that touches its state. The processed
+ * notifications are read-only lists of frozen {@link NotificationGroup}s, so the list a task
+ * returns can be handed to the main thread as it is while the next task builds a new one.
+ *
+ * <p> Only the result of the latest submitted task is published. A result that is superseded by a
+ * later task before it reaches the main thread is dropped, since the later result includes it.
+ * A {@link #reset} rebuilds the state from scratch, so tasks submitted before it that have not
+ * started yet are skipped.
+ *
+ * <p> {@link #reset}, {@link #update} and {@link #isPending} must be called on the thread of the
+ * main handler.
+ */
+class PreprocessingWorker {
+
+    /** A unit of preprocessing work that runs on the worker thread. */
+    interface Task {
+        /**
+         * Returns the processed notifications, or {@code null} if nothing changed.
+         */
+        @Nullable
+        List<NotificationGroup> run();
+    }
+
+    /** Receives the processed notifications on the main thread. */
+    interface Callback {
+        /**
+         * Called with the result of the latest task. The list may be the same instance as the
+         * one of the previous call if the latest task did not change anything.
+         *
+         * @param isReset whether a {@link #reset} has run since the previous call.
+         */
+        void onNotificationsProcessed(List<NotificationGroup> notifications, boolean isReset);
+    }
+
+    private final Executor mExecutor;
+    private final Handler mMainHandler;
+    private final Callback mCallback;
+    /** Generation of the latest submitted task. Main thread only. */
+    private int mGeneration;
+    /** Generation of the latest reset. Written on the main thread, read by the worker. */
+    private volatile int mResetGeneration;
+    /** Latest processed notifications. Worker thread only. */
+    @Nullable
+    private List<NotificationGroup> mLatestResult;
+    /** Generation of the task whose result was last published. Main thread only. */
+    private int mPublishedGeneration;
+
+    PreprocessingWorker(Executor executor, Handler mainHandler, Callback callback) {
+        mExecutor = executor;
+        mMainHandler = mainHandler;
+        mCallback = callback;
+    }
+
+    /**
+     * Submits a task that rebuilds the processed notifications from scratch.
+     */
+    void reset(Task task) {
+        int generation = ++mGeneration;
+        mResetGeneration = generation;
+        submit(generation, task);
+    }
+
+    /**
+     * Submits a task that builds on the processed notifications of the previous tasks.
+     */
+    void update(Task task) {
+        submit(++mGeneration, task);
+    }
+
+    /**
+     * Returns {@code true} if the result of the latest submitted task has not been published yet.
+     */
+    boolean isPending() {
+        return mGeneration != mPublishedGeneration;
+    }
+
+    private void submit(int generation, Task task) {
+        mExecutor.execute(() -> {
+            if (generation < mResetGeneration) {
+                // A later reset starts from scratch anyway.
+                return;
+            }
+            List<NotificationGroup> result = task.run();
+            if (result != null) {
+                mLatestResult = result;
+            }
+            List<NotificationGroup> latestResult = mLatestResult;
+            mMainHandler.post(() -> publish(generation, latestResult));
+        });
+    }
+
+    private void publish(int generation, @Nullable List<NotificationGroup> result) {
+        if (generation != mGeneration) {
+            // A later task has been submitted in the meantime.
+            return;
+        }
+        boolean isReset = mResetGeneration > mPublishedGeneration;
+        mPublishedGeneration = generation;
+        if (result == null) {
+            return;
+        }
+        mCallback.onNotificationsProcessed(result, isReset);
+    }
+}
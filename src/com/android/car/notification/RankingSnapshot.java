@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.car.notification;
+
+import android.annotation.Nullable;
+import android.service.notification.NotificationListenerService.Ranking;
+import android.service.notification.NotificationListenerService.RankingMap;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read-only table of the ranking values of a single {@link RankingMap} instance.
+ *
+ * <p> Each notification key is looked up in the {@link RankingMap} at most once. Its rank,
+ * importance and override group key are copied into primitive arrays so that comparators and
+ * filters can read them repeatedly without allocating a {@link Ranking} per call.
+ *
+ * <p> A {@link RankingMap} is never modified after it has been delivered to the listener, so a
+ * snapshot stays valid for as long as the same instance is used. Callers should create a new
+ * snapshot whenever {@link #isSnapshotOf} returns {@code false}.
+ *
+ * <p> This class is not thread safe.
+ */
+final class RankingSnapshot {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    @Nullable
+    private final RankingMap mRankingMap;
+    private final Ranking mScratchRanking;
+    private final Map<String, Integer> mSlots;
+
+    private int mSize;
+    private boolean[] mHasRanking;
+    private int[] mRanks;
+    private int[] mImportances;
+    private String[] mOverrideGroupKeys;
+
+    RankingSnapshot(@Nullable RankingMap rankingMap) {
+        this(rankingMap, new Ranking());
+    }
+
+    /**
+     * @param rankingMap the ranking map to read the values from.
+     * @param scratchRanking the {@link Ranking} object that is reused to read the values out of
+     * the {@code rankingMap}.
+     */
+    RankingSnapshot(@Nullable RankingMap rankingMap, Ranking scratchRanking) {
+        mRankingMap = rankingMap;
+        mScratchRanking = scratchRanking;
+
+        String[] keys = rankingMap == null ? null : rankingMap.getOrderedKeys();
+        int capacity = keys == null ? DEFAULT_CAPACITY : Math.max(keys.length, DEFAULT_CAPACITY);
+        mSlots = new HashMap<>(capacity * 4 / 3 + 1);
+        mHasRanking = new boolean[capacity];
+        mRanks = new int[capacity];
+        mImportances = new int[capacity];
+        mOverrideGroupKeys = new String[capacity];
+    }
+
+    /**
+     * Returns {@code true} if this snapshot was taken from the given {@link RankingMap} instance.
+     */
+    boolean isSnapshotOf(@Nullable RankingMap rankingMap) {
+        return mRankingMap == rankingMap;
+    }
+
+    /**
+     * Returns {@code true} if the {@link RankingMap} contains a ranking for the given key.
+     */
+    boolean hasRanking(String key) {
+        return mHasRanking[getSlot(key)];
+    }
+
+    /**
+     * Returns the rank of the notification, or 0 if the notification has no ranking.
+     */
+    int getRank(String key) {
+        return mRanks[getSlot(key)];
+    }
+
+    /**
+     * Returns the importance of the notification, or 0 if the notification has no ranking.
+     */
+    int getImportance(String key) {
+        return mImportances[getSlot(key)];
+    }
+
+    /**
+     * Returns the override group key of the notification, or {@code null} if it is not set or the
+     * notification has no ranking.
+     */
+    @Nullable
+    String getOverrideGroupKey(String key) {
+        return mOverrideGroupKeys[getSlot(key)];
+    }
+
+    private int getSlot(String key) {
+        Integer slot = mSlots.get(key);
+        if (slot != null) {
+            return slot;
+        }
+
+        if (mSize == mRanks.length) {
+            int capacity = mSize * 2;
+            mHasRanking = Arrays.copyOf(mHasRanking, capacity);
+            mRanks = Arrays.copyOf(mRanks, capacity);
+            mImportances = Arrays.copyOf(mImportances, capacity);
+            mOverrideGroupKeys = Arrays.copyOf(mOverrideGroupKeys, capacity);
+        }
+
+        int newSlot = mSize++;
+        if (mRankingMap != null && mRankingMap.getRanking(key, mScratchRanking)) {
+            mHasRanking[newSlot] = true;
+            mRanks[newSlot] = mScratchRanking.getRank();
+            mImportances[newSlot] = mScratchRanking.getImportance();
+            mOverrideGroupKeys[newSlot] = mScratchRanking.getOverrideGroupKey();
+        }
+        mSlots.put(key, newSlot);
+        return newSlot;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.notification;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Assigns the stable ids of the items of a notification list.
+ *
+ * <p> Every group key and every standalone notification key gets its own id the first time it is
+ * seen, taken from a 64-bit counter that only goes up, so two different items never share an id.
+ * The id of a key is kept for as long as the key is in the list and is forgotten when the key is
+ * removed; a key that comes back later gets a new id.
+ */
+class StableIdAllocator {
+    /** Ids below this one are reserved for the header and the footer of the list. */
+    static final long FIRST_ID = 2;
+
+    // Group items and standalone items are kept apart since the group key of a notification that
+    // is not in a group is equal to its notification key.
+    private final Map<String, Long> mGroupIds = new HashMap<>();
+    private final Map<String, Long> mNotificationIds = new HashMap<>();
+    private final Set<String> mRetainedGroupKeys = new HashSet<>();
+    private final Set<String> mRetainedNotificationKeys = new HashSet<>();
+    private long mNextId = FIRST_ID;
+
+    /**
+     * Returns the id of the notification group, assigning a new one if it has none yet.
+     */
+    long getId(NotificationGroup notificationGroup) {
+        Map<String, Long> ids = getIds(notificationGroup);
+        String key = getKey(notificationGroup);
+        Long id = ids.get(key);
+        if (id == null) {
+            id = mNextId++;
+            ids.put(key, id);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the id of the notification group, or {@link RecyclerView#NO_ID} if it has none.
+     */
+    long peekId(NotificationGroup notificationGroup) {
+        Long id = getIds(notificationGroup).get(getKey(notificationGroup));
+        return id == null ? RecyclerView.NO_ID : id;
+    }
+
+    /**
+     * Assigns ids to the notification groups of the new list and forgets the ids of the keys that
+     * are no longer in it. Headers and footers are skipped.
+     */
+    void update(List<NotificationGroup> notificationGroups) {
+        for (int i = 0; i < notificationGroups.size(); i++) {
+            NotificationGroup notificationGroup = notificationGroups.get(i);
+            if (notificationGroup.isHeader() || notificationGroup.isFooter()) {
+                continue;
+            }
+            getId(notificationGroup);
+            if (notificationGroup.isGroup()) {
+                mRetainedGroupKeys.add(getKey(notificationGroup));
+            } else {
+                mRetainedNotificationKeys.add(getKey(notificationGroup));
+            }
+        }
+        retainAll(mGroupIds, mRetainedGroupKeys);
+        retainAll(mNotificationIds, mRetainedNotificationKeys);
+    }
+
+    /**
+     * Returns the number of keys that currently have an id.
+     */
+    int size() {
+        return mGroupIds.size() + mNotificationIds.size();
+    }
+
+    private Map<String, Long> getIds(NotificationGroup notificationGroup) {
+        return notificationGroup.isGroup() ? mGroupIds : mNotificationIds;
+    }
+
+    private static String getKey(NotificationGroup notificationGroup) {
+        return notificationGroup.isGroup()
+                ? notificationGroup.getGroupKey()
+                : notificationGroup.getSingleNotification().getKey();
+    }
+
+    private static void retainAll(Map<String, Long> ids, Set<String> retainedKeys) {
+        ids.keySet().retainAll(retainedKeys);
+        retainedKeys.clear();
+    }
+}
@@ -117,8 +117,7 @@ public class CarNotificationActionsView extends RelativeLayout implements
             return;
         }
 
-        if (CarAssistUtils.isCarCompatibleMessagingNotification(
-                alertEntry.getStatusBarNotification())) {
+        if (alertEntry.getClassification().isCarCompatibleMessaging()) {
             boolean canPlayMessage = mCarAssistUtils.hasActiveAssistant()
                     || mCarAssistUtils.isFallbackAssistantEnabled();
             if (canPlayMessage) {
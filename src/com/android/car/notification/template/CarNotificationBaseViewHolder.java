@@ -30,8 +30,8 @@ import androidx.cardview.widget.CardView;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.android.car.notification.AlertEntry;
+import com.android.car.notification.CardStyleResolver;
 import com.android.car.notification.NotificationClickHandlerFactory;
-import com.android.car.notification.NotificationUtils;
 import com.android.car.notification.R;
 
 /**
@@ -68,15 +68,11 @@ public abstract class CarNotificationBaseViewHolder extends RecyclerView.ViewHol
      */
     private boolean mHideDismissButton;
 
+    private final CardStyleResolver mCardStyleResolver;
+    private final CardStyleResolver.Theme mTheme;
     @ColorInt
     private final int mDefaultBackgroundColor;
     @ColorInt
-    private final int mDefaultCarAccentColor;
-    @ColorInt
-    private final int mDefaultPrimaryForegroundColor;
-    @ColorInt
-    private final int mDefaultSecondaryForegroundColor;
-    @ColorInt
     private int mCalculatedPrimaryForegroundColor;
     @ColorInt
     private int mCalculatedSecondaryForegroundColor;
@@ -87,11 +83,6 @@ public abstract class CarNotificationBaseViewHolder extends RecyclerView.ViewHol
 
     private AlertEntry mAlertEntry;
     private boolean mIsAnimating;
-    private boolean mHasColor;
-    private boolean mIsColorized;
-    private boolean mEnableCardBackgroundColorForCategoryNavigation;
-    private boolean mEnableCardBackgroundColorForSystemApp;
-    private boolean mEnableSmallIconAccentColor;
     private boolean mAlwaysShowDismissButton;
 
     /**
@@ -121,20 +112,9 @@ public abstract class CarNotificationBaseViewHolder extends RecyclerView.ViewHol
                 mDismissButton.setImageAlpha(itemView.hasFocus() ? 255 : 0);
             }
         };
-        mDefaultBackgroundColor = NotificationUtils.getAttrColor(mContext,
-                android.R.attr.colorPrimary);
-        mDefaultCarAccentColor = NotificationUtils.getAttrColor(mContext,
-                android.R.attr.colorAccent);
-        mDefaultPrimaryForegroundColor = mContext.getColor(R.color.primary_text_color);
-        mDefaultSecondaryForegroundColor = mContext.getColor(R.color.secondary_text_color);
-        mEnableCardBackgroundColorForCategoryNavigation =
-                mContext.getResources().getBoolean(
-                        R.bool.config_enableCardBackgroundColorForCategoryNavigation);
-        mEnableCardBackgroundColorForSystemApp =
-                mContext.getResources().getBoolean(
-                        R.bool.config_enableCardBackgroundColorForSystemApp);
-        mEnableSmallIconAccentColor =
-                mContext.getResources().getBoolean(R.bool.config_enableSmallIconAccentColor);
+        mCardStyleResolver = CardStyleResolver.getInstance(mContext);
+        mTheme = CardStyleResolver.Theme.from(mContext);
+        mDefaultBackgroundColor = mTheme.getBackgroundColor();
     }
 
     /**
@@ -175,7 +155,7 @@ public abstract class CarNotificationBaseViewHolder extends RecyclerView.ViewHol
             return;
         }
 
-        if (canChangeCardBackgroundColor() && mHasColor && mIsColorized && !isInGroup) {
+        if (mBackgroundColor != mDefaultBackgroundColor) {
             cardView.setCardBackgroundColor(mBackgroundColor);
         }
     }
@@ -212,37 +192,17 @@ public abstract class CarNotificationBaseViewHolder extends RecyclerView.ViewHol
 
     private void initializeColors(boolean isInGroup) {
         if (mInitializedColors) return;
-        Notification notification = getAlertEntry().getNotification();
-
-        mHasColor = notification.color != Notification.COLOR_DEFAULT;
-        mIsColorized = notification.extras.getBoolean(Notification.EXTRA_COLORIZED, false);
-
-        mCalculatedPrimaryForegroundColor = mDefaultPrimaryForegroundColor;
-        mCalculatedSecondaryForegroundColor = mDefaultSecondaryForegroundColor;
-        if (canChangeCardBackgroundColor() && mHasColor && mIsColorized && !isInGroup) {
-            mBackgroundColor = notification.color;
-            mCalculatedPrimaryForegroundColor = NotificationUtils.resolveContrastColor(
-                    mDefaultPrimaryForegroundColor, mBackgroundColor);
-            mCalculatedSecondaryForegroundColor = NotificationUtils.resolveContrastColor(
-                    mDefaultSecondaryForegroundColor, mBackgroundColor);
-        }
-        mSmallIconColor =
-                hasCustomBackgroundColor() ? mCalculatedPrimaryForegroundColor : getAccentColor();
+        // Resolved off the main thread ahead of binding for the notifications in the panel.
+        CardStyleResolver.CardStyle cardStyle =
+                mCardStyleResolver.resolve(mTheme, getAlertEntry(), isInGroup);
 
-        mInitializedColors = true;
-    }
+        mBackgroundColor = cardStyle.getBackgroundColor();
+        mCalculatedPrimaryForegroundColor = cardStyle.getPrimaryForegroundColor();
+        mCalculatedSecondaryForegroundColor = cardStyle.getSecondaryForegroundColor();
+        mSmallIconColor = hasCustomBackgroundColor()
+                ? mCalculatedPrimaryForegroundColor : cardStyle.getAccentColor();
 
-
-    private boolean canChangeCardBackgroundColor() {
-        Notification notification = getAlertEntry().getNotification();
-
-        boolean isSystemApp = mEnableCardBackgroundColorForSystemApp &&
-                NotificationUtils.isSystemApp(mContext, getAlertEntry().getStatusBarNotification());
-        boolean isSignedWithPlatformKey = NotificationUtils.isSignedWithPlatformKey(mContext,
-                getAlertEntry().getStatusBarNotification());
-        boolean isNavigationCategory = mEnableCardBackgroundColorForCategoryNavigation &&
-                Notification.CATEGORY_NAVIGATION.equals(notification.category);
-        return isSystemApp || isNavigationCategory || isSignedWithPlatformKey;
+        mInitializedColors = true;
     }
 
     /**
@@ -250,12 +210,7 @@ public abstract class CarNotificationBaseViewHolder extends RecyclerView.ViewHol
      */
     @ColorInt
     int getAccentColor() {
-
-        int color = getAlertEntry().getNotification().color;
-        if (mEnableSmallIconAccentColor && color != Notification.COLOR_DEFAULT) {
-            return color;
-        }
-        return mDefaultCarAccentColor;
+        return mTheme.getAccentColor(getAlertEntry().getNotification().color);
     }
 
     /**
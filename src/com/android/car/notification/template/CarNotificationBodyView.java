@@ -46,6 +46,7 @@ public class CarNotificationBodyView extends RelativeLayout {
     private final int mDefaultPrimaryTextColor;
     @ColorInt
     private final int mDefaultSecondaryTextColor;
+    private final NotificationIconLoader mIconLoader;
     private boolean mShowBigIcon;
     private int mMaxLines;
     private TextView mTitleView;
@@ -77,6 +78,7 @@ public class CarNotificationBodyView extends RelativeLayout {
                 NotificationUtils.getAttrColor(getContext(), android.R.attr.textColorPrimary);
         mDefaultSecondaryTextColor =
                 NotificationUtils.getAttrColor(getContext(), android.R.attr.textColorSecondary);
+        mIconLoader = NotificationIconLoader.getInstance(getContext());
         inflate(getContext(), R.layout.car_notification_body_view, /* root= */ this);
     }
 
@@ -120,7 +122,7 @@ public class CarNotificationBodyView extends RelativeLayout {
 
         if (icon != null && mShowBigIcon) {
             mIconView.setVisibility(View.VISIBLE);
-            mIconView.setImageIcon(icon);
+            mIconLoader.load(icon, mIconView);
         }
     }
 
@@ -158,7 +160,9 @@ public class CarNotificationBodyView extends RelativeLayout {
         setVisibility(View.GONE);
         mTitleView.setVisibility(View.GONE);
         mContentView.setVisibility(View.GONE);
+        mIconLoader.cancel(mIconView);
         mIconView.setVisibility(View.GONE);
+        mIconView.setImageDrawable(null);
         setPrimaryTextColor(mDefaultPrimaryTextColor);
         setSecondaryTextColor(mDefaultSecondaryTextColor);
     }
@@ -20,7 +20,6 @@ import static android.app.Notification.EXTRA_SUBSTITUTE_APP_NAME;
 import android.annotation.ColorInt;
 import android.app.Notification;
 import android.content.Context;
-import android.content.pm.PackageManager;
 import android.content.res.TypedArray;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
@@ -39,6 +38,7 @@ import android.widget.TextView;
 import androidx.annotation.Nullable;
 
 import com.android.car.notification.AlertEntry;
+import com.android.car.notification.PackageResourceCache;
 import com.android.car.notification.R;
 
 /**
@@ -48,7 +48,7 @@ public class CarNotificationHeaderView extends LinearLayout {
 
     private static final String TAG = "car_notification_header";
 
-    private final PackageManager mPackageManager;
+    private final PackageResourceCache mPackageResourceCache;
     private final int mDefaultTextColor;
     private final String mSeparatorText;
 
@@ -78,7 +78,7 @@ public class CarNotificationHeaderView extends LinearLayout {
     }
 
     {
-        mPackageManager = getContext().getPackageManager();
+        mPackageResourceCache = PackageResourceCache.getInstance(getContext());
         mDefaultTextColor = getContext().getColor(R.color.primary_text_color);
         mSeparatorText = getContext().getString(R.string.header_text_separator);
         inflate(getContext(), R.layout.car_notification_header_view, this);
@@ -118,11 +118,9 @@ public class CarNotificationHeaderView extends LinearLayout {
         Notification notification = alertEntry.getNotification();
         StatusBarNotification sbn = alertEntry.getStatusBarNotification();
 
-        Context packageContext = sbn.getPackageContext(getContext());
-
         // app icon
         mIconView.setVisibility(View.VISIBLE);
-        Drawable drawable = notification.getSmallIcon().loadDrawable(packageContext);
+        Drawable drawable = mPackageResourceCache.loadSmallIcon(sbn);
         mIconView.setImageDrawable(drawable);
 
         StringBuilder stringBuilder = new StringBuilder();
@@ -215,10 +213,8 @@ public class CarNotificationHeaderView extends LinearLayout {
      */
     @Nullable
     private String loadHeaderAppName(StatusBarNotification sbn) {
-        final Context packageContext = sbn.getPackageContext(mContext);
-        final PackageManager pm = packageContext.getPackageManager();
         final Notification notification = sbn.getNotification();
-        CharSequence name = pm.getApplicationLabel(packageContext.getApplicationInfo());
+        CharSequence name = mPackageResourceCache.getApplicationLabel(sbn);
         if (notification.extras.containsKey(EXTRA_SUBSTITUTE_APP_NAME)) {
             // only system packages which lump together a bunch of unrelated stuff
             // may substitute a different name to make the purpose of the
@@ -226,8 +222,7 @@ public class CarNotificationHeaderView extends LinearLayout {
             // be accessible via SystemUI.
             final String subName = notification.extras.getString(EXTRA_SUBSTITUTE_APP_NAME);
             final String pkg = sbn.getPackageName();
-            if (PackageManager.PERMISSION_GRANTED == pm.checkPermission(
-                    android.Manifest.permission.SUBSTITUTE_NOTIFICATION_APP_NAME, pkg)) {
+            if (mPackageResourceCache.canSubstituteAppName(sbn)) {
                 name = subName;
             } else {
                 Log.w(TAG, "warning: pkg "
@@ -52,6 +52,7 @@ public class MessageNotificationViewHolder extends CarNotificationBaseViewHolder
     private final TextView mMessageView;
     private final TextView mUnshownCountView;
     private final ImageView mAvatarView;
+    private final NotificationIconLoader mIconLoader;
     private NotificationClickHandlerFactory mClickHandlerFactory;
 
     public MessageNotificationViewHolder(
@@ -71,6 +72,7 @@ public class MessageNotificationViewHolder extends CarNotificationBaseViewHolder
         mBodyView = view.findViewById(R.id.notification_body);
         mUnshownCountView = view.findViewById(R.id.message_count);
         mAvatarView = view.findViewById(R.id.notification_body_icon);
+        mIconLoader = NotificationIconLoader.getInstance(mContext);
         mClickHandlerFactory = clickHandlerFactory;
     }
 
@@ -174,7 +176,7 @@ public class MessageNotificationViewHolder extends CarNotificationBaseViewHolder
 
         if (avatar != null) {
             mAvatarView.setVisibility(View.VISIBLE);
-            mAvatarView.setImageIcon(avatar);
+            mIconLoader.load(avatar, mAvatarView);
         }
 
         int unshownCount = messageCount - 1;
@@ -203,6 +205,7 @@ public class MessageNotificationViewHolder extends CarNotificationBaseViewHolder
         mMessageView.setVisibility(View.GONE);
         mMessageView.setText(null);
 
+        mIconLoader.cancel(mAvatarView);
         mAvatarView.setVisibility(View.GONE);
         mAvatarView.setImageIcon(null);
 
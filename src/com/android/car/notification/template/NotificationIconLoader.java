@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.car.notification.template;
+
+import android.annotation.Nullable;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.Icon;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.android.car.notification.R;
+
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads the avatars and large icons of notifications off the main thread.
+ *
+ * <p> Icons are decoded on a background thread and downsampled to the size of the view they are
+ * shown in. The results are kept in a memory bounded cache keyed by the identity of the icon and
+ * the target size, so rebinding the same notification does not decode its icons again. Resource
+ * icons are dropped from the cache when their package changes. Icons that are loaded from a URI
+ * are not cached, since the content behind the URI may change, e.g. for contact photos.
+ *
+ * <p> A view shows at most the result of the last {@link #load} call made for it; an earlier load
+ * that is still in flight is cancelled. Must be used on the main thread.
+ */
+class NotificationIconLoader {
+    private static final String TAG = "NotificationIconLoader";
+
+    private static NotificationIconLoader sInstance;
+
+    private final Context mContext;
+    private final Executor mExecutor;
+    private final Handler mMainHandler;
+    private final int mDefaultIconSize;
+    private final LruCache<String, Bitmap> mCache;
+    /** The load that is in flight for each view. */
+    private final WeakHashMap<ImageView, Request> mRequests = new WeakHashMap<>();
+    /** Incremented whenever cached icons are invalidated. */
+    private int mCacheGeneration;
+
+    @VisibleForTesting
+    final BroadcastReceiver mPackageChangeReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (intent.getData() != null) {
+                invalidatePackage(intent.getData().getSchemeSpecificPart());
+            }
+        }
+    };
+
+    private final class Request implements Runnable {
+        private final Icon mIcon;
+        private final ImageView mImageView;
+        private final String mKey;
+        private final int mWidth;
+        private final int mHeight;
+        private final int mCacheGeneration;
+        private volatile boolean mIsCancelled;
+
+        Request(Icon icon, ImageView imageView, String key, int width, int height,
+                int cacheGeneration) {
+            mIcon = icon;
+            mImageView = imageView;
+            mKey = key;
+            mWidth = width;
+            mHeight = height;
+            mCacheGeneration = cacheGeneration;
+        }
+
+        @Override
+        public void run() {
+            if (mIsCancelled) {
+                return;
+            }
+            Bitmap bitmap = decode(mIcon, mWidth, mHeight);
+            mMainHandler.post(() -> deliver(this, bitmap));
+        }
+    }
+
+    private NotificationIconLoader(Context context) {
+        this(context, Executors.newSingleThreadExecutor(
+                runnable -> new Thread(runnable, TAG)), new Handler(Looper.getMainLooper()));
+    }
+
+    @VisibleForTesting
+    NotificationIconLoader(Context context, Executor executor, Handler mainHandler) {
+        mContext = context.getApplicationContext() != null
+                ? context.getApplicationContext() : context;
+        mExecutor = executor;
+        mMainHandler = mainHandler;
+        mDefaultIconSize = mContext.getResources().getDimensionPixelSize(
+                R.dimen.notification_touch_target_size);
+        int cacheSizeKb =
+                mContext.getResources().getInteger(R.integer.notification_icon_cache_size_kb);
+        mCache = new LruCache<String, Bitmap>(Math.max(1, cacheSizeKb)) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return Math.max(1, bitmap.getAllocationByteCount() / 1024);
+            }
+        };
+
+        IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addDataScheme("package");
+        mContext.registerReceiverForAllUsers(mPackageChangeReceiver, packageFilter,
+                /* broadcastPermission= */ null, /* scheduler= */ null);
+    }
+
+    static NotificationIconLoader getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new NotificationIconLoader(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Shows the icon in the view. A cached result is shown immediately; otherwise the view is
+     * cleared until the icon has been decoded.
+     */
+    void load(Icon icon, ImageView imageView) {
+        cancel(imageView);
+
+        int width = getTargetSize(imageView.getLayoutParams(), /* isWidth= */ true);
+        int height = getTargetSize(imageView.getLayoutParams(), /* isWidth= */ false);
+        String key = getCacheKey(icon, mContext.getUserId(), width, height);
+        Bitmap cached = key == null ? null : mCache.get(key);
+        if (cached != null) {
+            imageView.setImageBitmap(cached);
+            return;
+        }
+
+        imageView.setImageDrawable(null);
+        Request request = new Request(icon, imageView, key, width, height, mCacheGeneration);
+        mRequests.put(imageView, request);
+        mExecutor.execute(request);
+    }
+
+    /**
+     * Cancels the load that is in flight for the view, if any.
+     */
+    void cancel(ImageView imageView) {
+        Request request = mRequests.remove(imageView);
+        if (request != null) {
+            request.mIsCancelled = true;
+        }
+    }
+
+    /**
+     * Drops the cached resource icons of the package for all users.
+     */
+    void invalidatePackage(String packageName) {
+        String prefix = getResourceKeyPrefix(packageName);
+        for (String key : mCache.snapshot().keySet()) {
+            if (key.startsWith(prefix)) {
+                mCache.remove(key);
+            }
+        }
+        mCacheGeneration++;
+    }
+
+    /**
+     * Returns the number of icons that are being decoded.
+     */
+    @VisibleForTesting
+    int getPendingRequestCount() {
+        return mRequests.size();
+    }
+
+    private void deliver(Request request, @Nullable Bitmap bitmap) {
+        // Icons that were decoded before an invalidation may be stale.
+        if (bitmap != null && request.mKey != null
+                && request.mCacheGeneration == mCacheGeneration) {
+            mCache.put(request.mKey, bitmap);
+        }
+        if (request.mIsCancelled || mRequests.get(request.mImageView) != request) {
+            return;
+        }
+        mRequests.remove(request.mImageView);
+        request.mImageView.setImageBitmap(bitmap);
+    }
+
+    @Nullable
+    private Bitmap decode(Icon icon, int width, int height) {
+        Drawable drawable;
+        try {
+            drawable = icon.loadDrawable(mContext);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Unable to load icon " + icon, e);
+            return null;
+        }
+        if (drawable == null) {
+            return null;
+        }
+
+        int intrinsicWidth = drawable.getIntrinsicWidth() > 0
+                ? drawable.getIntrinsicWidth() : width;
+        int intrinsicHeight = drawable.getIntrinsicHeight() > 0
+                ? drawable.getIntrinsicHeight() : height;
+        // Only downsample, icons that are smaller than the view are scaled when drawn.
+        float scale = Math.min(1f, Math.min(
+                (float) width / intrinsicWidth, (float) height / intrinsicHeight));
+        int scaledWidth = Math.max(1, Math.round(intrinsicWidth * scale));
+        int scaledHeight = Math.max(1, Math.round(intrinsicHeight * scale));
+
+        if (drawable instanceof BitmapDrawable
+                && ((BitmapDrawable) drawable).getBitmap() != null) {
+            Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+            if (bitmap.getWidth() == scaledWidth && bitmap.getHeight() == scaledHeight) {
+                return bitmap;
+            }
+            return Bitmap.createScaledBitmap(bitmap, scaledWidth, scaledHeight,
+                    /* filter= */ true);
+        }
+
+        Bitmap bitmap = Bitmap.createBitmap(scaledWidth, scaledHeight, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        drawable.setBounds(0, 0, scaledWidth, scaledHeight);
+        drawable.draw(canvas);
+        return bitmap;
+    }
+
+    private int getTargetSize(@Nullable ViewGroup.LayoutParams layoutParams, boolean isWidth) {
+        if (layoutParams == null) {
+            return mDefaultIconSize;
+        }
+        int size = isWidth ? layoutParams.width : layoutParams.height;
+        return size > 0 ? size : mDefaultIconSize;
+    }
+
+    /**
+     * Returns the key that identifies the decoded icon, or {@code null} if the icon is not cached.
+     * Resources are loaded for the user the icon is loaded as, so the key of a resource icon
+     * includes the user.
+     */
+    @VisibleForTesting
+    @Nullable
+    static String getCacheKey(Icon icon, int userId, int width, int height) {
+        String iconKey;
+        switch (icon.getType()) {
+            case Icon.TYPE_BITMAP:
+            case Icon.TYPE_ADAPTIVE_BITMAP:
+                Bitmap bitmap = icon.getBitmap();
+                iconKey = "bitmap:" + System.identityHashCode(bitmap) + ":"
+                        + bitmap.getGenerationId();
+                break;
+            case Icon.TYPE_RESOURCE:
+                iconKey = getResourceKeyPrefix(icon.getResPackage()) + userId + ":"
+                        + icon.getResId();
+                break;
+            case Icon.TYPE_DATA:
+                iconKey = "data:" + System.identityHashCode(icon.getDataBytes()) + ":"
+                        + icon.getDataOffset() + ":" + icon.getDataLength();
+                break;
+            default:
+                return null;
+        }
+        return iconKey + "@" + width + "x" + height;
+    }
+
+    private static String getResourceKeyPrefix(String packageName) {
+        return "resource:" + packageName + ":";
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.notification;
+
+import android.content.Context;
+import android.service.notification.NotificationListenerService;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Benchmarks of {@link CarNotificationDiff} between consecutive notification lists.
+ */
+@RunWith(Parameterized.class)
+public class CarNotificationDiffBenchmark {
+    private static final long SEED = 42;
+    /** Percentage of the notifications that are updated between the old and the new list. */
+    private static final int UPDATE_PERCENT = 10;
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    @Parameterized.Parameter(0)
+    public int mSize;
+    @Parameterized.Parameter(1)
+    public float mGroupRatio;
+
+    private Context mContext;
+    private List<NotificationGroup> mOldList;
+    private List<NotificationGroup> mNewList;
+
+    @Parameterized.Parameters(name = "size={0},groupRatio={1}")
+    public static Collection<Object[]> getParameters() {
+        List<Object[]> parameters = new ArrayList<>();
+        for (int size : new int[]{10, 100, 1000, 5000}) {
+            for (float groupRatio : new float[]{0f, 0.5f}) {
+                parameters.add(new Object[]{size, groupRatio});
+            }
+        }
+        return parameters;
+    }
+
+    @Before
+    public void setup() {
+        mContext = ApplicationProvider.getApplicationContext();
+        PreprocessingManager preprocessingManager = PreprocessingManager.getInstance(mContext);
+        SyntheticNotifications notifications =
+                new SyntheticNotifications(mContext, mSize, mGroupRatio, SEED);
+        NotificationListenerService.RankingMap rankingMap = notifications.createRankingMap();
+        mOldList = preprocessingManager.process(/* showLessImportantNotifications= */ false,
+                notifications.getNotifications(), rankingMap);
+
+        int updateCount = Math.max(1, mSize * UPDATE_PERCENT / 100);
+        for (int i = 0; i < updateCount; i++) {
+            notifications.createUpdate();
+        }
+        mNewList = preprocessingManager.process(/* showLessImportantNotifications= */ false,
+                notifications.getNotifications(), rankingMap);
+    }
+
+    @Test
+    public void calculateDiff_unchanged() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            DiffUtil.calculateDiff(new CarNotificationDiff(mContext, mOldList, mOldList),
+                    /* detectMoves= */ false);
+        }
+    }
+
+    @Test
+    public void calculateDiff_partiallyUpdated() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            DiffUtil.calculateDiff(new CarNotificationDiff(mContext, mOldList, mNewList),
+                    /* detectMoves= */ false);
+        }
+    }
+}
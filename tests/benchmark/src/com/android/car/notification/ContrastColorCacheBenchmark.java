@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.notification;
+
+import android.graphics.Color;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmarks of the contrast color search of {@link NotificationUtils}, cold and through the
+ * {@link ContrastColorCache}, over palettes of different sizes.
+ */
+@RunWith(Parameterized.class)
+public class ContrastColorCacheBenchmark {
+    private static final long SEED = 42;
+    private static final int CACHE_SIZE = 256;
+    /** Foreground colors the cards search from, i.e. the primary and secondary text colors. */
+    private static final int[] FOREGROUND_COLORS = {Color.WHITE, Color.LTGRAY};
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    @Parameterized.Parameter(0)
+    public int mPaletteSize;
+
+    private int[] mPalette;
+
+    @Parameterized.Parameters(name = "paletteSize={0}")
+    public static Collection<Object[]> getParameters() {
+        List<Object[]> parameters = new ArrayList<>();
+        for (int paletteSize : new int[]{1, 8, 64}) {
+            parameters.add(new Object[]{paletteSize});
+        }
+        return parameters;
+    }
+
+    @Before
+    public void setup() {
+        Random random = new Random(SEED);
+        mPalette = new int[mPaletteSize];
+        for (int i = 0; i < mPaletteSize; i++) {
+            mPalette[i] = Color.rgb(random.nextInt(256), random.nextInt(256), random.nextInt(256));
+        }
+    }
+
+    @Test
+    public void resolveContrastColor_uncached() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            NotificationUtils.resolveContrastColorUncached(
+                    FOREGROUND_COLORS[i % FOREGROUND_COLORS.length], mPalette[i % mPaletteSize]);
+            i++;
+        }
+    }
+
+    @Test
+    public void resolveContrastColor_coldCache() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            ContrastColorCache cache = new ContrastColorCache(CACHE_SIZE,
+                    NotificationUtils::resolveContrastColorUncached);
+            state.resumeTiming();
+
+            cache.get(FOREGROUND_COLORS[i % FOREGROUND_COLORS.length], mPalette[i % mPaletteSize]);
+            i++;
+        }
+    }
+
+    @Test
+    public void resolveContrastColor_cached() {
+        ContrastColorCache cache = new ContrastColorCache(CACHE_SIZE,
+                NotificationUtils::resolveContrastColorUncached);
+        for (int foregroundColor : FOREGROUND_COLORS) {
+            for (int backgroundColor : mPalette) {
+                cache.get(foregroundColor, backgroundColor);
+            }
+        }
+        BenchmarkState state = mBenchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            cache.get(FOREGROUND_COLORS[i % FOREGROUND_COLORS.length], mPalette[i % mPaletteSize]);
+            i++;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.notification;
+
+import android.content.Context;
+import android.service.notification.NotificationListenerService;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmarks of the {@link PreprocessingManager} pipeline over notification sets of different
+ * sizes and group ratios.
+ */
+@RunWith(Parameterized.class)
+public class PreprocessingManagerBenchmark {
+    private static final long SEED = 42;
+    /** Out of 100 incremental updates, how many are new posts and how many are removals. */
+    private static final int POST_PERCENT = 20;
+    private static final int REMOVE_PERCENT = 20;
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    @Parameterized.Parameter(0)
+    public int mSize;
+    @Parameterized.Parameter(1)
+    public float mGroupRatio;
+
+    private PreprocessingManager mPreprocessingManager;
+    private SyntheticNotifications mNotifications;
+    private NotificationListenerService.RankingMap mRankingMap;
+
+    @Parameterized.Parameters(name = "size={0},groupRatio={1}")
+    public static Collection<Object[]> getParameters() {
+        List<Object[]> parameters = new ArrayList<>();
+        for (int size : new int[]{10, 100, 1000, 5000}) {
+            for (float groupRatio : new float[]{0f, 0.5f, 1f}) {
+                parameters.add(new Object[]{size, groupRatio});
+            }
+        }
+        return parameters;
+    }
+
+    @Before
+    public void setup() {
+        Context context = ApplicationProvider.getApplicationContext();
+        mPreprocessingManager = PreprocessingManager.getInstance(context);
+        mNotifications = new SyntheticNotifications(context, mSize, mGroupRatio, SEED);
+        mRankingMap = mNotifications.createRankingMap();
+    }
+
+    @Test
+    public void process() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            mPreprocessingManager.process(/* showLessImportantNotifications= */ false,
+                    mNotifications.getNotifications(), mRankingMap);
+        }
+    }
+
+    @Test
+    public void group() {
+        List<AlertEntry> alertEntries = mNotifications.getNotificationList();
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            mPreprocessingManager.group(alertEntries);
+        }
+    }
+
+    @Test
+    public void rank() {
+        List<NotificationGroup> groups =
+                mPreprocessingManager.group(mNotifications.getNotificationList());
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            // rank() sorts in place, so every iteration starts from the same order.
+            mPreprocessingManager.rank(new ArrayList<>(groups), mRankingMap);
+        }
+    }
+
+    @Test
+    public void updateNotifications_mixed() {
+        mPreprocessingManager.init(new HashMap<>(mNotifications.getNotifications()), mRankingMap);
+        Random random = new Random(SEED);
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            int updateType = CarNotificationListener.NOTIFY_NOTIFICATION_POSTED;
+            AlertEntry alertEntry;
+            int choice = random.nextInt(100);
+            if (choice < POST_PERCENT || mNotifications.getNotifications().isEmpty()) {
+                alertEntry = mNotifications.createPost();
+            } else if (choice < POST_PERCENT + REMOVE_PERCENT) {
+                alertEntry = mNotifications.createRemoval();
+                updateType = CarNotificationListener.NOTIFY_NOTIFICATION_REMOVED;
+            } else {
+                alertEntry = mNotifications.createUpdate();
+            }
+            state.resumeTiming();
+
+            mPreprocessingManager.updateNotifications(
+                    /* showLessImportantNotifications= */ false, alertEntry, updateType,
+                    mRankingMap);
+        }
+    }
+
+    @Test
+    public void updateNotifications_contentUpdates() {
+        mPreprocessingManager.init(new HashMap<>(mNotifications.getNotifications()), mRankingMap);
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            AlertEntry alertEntry = mNotifications.createUpdate();
+            state.resumeTiming();
+
+            mPreprocessingManager.updateNotifications(
+                    /* showLessImportantNotifications= */ false, alertEntry,
+                    CarNotificationListener.NOTIFY_NOTIFICATION_POSTED, mRankingMap);
+        }
+    }
+}
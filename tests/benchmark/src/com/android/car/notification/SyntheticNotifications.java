@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.notification;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.os.UserHandle;
+import android.service.notification.NotificationListenerService;
+import android.service.notification.StatusBarNotification;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Deterministic generator of notification sets for the benchmarks.
+ *
+ * <p> Notifications are real {@link StatusBarNotification}s with a matching
+ * {@link NotificationListenerService.RankingMap}, so the benchmarks exercise the same code paths as
+ * the listener without binding to the notification service.
+ */
+final class SyntheticNotifications {
+    private static final String PKG = "com.android.car.notification.benchmark";
+    private static final String CHANNEL_ID = "BENCHMARK_CHANNEL";
+    private static final int UID = 1000;
+    private static final int GROUP_SIZE = 5;
+    private static final String[] CATEGORIES = {
+            null,
+            Notification.CATEGORY_MESSAGE,
+            Notification.CATEGORY_EMAIL,
+            Notification.CATEGORY_SOCIAL,
+            Notification.CATEGORY_REMINDER
+    };
+
+    private final Context mContext;
+    private final Random mRandom;
+    private final Map<String, AlertEntry> mNotifications = new LinkedHashMap<>();
+    private int mNextId;
+    private int mVersion;
+
+    /**
+     * @param size number of notifications to generate.
+     * @param groupRatio fraction of the notifications that are in a group, between 0 and 1.
+     * @param seed seed for the random choices so that runs are comparable.
+     */
+    SyntheticNotifications(Context context, int size, float groupRatio, long seed) {
+        mContext = context;
+        mRandom = new Random(seed);
+        int groupedCount = Math.round(size * groupRatio);
+        for (int i = 0; i < size; i++) {
+            String groupKey = null;
+            boolean isSummary = false;
+            if (i < groupedCount) {
+                int groupIndex = i / GROUP_SIZE;
+                groupKey = "group_" + groupIndex;
+                isSummary = i % GROUP_SIZE == 0;
+            }
+            AlertEntry alertEntry = createAlertEntry(mNextId++, groupKey, isSummary);
+            mNotifications.put(alertEntry.getKey(), alertEntry);
+        }
+    }
+
+    /** Returns the current notifications keyed by their key. */
+    Map<String, AlertEntry> getNotifications() {
+        return mNotifications;
+    }
+
+    /** Returns the current notifications as a list. */
+    List<AlertEntry> getNotificationList() {
+        return new ArrayList<>(mNotifications.values());
+    }
+
+    /** Returns a ranking map that ranks the current notifications in random order. */
+    NotificationListenerService.RankingMap createRankingMap() {
+        List<AlertEntry> alertEntries = getNotificationList();
+        NotificationListenerService.Ranking[] rankings =
+                new NotificationListenerService.Ranking[alertEntries.size()];
+        for (int i = 0; i < alertEntries.size(); i++) {
+            rankings[i] = createRanking(alertEntries.get(i).getKey(),
+                    mRandom.nextInt(alertEntries.size()));
+        }
+        return new NotificationListenerService.RankingMap(rankings);
+    }
+
+    /**
+     * Returns a new post of a random existing notification with a different text, as sent by an
+     * app that updates its notification.
+     */
+    AlertEntry createUpdate() {
+        List<AlertEntry> alertEntries = getNotificationList();
+        AlertEntry old = alertEntries.get(mRandom.nextInt(alertEntries.size()));
+        Notification notification = old.getNotification();
+        AlertEntry update = createAlertEntry(old.getStatusBarNotification().getId(),
+                notification.getGroup(), notification.isGroupSummary());
+        mNotifications.put(update.getKey(), update);
+        return update;
+    }
+
+    /** Returns a random existing notification and forgets about it. */
+    AlertEntry createRemoval() {
+        List<AlertEntry> alertEntries = getNotificationList();
+        AlertEntry removed = alertEntries.get(mRandom.nextInt(alertEntries.size()));
+        mNotifications.remove(removed.getKey());
+        return removed;
+    }
+
+    /** Returns a new ungrouped notification. */
+    AlertEntry createPost() {
+        AlertEntry alertEntry = createAlertEntry(mNextId++, /* groupKey= */ null,
+                /* isSummary= */ false);
+        mNotifications.put(alertEntry.getKey(), alertEntry);
+        return alertEntry;
+    }
+
+    private AlertEntry createAlertEntry(int id, String groupKey, boolean isSummary) {
+        Notification.Builder builder = new Notification.Builder(mContext, CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.sym_def_app_icon)
+                .setContentTitle("Title " + id)
+                .setContentText("Text " + id + " version " + mVersion++)
+                .setCategory(CATEGORIES[id % CATEGORIES.length]);
+        if (groupKey != null) {
+            builder.setGroup(groupKey).setGroupSummary(isSummary);
+        }
+        StatusBarNotification sbn = new StatusBarNotification(PKG, PKG, id, /* tag= */ null, UID,
+                /* initialPid= */ 0, builder.build(), UserHandle.CURRENT,
+                /* overrideGroupKey= */ null, System.currentTimeMillis() - id);
+        return new AlertEntry(sbn);
+    }
+
+    private static NotificationListenerService.Ranking createRanking(String key, int rank) {
+        NotificationListenerService.Ranking ranking = new NotificationListenerService.Ranking();
+        ranking.populate(
+                key,
+                rank,
+                /* matchesInterruptionFilter= */ true,
+                /* visibilityOverride= */ 0,
+                /* suppressedVisualEffects= */ 0,
+                NotificationManager.IMPORTANCE_DEFAULT,
+                /* explanation= */ null,
+                /* overrideGroupKey= */ null,
+                /* channel= */ null,
+                /* overridePeople= */ new ArrayList<>(),
+                /* snoozeCriteria= */ new ArrayList<>(),
+                /* showBadge= */ false,
+                /* userSentiment= */ 0,
+                /* hidden= */ false,
+                /* lastAudiblyAlertedMs= */ 0L,
+                /* noisy= */ false,
+                /* smartActions= */ new ArrayList<>(),
+                /* smartReplies= */ new ArrayList<>(),
+                /* canBubble= */ false,
+                /* visuallyInterruptive= */ false,
+                /* isConversation= */ false,
+                /* shortcutInfo= */ null,
+                /* isBubble= */ false);
+        return ranking;
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.notification;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.app.Notification;
+import android.content.Context;
+import android.os.UserHandle;
+import android.service.notification.StatusBarNotification;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Collections;
+import java.util.Map;
+
+@RunWith(RobolectricTestRunner.class)
+public class ActiveNotificationStoreTest {
+
+    private static final String PKG = "com.package.ACTIVE_NOTIFICATION_STORE_TEST";
+    private static final int CURRENT_USER_ID = 10;
+    private static final int OTHER_USER_ID = 11;
+
+    private Context mContext;
+    private ActiveNotificationStore mStore;
+
+    @Before
+    public void setup() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mStore = new ActiveNotificationStore();
+    }
+
+    @Test
+    public void put_sameKey_replacesNotification() {
+        post(/* id= */ 1, CURRENT_USER_ID);
+        AlertEntry updated = post(/* id= */ 1, CURRENT_USER_ID);
+
+        assertThat(mStore.size()).isEqualTo(1);
+        assertThat(mStore.getNotifications(CURRENT_USER_ID).get(updated.getKey()))
+                .isSameAs(updated);
+    }
+
+    @Test
+    public void getNotifications_returnsEntriesAsIs() {
+        AlertEntry first = post(/* id= */ 1, CURRENT_USER_ID);
+        AlertEntry second = post(/* id= */ 2, CURRENT_USER_ID);
+        AlertEntry third = post(/* id= */ 3, CURRENT_USER_ID);
+
+        Map<String, AlertEntry> notifications = mStore.getNotifications(CURRENT_USER_ID);
+
+        assertThat(notifications).hasSize(3);
+        assertThat(notifications.get(first.getKey())).isSameAs(first);
+        assertThat(notifications.get(second.getKey())).isSameAs(second);
+        assertThat(notifications.get(third.getKey())).isSameAs(third);
+    }
+
+    @Test
+    public void getNotifications_otherUser_isLeftOut() {
+        AlertEntry other = post(/* id= */ 1, OTHER_USER_ID);
+        post(/* id= */ 2, CURRENT_USER_ID);
+        post(/* id= */ 3, CURRENT_USER_ID);
+
+        Map<String, AlertEntry> notifications = mStore.getNotifications(CURRENT_USER_ID);
+
+        assertThat(notifications).hasSize(2);
+        assertThat(notifications).doesNotContainKey(other.getKey());
+    }
+
+    @Test
+    public void getNotifications_includesAllUsersNotifications() {
+        AlertEntry allUsers = post(/* id= */ 1, UserHandle.USER_ALL);
+        AlertEntry current = post(/* id= */ 2, CURRENT_USER_ID);
+
+        Map<String, AlertEntry> notifications = mStore.getNotifications(CURRENT_USER_ID);
+
+        assertThat(notifications.keySet()).containsExactly(allUsers.getKey(), current.getKey());
+    }
+
+    @Test
+    public void getNotifications_unchanged_returnsSameSnapshot() {
+        post(/* id= */ 1, CURRENT_USER_ID);
+
+        Map<String, AlertEntry> snapshot = mStore.getNotifications(CURRENT_USER_ID);
+
+        assertThat(mStore.getNotifications(CURRENT_USER_ID)).isSameAs(snapshot);
+    }
+
+    @Test
+    public void getNotifications_afterPost_returnsNewSnapshot() {
+        post(/* id= */ 1, CURRENT_USER_ID);
+        Map<String, AlertEntry> snapshot = mStore.getNotifications(CURRENT_USER_ID);
+
+        AlertEntry posted = post(/* id= */ 2, CURRENT_USER_ID);
+
+        assertThat(snapshot).doesNotContainKey(posted.getKey());
+        assertThat(mStore.getNotifications(CURRENT_USER_ID)).containsKey(posted.getKey());
+    }
+
+    @Test
+    public void getNotifications_afterRemove_returnsNewSnapshot() {
+        AlertEntry alertEntry = post(/* id= */ 1, CURRENT_USER_ID);
+        Map<String, AlertEntry> snapshot = mStore.getNotifications(CURRENT_USER_ID);
+
+        mStore.remove(alertEntry.getKey());
+
+        assertThat(snapshot).containsKey(alertEntry.getKey());
+        assertThat(mStore.getNotifications(CURRENT_USER_ID)).isEmpty();
+    }
+
+    @Test
+    public void getNotifications_otherUser_returnsNewSnapshot() {
+        post(/* id= */ 1, CURRENT_USER_ID);
+        AlertEntry other = post(/* id= */ 2, OTHER_USER_ID);
+        mStore.getNotifications(CURRENT_USER_ID);
+
+        assertThat(mStore.getNotifications(OTHER_USER_ID).keySet())
+                .containsExactly(other.getKey());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void getNotifications_isReadOnly() {
+        AlertEntry alertEntry = post(/* id= */ 1, CURRENT_USER_ID);
+
+        mStore.getNotifications(CURRENT_USER_ID).remove(alertEntry.getKey());
+    }
+
+    @Test
+    public void remove_returnsEntryAndRemovesIt() {
+        AlertEntry alertEntry = post(/* id= */ 1, CURRENT_USER_ID);
+
+        assertThat(mStore.remove(alertEntry.getKey())).isSameAs(alertEntry);
+        assertThat(mStore.contains(alertEntry.getKey())).isFalse();
+        assertThat(mStore.getAll()).isEmpty();
+    }
+
+    @Test
+    public void remove_unknownKey_returnsNull() {
+        post(/* id= */ 1, CURRENT_USER_ID);
+
+        assertThat(mStore.remove("UNKNOWN_KEY")).isNull();
+        assertThat(mStore.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void reset_replacesAllNotifications() {
+        AlertEntry old = post(/* id= */ 1, CURRENT_USER_ID);
+        StatusBarNotification sbn = createStatusBarNotification(/* id= */ 2, CURRENT_USER_ID,
+                new Notification.Builder(mContext, "CHANNEL_ID").build());
+
+        mStore.reset(Collections.singletonList(new AlertEntry(sbn)));
+
+        assertThat(mStore.contains(old.getKey())).isFalse();
+        assertThat(mStore.getNotifications(CURRENT_USER_ID).keySet())
+                .containsExactly(sbn.getKey());
+    }
+
+    private AlertEntry post(int id, int userId) {
+        Notification notification = new Notification.Builder(mContext, "CHANNEL_ID").build();
+        AlertEntry alertEntry = new AlertEntry(
+                createStatusBarNotification(id, userId, notification));
+        mStore.put(alertEntry);
+        return alertEntry;
+    }
+
+    private StatusBarNotification createStatusBarNotification(int id, int userId,
+            Notification notification) {
+        return new StatusBarNotification(PKG, "OP_PKG", id, "TAG", /* uid= */ 0,
+                /* initialPid= */ 0, notification, UserHandle.of(userId),
+                /* overrideGroupKey= */ null, /* postTime= */ 0);
+    }
+}
@@ -268,6 +268,55 @@ public class CarHeadsUpNotificationManagerTest {
         assertThat(mManager.getActiveHeadsUpNotifications().size()).isEqualTo(2);
     }
 
+    @Test
+    public void maybeShowHeadsUp_maxConcurrentReached_queuesNotification() {
+        when(mRankingMapMock.getRanking(any(), any())).thenReturn(true);
+        when(mRankingMock.getImportance()).thenReturn(NotificationManager.IMPORTANCE_HIGH);
+        mManager.setMaxConcurrentHeadsUps(1);
+
+        setPackageInfo(PKG_1);
+        setPackageInfo(PKG_2);
+        mManager.maybeShowHeadsUp(mNotification1, mRankingMapMock, mActiveNotifications);
+        boolean isHeadsUp = mManager.maybeShowHeadsUp(mNotification2, mRankingMapMock,
+                mActiveNotifications);
+
+        assertThat(isHeadsUp).isTrue();
+        assertThat(mManager.getActiveHeadsUpNotifications().size()).isEqualTo(1);
+        assertThat(mManager.isHeadsUpQueued(mNotification2.getKey())).isTrue();
+    }
+
+    @Test
+    public void maybeShowHeadsUp_maxConcurrentReached_playsSoundOnceWhenQueued() {
+        when(mRankingMapMock.getRanking(any(), any())).thenReturn(true);
+        when(mRankingMock.getImportance()).thenReturn(NotificationManager.IMPORTANCE_HIGH);
+        mManager.setMaxConcurrentHeadsUps(1);
+        setPackageInfo(PKG_1);
+        setPackageInfo(PKG_2);
+        mManager.maybeShowHeadsUp(mNotification1, mRankingMapMock, mActiveNotifications);
+
+        mManager.maybeShowHeadsUp(mNotification2, mRankingMapMock, mActiveNotifications);
+        mManager.maybeShowHeadsUp(mNotification2, mRankingMapMock, mActiveNotifications);
+
+        // Once for the notification on the screen and once for the queued notification.
+        verify(mNotificationChannelMock, times(2)).getSound();
+    }
+
+    @Test
+    public void maybeRemoveHeadsUp_queuedNotification_removesFromQueue() {
+        when(mRankingMapMock.getRanking(any(), any())).thenReturn(true);
+        when(mRankingMock.getImportance()).thenReturn(NotificationManager.IMPORTANCE_HIGH);
+        mManager.setMaxConcurrentHeadsUps(1);
+        setPackageInfo(PKG_1);
+        setPackageInfo(PKG_2);
+        mManager.maybeShowHeadsUp(mNotification1, mRankingMapMock, mActiveNotifications);
+        mManager.maybeShowHeadsUp(mNotification2, mRankingMapMock, mActiveNotifications);
+
+        mManager.maybeRemoveHeadsUp(mNotification2);
+
+        assertThat(mManager.isHeadsUpQueued(mNotification2.getKey())).isFalse();
+        assertThat(mManager.getActiveHeadsUpNotifications()).containsKey(mNotification1.getKey());
+    }
+
     @Test
     public void getActiveHeadsUpNotifications_sameNotifications_shouldReturnOne() {
         when(mRankingMapMock.getRanking(any(), any())).thenReturn(true);
@@ -429,6 +478,45 @@ public class CarHeadsUpNotificationManagerTest {
         ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
     }
 
+    @Test
+    public void maybeShowHeadsUp_repostedWithinMinimumTime_cancelsScheduledRemoval() {
+        when(mRankingMapMock.getRanking(any(), any())).thenReturn(true);
+        when(mRankingMock.getImportance()).thenReturn(NotificationManager.IMPORTANCE_HIGH);
+        int minDisplayDuration = mContext.getResources().getInteger(
+                R.integer.heads_up_notification_minimum_time);
+        setPackageInfo(PKG_1);
+        mManager.maybeShowHeadsUp(mNotification1, mRankingMapMock, mActiveNotifications);
+        mManager.maybeRemoveHeadsUp(mNotification1);
+
+        mManager.maybeShowHeadsUp(mNotification1, mRankingMapMock, mActiveNotifications);
+        ShadowLooper.idleMainLooper(minDisplayDuration + 1000);
+
+        HeadsUpEntry headsUpEntry =
+                mManager.getActiveHeadsUpNotifications().get(mNotification1.getKey());
+        assertThat(headsUpEntry).isNotNull();
+        assertThat(headsUpEntry.mIsRemovalScheduled).isFalse();
+    }
+
+    @Test
+    public void maybeRemoveHeadsUp_beforeFirstLayout_removesLayoutListener() {
+        when(mRankingMapMock.getRanking(any(), any())).thenReturn(true);
+        when(mRankingMock.getImportance()).thenReturn(NotificationManager.IMPORTANCE_HIGH);
+        int minDisplayDuration = mContext.getResources().getInteger(
+                R.integer.heads_up_notification_minimum_time);
+        setPackageInfo(PKG_1);
+        mManager.maybeShowHeadsUp(mNotification1, mRankingMapMock, mActiveNotifications);
+        HeadsUpEntry headsUpEntry =
+                mManager.getActiveHeadsUpNotifications().get(mNotification1.getKey());
+        assertThat(headsUpEntry.getOnGlobalLayoutListener()).isNotNull();
+        ShadowLooper.idleMainLooper(minDisplayDuration);
+
+        mManager.maybeRemoveHeadsUp(mNotification1);
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        assertThat(mManager.getActiveHeadsUpNotifications()).isEmpty();
+        assertThat(headsUpEntry.getOnGlobalLayoutListener()).isNull();
+    }
+
     @Test
     public void maybeShowHeadsUp_nonMutedNotification_headsUpShown() {
         when(mNotificationDataManager.isMessageNotificationMuted(any())).thenReturn(false);
@@ -20,6 +20,7 @@ import static com.google.common.truth.Truth.assertThat;
 
 import android.app.Notification;
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.os.Bundle;
 import android.os.UserHandle;
 import android.service.notification.StatusBarNotification;
@@ -500,4 +501,49 @@ public class CarNotificationDiffTest {
                 oldNotificationGroupList, newNotificationGroupList);
         assertThat(carNotificationDiff.areContentsTheSame(0, 0)).isFalse();
     }
+
+    @Test
+    public void areContentsTheSame_differentPicture_shouldReturnFalse() {
+        AlertEntry oldAlertEntry = createAlertEntryWithPicture(
+                Bitmap.createBitmap(/* width= */ 1, /* height= */ 1, Bitmap.Config.ARGB_8888));
+        AlertEntry newAlertEntry = createAlertEntryWithPicture(
+                Bitmap.createBitmap(/* width= */ 2, /* height= */ 2, Bitmap.Config.ARGB_8888));
+        List<NotificationGroup> oldList = new ArrayList<>();
+        oldList.add(new NotificationGroup(oldAlertEntry));
+        List<NotificationGroup> newList = new ArrayList<>();
+        newList.add(new NotificationGroup(newAlertEntry));
+
+        CarNotificationDiff carNotificationDiff =
+                new CarNotificationDiff(mContext, oldList, newList);
+
+        assertThat(carNotificationDiff.areContentsTheSame(0, 0)).isFalse();
+    }
+
+    @Test
+    public void areContentsTheSame_differentTitle_shouldReturnFalse() {
+        Notification.Builder newNotification = new Notification.Builder(mContext, CHANNEL_ID)
+                .setContentTitle("NEW_TITLE")
+                .setSmallIcon(android.R.drawable.sym_def_app_icon);
+        AlertEntry newAlertEntry = new AlertEntry(new StatusBarNotification(PKG_1, OP_PKG,
+                ID, TAG, UID, INITIAL_PID, newNotification.build(), USER_HANDLE,
+                OVERRIDE_GROUP_KEY, POST_TIME));
+        NotificationGroup newGroup = new NotificationGroup();
+        newGroup.addNotification(newAlertEntry);
+        List<NotificationGroup> newList = new ArrayList<>();
+        newList.add(newGroup);
+
+        CarNotificationDiff carNotificationDiff = new CarNotificationDiff(mContext,
+                mNotificationGroupList1, newList);
+
+        assertThat(carNotificationDiff.areContentsTheSame(0, 0)).isFalse();
+    }
+
+    private AlertEntry createAlertEntryWithPicture(Bitmap picture) {
+        Notification notification = new Notification.Builder(mContext, CHANNEL_ID)
+                .setContentTitle(CONTENT_TITLE)
+                .build();
+        notification.extras.putParcelable(Notification.EXTRA_PICTURE, picture);
+        return new AlertEntry(new StatusBarNotification(PKG_1, OP_PKG, ID, TAG, UID,
+                INITIAL_PID, notification, USER_HANDLE, OVERRIDE_GROUP_KEY, POST_TIME));
+    }
 }
@@ -20,11 +20,13 @@ import static com.google.common.truth.Truth.assertThat;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import android.app.Notification;
 import android.app.NotificationManager;
+import android.car.drivingstate.CarUxRestrictions;
 import android.content.Context;
 import android.os.Handler;
 import android.os.Message;
@@ -52,6 +54,7 @@ public class CarNotificationListenerTest {
     private static int CURRENT_USER_ID = 0;
     private static String TEST_KEY = "TEST_KEY";
     private static String TEST_OVERRIDE_GROUP_KEY = "TEST_OVERRIDE_GROUP_KEY";
+    private static final int MAX_STRING_LENGTH = 10;
 
     private Context mContext;
     private CarNotificationListener mCarNotificationListener;
@@ -68,6 +71,8 @@ public class CarNotificationListenerTest {
     private NotificationDataManager mNotificationDataManager;
     @Mock
     private CarUxRestrictionManagerWrapper mCarUxRestrictionManagerWrapper;
+    @Mock
+    private CarUxRestrictions mCarUxRestrictions;
 
     @Before
     public void setup() {
@@ -263,8 +268,13 @@ public class CarNotificationListenerTest {
 
     @Test
     public void onNotificationRemoved_notificationPreviouslyAdded_removesNotification() {
+        UserHandle userHandle = new UserHandle(CURRENT_USER_ID);
+        when(mStatusBarNotification.getUser()).thenReturn(userHandle);
+        when(mStatusBarNotification.getNotification()).thenReturn(new Notification());
         AlertEntry alertEntry = new AlertEntry(mStatusBarNotification);
-        mCarNotificationListener.getNotifications().put(alertEntry.getKey(), alertEntry);
+        mCarNotificationListener.onStateChange(alertEntry, /* isHeadsUp= */ false);
+        assertThat(mCarNotificationListener.getNotifications().containsKey(alertEntry.getKey()))
+                .isTrue();
 
         mCarNotificationListener.onNotificationRemoved(mStatusBarNotification);
 
@@ -272,6 +282,65 @@ public class CarNotificationListenerTest {
                 .isFalse();
     }
 
+    @Test
+    public void onNotificationRankingUpdate_overrideGroupKeyChanged_postsCopyWithNewKey() {
+        StatusBarNotification sbn = new StatusBarNotification("PKG", "OP_PKG", /* id= */ 1,
+                "TAG", /* uid= */ 0, /* initialPid= */ 0, new Notification(),
+                new UserHandle(CURRENT_USER_ID), /* overrideGroupKey= */ null, /* postTime= */ 0);
+        mCarNotificationListener.onStateChange(new AlertEntry(sbn), /* isHeadsUp= */ false);
+        createMockRankingMap(sbn.getKey(), NotificationManager.IMPORTANCE_DEFAULT,
+                TEST_OVERRIDE_GROUP_KEY);
+
+        mCarNotificationListener.onNotificationRankingUpdate(mRankingMap);
+
+        AlertEntry alertEntry = mCarNotificationListener.getNotifications().get(sbn.getKey());
+        assertThat(alertEntry.getStatusBarNotification().getOverrideGroupKey())
+                .isEqualTo(TEST_OVERRIDE_GROUP_KEY);
+        assertThat(alertEntry.getNotification()).isSameAs(sbn.getNotification());
+        assertThat(sbn.getOverrideGroupKey()).isNull();
+        verify(mHandler, times(2)).sendMessage(any(Message.class));
+    }
+
+    @Test
+    public void onNotificationRankingUpdate_overrideGroupKeyUnchanged_keepsEntry() {
+        StatusBarNotification sbn = new StatusBarNotification("PKG", "OP_PKG", /* id= */ 1,
+                "TAG", /* uid= */ 0, /* initialPid= */ 0, new Notification(),
+                new UserHandle(CURRENT_USER_ID), /* overrideGroupKey= */ null, /* postTime= */ 0);
+        AlertEntry alertEntry = new AlertEntry(sbn);
+        mCarNotificationListener.onStateChange(alertEntry, /* isHeadsUp= */ false);
+        createMockRankingMap(sbn.getKey(), NotificationManager.IMPORTANCE_DEFAULT,
+                /* overrideGroupKey= */ null);
+
+        mCarNotificationListener.onNotificationRankingUpdate(mRankingMap);
+
+        assertThat(mCarNotificationListener.getNotifications().get(sbn.getKey()))
+                .isSameAs(alertEntry);
+        verify(mHandler).sendMessage(any(Message.class));
+    }
+
+    @Test
+    public void onMaxStringLengthChanged_textTooLong_postsTrimmedCopy() {
+        setMaxStringLength(Integer.MAX_VALUE);
+        Notification notification = new Notification();
+        notification.extras.putString(Notification.EXTRA_TITLE, "TITLE_LONGER_THAN_MAX");
+        StatusBarNotification sbn = new StatusBarNotification("PKG", "OP_PKG", /* id= */ 1,
+                "TAG", /* uid= */ 0, /* initialPid= */ 0, notification,
+                new UserHandle(CURRENT_USER_ID), /* overrideGroupKey= */ null, /* postTime= */ 0);
+        AlertEntry alertEntry = new AlertEntry(sbn);
+        mCarNotificationListener.onStateChange(alertEntry, /* isHeadsUp= */ false);
+
+        setMaxStringLength(MAX_STRING_LENGTH);
+        setMaxStringLength(Integer.MAX_VALUE);
+
+        AlertEntry trimmed = mCarNotificationListener.getNotifications().get(sbn.getKey());
+        assertThat(trimmed).isNotSameAs(alertEntry);
+        assertThat(trimmed.getNotification().extras.getCharSequence(Notification.EXTRA_TITLE)
+                .length()).isAtMost(MAX_STRING_LENGTH);
+        assertThat(notification.extras.getCharSequence(Notification.EXTRA_TITLE))
+                .isEqualTo("TITLE_LONGER_THAN_MAX");
+        verify(mHandler, times(2)).sendMessage(any(Message.class));
+    }
+
     private void testingHeadsUpNotification(boolean isHeadsUpNotification) {
         Notification notification = new Notification();
         if (isHeadsUpNotification) {
@@ -284,17 +353,29 @@ public class CarNotificationListenerTest {
         when(mStatusBarNotification.getNotification()).thenReturn(notification);
     }
 
+    private void setMaxStringLength(int maxStringLength) {
+        when(mCarUxRestrictions.getMaxRestrictedStringLength()).thenReturn(maxStringLength);
+        when(mCarUxRestrictionManagerWrapper.getCurrentCarUxRestrictions())
+                .thenReturn(mCarUxRestrictions);
+        PreprocessingManager.getInstance(mContext)
+                .setCarUxRestrictionManagerWrapper(mCarUxRestrictionManagerWrapper);
+    }
+
     private void createMockRankingMap(int importance) {
+        createMockRankingMap(TEST_KEY, importance, /* overrideGroupKey= */ null);
+    }
+
+    private void createMockRankingMap(String key, int importance, String overrideGroupKey) {
         NotificationListenerService.Ranking ranking = new NotificationListenerService.Ranking();
         ranking.populate(
-                /* key= */ TEST_KEY,
+                /* key= */ key,
                 /* rank= */ 0,
                 /* matchesInterruptionFilter= */ false,
                 /* visibilityOverride= */ 0,
                 /* suppressedVisualEffects= */ 0,
                 /* importance= */ importance,
                 /* explanation= */ null,
-                /* overrideGroupKey= */ null,
+                /* overrideGroupKey= */ overrideGroupKey,
                 /* channel= */ null,
                 /* overridePeople= */ new ArrayList<>(),
                 /* snoozeCriteria= */ new ArrayList<>(),
@@ -20,11 +20,13 @@ import static com.google.common.truth.Truth.assertThat;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
 import static org.testng.Assert.assertThrows;
 
 import android.app.Notification;
 import android.car.drivingstate.CarUxRestrictions;
 import android.content.Context;
+import android.os.Looper;
 import android.os.UserHandle;
 import android.service.notification.StatusBarNotification;
 import android.view.View;
@@ -53,8 +55,12 @@ import org.robolectric.shadow.api.Shadow;
 import org.robolectric.shadows.ShadowPackageManager;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
 @RunWith(RobolectricTestRunner.class)
 @Config(shadows = {ShadowApplicationPackageManager.class, ShadowStatusBarNotification.class})
@@ -767,6 +773,28 @@ public class CarNotificationViewAdapterTest {
         assertThat(mCarNotificationViewAdapter.getItemCount()).isEqualTo(0);
     }
 
+    @Test
+    public void setNotifications_childNotificationsBeingCleared_doesNotModifyTheList() {
+        initializeWithFactory(true);
+        NotificationGroup notificationGroup = new NotificationGroup();
+        notificationGroup.addNotification(mNotification1);
+        notificationGroup.freeze();
+        List<NotificationGroup> notificationGroups =
+                Collections.unmodifiableList(Arrays.asList(notificationGroup));
+
+        HashSet<AlertEntry> childNotificationsBeingCleared = new HashSet<>();
+        childNotificationsBeingCleared.add(mNotification1);
+        mCarNotificationViewAdapter
+                .setChildNotificationsBeingCleared(childNotificationsBeingCleared);
+
+        mCarNotificationViewAdapter.setNotifications(notificationGroups,
+                /* setRecyclerViewListHeaderAndFooter= */ true);
+
+        assertThat(notificationGroups).containsExactly(notificationGroup);
+        // Only the header and the footer are shown.
+        assertThat(mCarNotificationViewAdapter.getItemCount()).isEqualTo(2);
+    }
+
     @Test
     public void setCarUxRestrictions_shouldSetCarUxRestrictions() {
         initializeWithFactory(true);
@@ -859,7 +887,7 @@ public class CarNotificationViewAdapterTest {
     }
 
     @Test
-    public void getItemId_shouldReturnHashCode() {
+    public void getItemId_group_shouldStayTheSameAcrossUpdates() {
         initializeWithFactory(false);
         NotificationGroup notificationGroup = new NotificationGroup();
         notificationGroup.setGroupSummaryNotification(mNotification1);
@@ -869,25 +897,140 @@ public class CarNotificationViewAdapterTest {
         mCarNotificationViewAdapter.setNotifications(
                 mNotificationGroupList1, /* setRecyclerViewListHeaderAndFooter= */ false);
         mCarNotificationViewAdapter.setExpanded(notificationGroup.getGroupKey(), true);
-
         long itemId = mCarNotificationViewAdapter.getItemId(2);
 
-        assertThat(itemId).isEqualTo(notificationGroup.getGroupKey().hashCode());
+        List<NotificationGroup> updatedList = new ArrayList<>(mNotificationGroupList1);
+        updatedList.set(2, new NotificationGroup(notificationGroup));
+        mCarNotificationViewAdapter.setNotifications(
+                updatedList, /* setRecyclerViewListHeaderAndFooter= */ false);
+
+        assertThat(itemId).isAtLeast(StableIdAllocator.FIRST_ID);
+        assertThat(mCarNotificationViewAdapter.getItemId(2)).isEqualTo(itemId);
+        assertThat(mCarNotificationViewAdapter.getItemId(notificationGroup)).isEqualTo(itemId);
     }
 
     @Test
-    public void getItemId_shouldReturnSingleNotificationHashCode() {
+    public void getItemId_shouldBeUniqueForEveryItem() {
         initializeWithFactory(false);
-        NotificationGroup notificationGroup = new NotificationGroup();
-        notificationGroup.setGroupSummaryNotification(mNotification1);
-        mNotificationGroupList1.add(notificationGroup);
+        List<NotificationGroup> notificationGroups = new ArrayList<>();
+        notificationGroups.add(createGroup());
+        notificationGroups.add(mNotificationGroup1);
+        mCarNotificationViewAdapter.setNotifications(
+                notificationGroups, /* setRecyclerViewListHeaderAndFooter= */ true);
+
+        Set<Long> itemIds = new HashSet<>();
+        for (int i = 0; i < mCarNotificationViewAdapter.getItemCount(); i++) {
+            itemIds.add(mCarNotificationViewAdapter.getItemId(i));
+        }
+
+        assertThat(itemIds).hasSize(mCarNotificationViewAdapter.getItemCount());
+    }
+
+    @Test
+    public void getItemId_removedNotification_shouldReturnNoId() {
+        initializeWithFactory(false);
+        NotificationGroup notificationGroup = createGroup();
+        List<NotificationGroup> notificationGroups = new ArrayList<>();
+        notificationGroups.add(notificationGroup);
+        notificationGroups.add(mNotificationGroup1);
+        mCarNotificationViewAdapter.setNotifications(
+                notificationGroups, /* setRecyclerViewListHeaderAndFooter= */ false);
+        long itemId = mCarNotificationViewAdapter.getItemId(notificationGroup);
+
+        notificationGroups = new ArrayList<>();
+        notificationGroups.add(notificationGroup);
+        mCarNotificationViewAdapter.setNotifications(
+                notificationGroups, /* setRecyclerViewListHeaderAndFooter= */ false);
+
+        assertThat(mCarNotificationViewAdapter.getItemId(notificationGroup)).isEqualTo(itemId);
+        assertThat(mCarNotificationViewAdapter.getItemId(mNotificationGroup1))
+                .isEqualTo(RecyclerView.NO_ID);
+    }
+
+    @Test
+    public void setNotifications_diffOnMainThread_isAppliedRightAway() {
+        shadowOf(Looper.getMainLooper()).pause();
+        initializeWithFactory(false);
+
         mCarNotificationViewAdapter.setNotifications(
                 mNotificationGroupList1, /* setRecyclerViewListHeaderAndFooter= */ false);
-        mCarNotificationViewAdapter.setExpanded(notificationGroup.getGroupKey(), true);
 
-        long itemId = mCarNotificationViewAdapter.getItemId(2);
+        assertThat(mCarNotificationViewAdapter.getItemCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void setNotifications_directDiffExecutor_isAppliedOnMainThread() {
+        shadowOf(Looper.getMainLooper()).pause();
+        initializeWithDiffExecutor(Runnable::run);
 
-        assertThat(itemId).isEqualTo(notificationGroup.getSingleNotification().getKey().hashCode());
+        mCarNotificationViewAdapter.setNotifications(
+                mNotificationGroupList1, /* setRecyclerViewListHeaderAndFooter= */ false);
+        assertThat(mCarNotificationViewAdapter.getItemCount()).isEqualTo(0);
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertThat(mCarNotificationViewAdapter.getItemCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void setNotifications_queuedDiffExecutor_dropsStaleResult() {
+        shadowOf(Looper.getMainLooper()).pause();
+        List<Runnable> diffTasks = new ArrayList<>();
+        initializeWithDiffExecutor(diffTasks::add);
+        mCarNotificationViewAdapter.setNotifications(
+                Collections.singletonList(mNotificationGroup1),
+                /* setRecyclerViewListHeaderAndFooter= */ false);
+        mCarNotificationViewAdapter.setNotifications(
+                mNotificationGroupList1, /* setRecyclerViewListHeaderAndFooter= */ false);
+
+        diffTasks.get(0).run();
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertThat(mCarNotificationViewAdapter.getItemCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void setNotifications_twiceBeforeFirstDiffLands_appliesLatestList() {
+        shadowOf(Looper.getMainLooper()).pause();
+        List<Runnable> diffTasks = new ArrayList<>();
+        initializeWithDiffExecutor(diffTasks::add);
+        mCarNotificationViewAdapter.setNotifications(
+                Collections.singletonList(mNotificationGroup1),
+                /* setRecyclerViewListHeaderAndFooter= */ false);
+        mCarNotificationViewAdapter.setNotifications(
+                mNotificationGroupList1, /* setRecyclerViewListHeaderAndFooter= */ false);
+
+        diffTasks.forEach(Runnable::run);
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertThat(diffTasks).hasSize(2);
+        assertThat(mCarNotificationViewAdapter.getItemCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void setNotifications_queuedDiffExecutor_latestDiffFirst_dropsEarlierResult() {
+        shadowOf(Looper.getMainLooper()).pause();
+        List<Runnable> diffTasks = new ArrayList<>();
+        initializeWithDiffExecutor(diffTasks::add);
+        mCarNotificationViewAdapter.setNotifications(
+                Collections.singletonList(mNotificationGroup1),
+                /* setRecyclerViewListHeaderAndFooter= */ false);
+        mCarNotificationViewAdapter.setNotifications(
+                mNotificationGroupList1, /* setRecyclerViewListHeaderAndFooter= */ false);
+
+        diffTasks.get(1).run();
+        shadowOf(Looper.getMainLooper()).idle();
+        diffTasks.get(0).run();
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertThat(mCarNotificationViewAdapter.getItemCount()).isEqualTo(2);
+    }
+
+    private NotificationGroup createGroup() {
+        NotificationGroup notificationGroup = new NotificationGroup();
+        notificationGroup.setGroupSummaryNotification(mNotification1);
+        notificationGroup.addNotification(mNotification1);
+        notificationGroup.addNotification(mNotification1);
+        return notificationGroup;
     }
 
     private AlertEntry getNotificationWithCategory(String category) {
@@ -903,6 +1046,13 @@ public class CarNotificationViewAdapterTest {
     }
 
 
+    private void initializeWithDiffExecutor(Executor diffExecutor) {
+        mCarNotificationViewAdapter = new CarNotificationViewAdapter(mContext,
+                /* isGroupNotificationAdapter= */ false,
+                /* notificationItemController= */ null, diffExecutor);
+        mCarNotificationViewAdapter.setClickHandlerFactory(mClickHandlerFactoryMock);
+    }
+
     private void initializeWithFactory(boolean isGroup) {
         mCarNotificationViewAdapter = new CarNotificationViewAdapter(mContext, isGroup,
                 /* notificationItemController= */ null);
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.notification;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.app.Notification;
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.graphics.Color;
+import android.os.UserHandle;
+import android.service.notification.StatusBarNotification;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.android.car.notification.testutils.ShadowApplicationPackageManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Collections;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = {ShadowApplicationPackageManager.class})
+public class CardStyleResolverTest {
+
+    private static final String PKG = "com.package.CARD_STYLE_RESOLVER_TEST";
+    private static final String CHANNEL_ID = "CHANNEL_ID";
+    private static final int COLOR = Color.RED;
+
+    private Context mContext;
+    private CardStyleResolver mResolver;
+    private CardStyleResolver.Theme mTheme;
+
+    @Before
+    public void setup() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mResolver = CardStyleResolver.getInstance(mContext);
+        mTheme = CardStyleResolver.Theme.from(mContext);
+    }
+
+    @After
+    public void tearDown() {
+        ShadowApplicationPackageManager.reset();
+    }
+
+    @Test
+    public void resolve_colorizedByPlatformKeyPackage_usesNotificationColor() {
+        setSignedWithPlatformKey(true);
+
+        CardStyleResolver.CardStyle style = mResolver.resolve(mTheme,
+                createAlertEntry(/* id= */ 1, /* colorized= */ true), /* isInGroup= */ false);
+
+        assertThat(style.hasCustomBackgroundColor()).isTrue();
+        assertThat(style.getBackgroundColor()).isEqualTo(COLOR);
+        assertThat(style.getPrimaryForegroundColor()).isEqualTo(
+                NotificationUtils.resolveContrastColor(
+                        mContext.getColor(R.color.primary_text_color), COLOR));
+        assertThat(style.getSecondaryForegroundColor()).isEqualTo(
+                NotificationUtils.resolveContrastColor(
+                        mContext.getColor(R.color.secondary_text_color), COLOR));
+    }
+
+    @Test
+    public void resolve_colorizedByUntrustedPackage_usesDefaultColors() {
+        setSignedWithPlatformKey(false);
+
+        CardStyleResolver.CardStyle style = mResolver.resolve(mTheme,
+                createAlertEntry(/* id= */ 1, /* colorized= */ true), /* isInGroup= */ false);
+
+        assertThat(style.hasCustomBackgroundColor()).isFalse();
+        assertThat(style.getBackgroundColor()).isEqualTo(mTheme.getBackgroundColor());
+        assertThat(style.getPrimaryForegroundColor())
+                .isEqualTo(mContext.getColor(R.color.primary_text_color));
+    }
+
+    @Test
+    public void resolve_inGroup_usesDefaultBackground() {
+        setSignedWithPlatformKey(true);
+
+        CardStyleResolver.CardStyle style = mResolver.resolve(mTheme,
+                createAlertEntry(/* id= */ 1, /* colorized= */ true), /* isInGroup= */ true);
+
+        assertThat(style.hasCustomBackgroundColor()).isFalse();
+        assertThat(style.getBackgroundColor()).isEqualTo(mTheme.getBackgroundColor());
+    }
+
+    @Test
+    public void resolve_notColorized_usesNotificationColorAsAccent() {
+        setSignedWithPlatformKey(true);
+
+        CardStyleResolver.CardStyle style = mResolver.resolve(mTheme,
+                createAlertEntry(/* id= */ 1, /* colorized= */ false), /* isInGroup= */ false);
+
+        assertThat(style.hasCustomBackgroundColor()).isFalse();
+        assertThat(style.getAccentColor()).isEqualTo(COLOR);
+    }
+
+    @Test
+    public void resolve_sameColorAndTheme_returnsCachedStyle() {
+        setSignedWithPlatformKey(true);
+        CardStyleResolver.CardStyle style = mResolver.resolve(mTheme,
+                createAlertEntry(/* id= */ 1, /* colorized= */ true), /* isInGroup= */ false);
+
+        assertThat(mResolver.resolve(CardStyleResolver.Theme.from(mContext),
+                createAlertEntry(/* id= */ 2, /* colorized= */ true), /* isInGroup= */ false))
+                .isSameAs(style);
+    }
+
+    @Test
+    public void prefetch_resolvesTrustLevelAheadOfBinding() {
+        setSignedWithPlatformKey(true);
+        AlertEntry alertEntry = createAlertEntry(/* id= */ 1, /* colorized= */ true);
+
+        mResolver.prefetch(mTheme, Collections.singletonList(new NotificationGroup(alertEntry)));
+        setSignedWithPlatformKey(false);
+        PackageTrustCache.resetInstance();
+
+        assertThat(mResolver.resolve(mTheme, alertEntry, /* isInGroup= */ false)
+                .hasCustomBackgroundColor()).isTrue();
+    }
+
+    private AlertEntry createAlertEntry(int id, boolean colorized) {
+        Notification notification = new Notification.Builder(mContext, CHANNEL_ID)
+                .setColor(COLOR)
+                .setColorized(colorized)
+                .build();
+        return new AlertEntry(new StatusBarNotification(PKG, "OP_PKG", id, "TAG", /* uid= */ 0,
+                /* initialPid= */ 0, notification, UserHandle.CURRENT,
+                /* overrideGroupKey= */ null, /* postTime= */ 0));
+    }
+
+    private void setSignedWithPlatformKey(boolean signedWithPlatformKey) {
+        ApplicationInfo applicationInfo = new ApplicationInfo();
+        if (signedWithPlatformKey) {
+            applicationInfo.privateFlags |= ApplicationInfo.PRIVATE_FLAG_SIGNED_WITH_PLATFORM_KEY;
+        }
+        PackageInfo packageInfo = new PackageInfo();
+        packageInfo.applicationInfo = applicationInfo;
+        ShadowApplicationPackageManager.setPackageInfo(packageInfo);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.notification;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.testng.Assert.assertThrows;
+
+import android.graphics.Color;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+@RunWith(RobolectricTestRunner.class)
+public class ContrastColorCacheTest {
+
+    private static final int CACHE_SIZE = 16;
+
+    private int mSolveCount;
+    private ContrastColorCache mCache;
+
+    @Before
+    public void setup() {
+        mSolveCount = 0;
+        mCache = new ContrastColorCache(CACHE_SIZE, (foregroundColor, backgroundColor) -> {
+            mSolveCount++;
+            return foregroundColor ^ backgroundColor;
+        });
+    }
+
+    @Test
+    public void get_returnsSolverResult() {
+        assertThat(mCache.get(Color.WHITE, Color.RED)).isEqualTo(Color.WHITE ^ Color.RED);
+        assertThat(mCache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void get_samePair_solvesOnce() {
+        mCache.get(Color.WHITE, Color.RED);
+
+        assertThat(mCache.get(Color.WHITE, Color.RED)).isEqualTo(Color.WHITE ^ Color.RED);
+        assertThat(mSolveCount).isEqualTo(1);
+        assertThat(mCache.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void get_swappedPair_isSolvedSeparately() {
+        mCache.get(Color.WHITE, Color.RED);
+        mCache.get(Color.RED, Color.WHITE);
+
+        assertThat(mSolveCount).isEqualTo(2);
+    }
+
+    @Test
+    public void get_collidingPair_replacesEntry() {
+        ContrastColorCache cache = new ContrastColorCache(/* size= */ 1,
+                (foregroundColor, backgroundColor) -> {
+                    mSolveCount++;
+                    return foregroundColor;
+                });
+        cache.get(Color.WHITE, Color.RED);
+        cache.get(Color.WHITE, Color.BLUE);
+
+        assertThat(cache.get(Color.WHITE, Color.RED)).isEqualTo(Color.WHITE);
+        assertThat(mSolveCount).isEqualTo(3);
+        assertThat(cache.getHitCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void constructor_sizeNotPowerOfTwo_throws() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ContrastColorCache(/* size= */ 12, (fg, bg) -> fg));
+    }
+
+    @Test
+    public void resolveContrastColor_matchesUncachedSearch() {
+        int backgroundColor = Color.rgb(250, 250, 200);
+
+        assertThat(NotificationUtils.resolveContrastColor(Color.YELLOW, backgroundColor))
+                .isEqualTo(NotificationUtils.resolveContrastColorUncached(
+                        Color.YELLOW, backgroundColor));
+    }
+
+    @Test
+    public void dump_printsHitRate() {
+        mCache.get(Color.WHITE, Color.RED);
+        mCache.get(Color.WHITE, Color.RED);
+        mCache.get(Color.WHITE, Color.RED);
+        mCache.get(Color.WHITE, Color.BLUE);
+        StringWriter writer = new StringWriter();
+
+        mCache.dump(new PrintWriter(writer));
+
+        assertThat(writer.toString()).contains("hits=2 misses=2 hitRate=50%");
+    }
+}
@@ -20,6 +20,7 @@ import static com.google.common.truth.Truth.assertThat;
 
 import android.app.Notification;
 import android.content.Context;
+import android.os.SystemClock;
 import android.os.UserHandle;
 import android.service.notification.StatusBarNotification;
 import android.widget.FrameLayout;
@@ -71,7 +72,7 @@ public class HeadsUpEntryTest {
 
     @Test
     public void headsUpEntry_shouldInitializePostTime() {
-        long currentTme = System.currentTimeMillis();
+        long currentTme = SystemClock.uptimeMillis();
         mHeadsUpEntry = new HeadsUpEntry(mNotification1);
 
         assertThat(mHeadsUpEntry.getPostTime()).isNotEqualTo(0);
@@ -91,11 +92,6 @@ public class HeadsUpEntryTest {
         assertThat(mNotification1).isEqualTo(mHeadsUpEntry.getStatusBarNotification());
     }
 
-    @Test
-    public void headsUpEntry_shouldInitializeHandler() {
-        assertThat(mHeadsUpEntry.getHandler()).isNotNull();
-    }
-
     @Test
     public void setNotificationView_shouldSetNotificationView() {
         mHeadsUpEntry = new HeadsUpEntry(mNotification1);
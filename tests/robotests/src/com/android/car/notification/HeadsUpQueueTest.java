@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.notification;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.os.UserHandle;
+import android.service.notification.StatusBarNotification;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class HeadsUpQueueTest {
+
+    private static final String PKG = "com.package.HEADS_UP_QUEUE_TEST";
+    private static final long MAX_WAIT_MS = 1000;
+
+    private Context mContext;
+    private HeadsUpQueue mHeadsUpQueue;
+
+    @Before
+    public void setup() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mHeadsUpQueue = new HeadsUpQueue(MAX_WAIT_MS);
+    }
+
+    @Test
+    public void poll_returnsHighestCategoryFirst() {
+        AlertEntry other = createAlertEntry(/* id= */ 1, /* category= */ null);
+        AlertEntry message = createAlertEntry(/* id= */ 2, Notification.CATEGORY_MESSAGE);
+        AlertEntry navigation = createAlertEntry(/* id= */ 3, Notification.CATEGORY_NAVIGATION);
+        AlertEntry call = createAlertEntry(/* id= */ 4, Notification.CATEGORY_CALL);
+        AlertEntry emergency = createAlertEntry(/* id= */ 5,
+                Notification.CATEGORY_CAR_EMERGENCY);
+        for (AlertEntry alertEntry : new AlertEntry[]{other, message, navigation, call,
+                emergency}) {
+            add(alertEntry, NotificationManager.IMPORTANCE_HIGH, /* now= */ 0);
+        }
+
+        assertThat(mHeadsUpQueue.poll().getAlertEntry()).isEqualTo(emergency);
+        assertThat(mHeadsUpQueue.poll().getAlertEntry()).isEqualTo(call);
+        assertThat(mHeadsUpQueue.poll().getAlertEntry()).isEqualTo(navigation);
+        assertThat(mHeadsUpQueue.poll().getAlertEntry()).isEqualTo(message);
+        assertThat(mHeadsUpQueue.poll().getAlertEntry()).isEqualTo(other);
+        assertThat(mHeadsUpQueue.poll()).isNull();
+    }
+
+    @Test
+    public void poll_sameCategory_returnsHigherImportanceThenOlderFirst() {
+        AlertEntry first = createAlertEntry(/* id= */ 1, Notification.CATEGORY_MESSAGE);
+        AlertEntry second = createAlertEntry(/* id= */ 2, Notification.CATEGORY_MESSAGE);
+        AlertEntry important = createAlertEntry(/* id= */ 3, Notification.CATEGORY_MESSAGE);
+        add(first, NotificationManager.IMPORTANCE_HIGH, /* now= */ 0);
+        add(second, NotificationManager.IMPORTANCE_HIGH, /* now= */ 0);
+        add(important, NotificationManager.IMPORTANCE_MAX, /* now= */ 0);
+
+        assertThat(mHeadsUpQueue.poll().getAlertEntry()).isEqualTo(important);
+        assertThat(mHeadsUpQueue.poll().getAlertEntry()).isEqualTo(first);
+        assertThat(mHeadsUpQueue.poll().getAlertEntry()).isEqualTo(second);
+    }
+
+    @Test
+    public void add_update_replacesAndKeepsPlace() {
+        AlertEntry first = createAlertEntry(/* id= */ 1, /* category= */ null);
+        AlertEntry second = createAlertEntry(/* id= */ 2, /* category= */ null);
+        add(first, NotificationManager.IMPORTANCE_HIGH, /* now= */ 0);
+        add(second, NotificationManager.IMPORTANCE_HIGH, /* now= */ 0);
+        AlertEntry update = createAlertEntry(/* id= */ 1, /* category= */ null);
+
+        add(update, NotificationManager.IMPORTANCE_HIGH, /* now= */ 500);
+
+        assertThat(mHeadsUpQueue.size()).isEqualTo(2);
+        assertThat(mHeadsUpQueue.poll().getAlertEntry()).isSameAs(update);
+        assertThat(mHeadsUpQueue.getNextDeadline()).isEqualTo(MAX_WAIT_MS);
+    }
+
+    @Test
+    public void removeStale_returnsOnlyExpired() {
+        AlertEntry old = createAlertEntry(/* id= */ 1, /* category= */ null);
+        AlertEntry recent = createAlertEntry(/* id= */ 2, /* category= */ null);
+        add(old, NotificationManager.IMPORTANCE_HIGH, /* now= */ 0);
+        add(recent, NotificationManager.IMPORTANCE_HIGH, /* now= */ 500);
+
+        List<HeadsUpQueue.PendingHeadsUp> stale = mHeadsUpQueue.removeStale(MAX_WAIT_MS);
+
+        assertThat(stale).hasSize(1);
+        assertThat(stale.get(0).getAlertEntry()).isEqualTo(old);
+        assertThat(mHeadsUpQueue.contains(old.getKey())).isFalse();
+        assertThat(mHeadsUpQueue.contains(recent.getKey())).isTrue();
+        assertThat(mHeadsUpQueue.getNextDeadline()).isEqualTo(500 + MAX_WAIT_MS);
+    }
+
+    @Test
+    public void remove_queuedNotification_returnsTrue() {
+        AlertEntry alertEntry = createAlertEntry(/* id= */ 1, /* category= */ null);
+        add(alertEntry, NotificationManager.IMPORTANCE_HIGH, /* now= */ 0);
+
+        assertThat(mHeadsUpQueue.remove(alertEntry.getKey())).isTrue();
+        assertThat(mHeadsUpQueue.remove(alertEntry.getKey())).isFalse();
+        assertThat(mHeadsUpQueue.size()).isEqualTo(0);
+        assertThat(mHeadsUpQueue.getNextDeadline()).isEqualTo(Long.MAX_VALUE);
+    }
+
+    private void add(AlertEntry alertEntry, int importance, long now) {
+        mHeadsUpQueue.add(alertEntry, /* rankingMap= */ null, importance, now);
+    }
+
+    private AlertEntry createAlertEntry(int id, String category) {
+        Notification notification = new Notification.Builder(mContext, "CHANNEL_ID")
+                .setCategory(category)
+                .build();
+        return new AlertEntry(new StatusBarNotification(PKG, "OP_PKG", id, "TAG",
+                /* uid= */ 0, /* initialPid= */ 0, notification, UserHandle.CURRENT,
+                /* overrideGroupKey= */ null, /* postTime= */ 0));
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.notification;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.app.Notification;
+import android.content.Context;
+import android.os.UserHandle;
+import android.service.notification.StatusBarNotification;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+@RunWith(RobolectricTestRunner.class)
+public class HeadsUpRateLimiterTest {
+
+    private static final String PKG_1 = "com.package.HEADS_UP_RATE_LIMITER_TEST_1";
+    private static final String PKG_2 = "com.package.HEADS_UP_RATE_LIMITER_TEST_2";
+    private static final int PACKAGE_CAPACITY = 2;
+    private static final long PACKAGE_REFILL_INTERVAL_MS = 1000;
+    private static final int CATEGORY_CAPACITY = 3;
+    private static final long CATEGORY_REFILL_INTERVAL_MS = 500;
+
+    private Context mContext;
+    private long mNow;
+    private HeadsUpRateLimiter mRateLimiter;
+
+    @Before
+    public void setup() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mNow = 10_000;
+        mRateLimiter = new HeadsUpRateLimiter(PACKAGE_CAPACITY, PACKAGE_REFILL_INTERVAL_MS,
+                CATEGORY_CAPACITY, CATEGORY_REFILL_INTERVAL_MS, () -> mNow);
+    }
+
+    @Test
+    public void tryAcquire_packageOverCapacity_dropsAndCounts() {
+        assertThat(mRateLimiter.tryAcquire(createAlertEntry(PKG_1, /* category= */ null)))
+                .isTrue();
+        assertThat(mRateLimiter.tryAcquire(createAlertEntry(PKG_1, /* category= */ null)))
+                .isTrue();
+
+        assertThat(mRateLimiter.tryAcquire(createAlertEntry(PKG_1, /* category= */ null)))
+                .isFalse();
+        assertThat(mRateLimiter.getDropCount(PKG_1)).isEqualTo(1);
+        assertThat(mRateLimiter.getDropCount(PKG_2)).isEqualTo(0);
+    }
+
+    @Test
+    public void tryAcquire_afterRefillInterval_allowsAgain() {
+        for (int i = 0; i < PACKAGE_CAPACITY; i++) {
+            mRateLimiter.tryAcquire(createAlertEntry(PKG_1, /* category= */ null));
+        }
+
+        mNow += PACKAGE_REFILL_INTERVAL_MS;
+
+        assertThat(mRateLimiter.tryAcquire(createAlertEntry(PKG_1, /* category= */ null)))
+                .isTrue();
+        assertThat(mRateLimiter.tryAcquire(createAlertEntry(PKG_1, /* category= */ null)))
+                .isFalse();
+    }
+
+    @Test
+    public void tryAcquire_categoryOverCapacity_dropsOtherPackages() {
+        mRateLimiter.tryAcquire(createAlertEntry(PKG_1, Notification.CATEGORY_EMAIL));
+        mRateLimiter.tryAcquire(createAlertEntry(PKG_1, Notification.CATEGORY_EMAIL));
+        mRateLimiter.tryAcquire(createAlertEntry(PKG_2, Notification.CATEGORY_EMAIL));
+
+        assertThat(mRateLimiter.tryAcquire(createAlertEntry(PKG_2, Notification.CATEGORY_EMAIL)))
+                .isFalse();
+        assertThat(mRateLimiter.tryAcquire(createAlertEntry(PKG_2, Notification.CATEGORY_SOCIAL)))
+                .isTrue();
+    }
+
+    @Test
+    public void tryAcquire_drop_doesNotUseCategoryToken() {
+        for (int i = 0; i < PACKAGE_CAPACITY + 2; i++) {
+            mRateLimiter.tryAcquire(createAlertEntry(PKG_1, Notification.CATEGORY_EMAIL));
+        }
+
+        // PKG_1 used two of the three tokens of the category; its drops did not take any.
+        assertThat(mRateLimiter.tryAcquire(createAlertEntry(PKG_2, Notification.CATEGORY_EMAIL)))
+                .isTrue();
+    }
+
+    @Test
+    public void tryAcquire_call_isNeverLimited() {
+        for (int i = 0; i < PACKAGE_CAPACITY + CATEGORY_CAPACITY; i++) {
+            assertThat(mRateLimiter.tryAcquire(
+                    createAlertEntry(PKG_1, Notification.CATEGORY_CALL))).isTrue();
+        }
+        assertThat(mRateLimiter.getDropCount(PKG_1)).isEqualTo(0);
+    }
+
+    @Test
+    public void tryAcquire_navigationAndMessage_areNeverLimited() {
+        for (int i = 0; i < PACKAGE_CAPACITY + CATEGORY_CAPACITY; i++) {
+            assertThat(mRateLimiter.tryAcquire(
+                    createAlertEntry(PKG_1, Notification.CATEGORY_NAVIGATION))).isTrue();
+            assertThat(mRateLimiter.tryAcquire(
+                    createAlertEntry(PKG_1, Notification.CATEGORY_MESSAGE))).isTrue();
+        }
+        assertThat(mRateLimiter.getDropCount(PKG_1)).isEqualTo(0);
+    }
+
+    @Test
+    public void tryAcquire_zeroCapacity_isNotLimited() {
+        mRateLimiter = new HeadsUpRateLimiter(/* packageCapacity= */ 0,
+                PACKAGE_REFILL_INTERVAL_MS, /* categoryCapacity= */ 0,
+                CATEGORY_REFILL_INTERVAL_MS, () -> mNow);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(mRateLimiter.tryAcquire(createAlertEntry(PKG_1, /* category= */ null)))
+                    .isTrue();
+        }
+    }
+
+    @Test
+    public void dump_printsDroppedPackages() {
+        for (int i = 0; i < PACKAGE_CAPACITY + 1; i++) {
+            mRateLimiter.tryAcquire(createAlertEntry(PKG_1, /* category= */ null));
+        }
+        StringWriter writer = new StringWriter();
+
+        mRateLimiter.dump(new PrintWriter(writer));
+
+        assertThat(writer.toString()).contains("dropped=1");
+        assertThat(writer.toString()).contains(PKG_1 + ": 1");
+    }
+
+    private AlertEntry createAlertEntry(String packageName, String category) {
+        Notification notification = new Notification.Builder(mContext, "CHANNEL_ID")
+                .setCategory(category)
+                .build();
+        return new AlertEntry(new StatusBarNotification(packageName, packageName, /* id= */ 0,
+                "TAG", /* uid= */ 0, /* initialPid= */ 0, notification, UserHandle.CURRENT,
+                /* overrideGroupKey= */ null, /* postTime= */ 0));
+    }
+}
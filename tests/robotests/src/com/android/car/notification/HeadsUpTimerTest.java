@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.notification;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class HeadsUpTimerTest {
+
+    private static final String KEY_1 = "KEY_1";
+    private static final String KEY_2 = "KEY_2";
+
+    private HeadsUpTimer mTimer;
+    private List<String> mFired;
+
+    @Before
+    public void setup() {
+        mTimer = new HeadsUpTimer(new Handler(Looper.getMainLooper()), SystemClock::uptimeMillis);
+        mFired = new ArrayList<>();
+    }
+
+    @Test
+    public void schedule_runsActionAtDeadline() {
+        mTimer.schedule(KEY_1, /* delayMs= */ 100, () -> mFired.add(KEY_1));
+
+        ShadowLooper.idleMainLooper(99);
+        assertThat(mFired).isEmpty();
+
+        ShadowLooper.idleMainLooper(1);
+        assertThat(mFired).containsExactly(KEY_1);
+        assertThat(mTimer.isScheduled(KEY_1)).isFalse();
+    }
+
+    @Test
+    public void schedule_severalKeys_runsInDeadlineOrder() {
+        mTimer.schedule(KEY_1, /* delayMs= */ 200, () -> mFired.add(KEY_1));
+        mTimer.schedule(KEY_2, /* delayMs= */ 100, () -> mFired.add(KEY_2));
+
+        ShadowLooper.idleMainLooper(100);
+        assertThat(mFired).containsExactly(KEY_2);
+
+        ShadowLooper.idleMainLooper(100);
+        assertThat(mFired).containsExactly(KEY_2, KEY_1).inOrder();
+    }
+
+    @Test
+    public void schedule_sameKey_movesDeadline() {
+        mTimer.schedule(KEY_1, /* delayMs= */ 100, () -> mFired.add(KEY_1));
+        ShadowLooper.idleMainLooper(50);
+
+        mTimer.schedule(KEY_1, /* delayMs= */ 100, () -> mFired.add(KEY_1));
+        ShadowLooper.idleMainLooper(50);
+        assertThat(mFired).isEmpty();
+
+        ShadowLooper.idleMainLooper(50);
+        assertThat(mFired).containsExactly(KEY_1);
+    }
+
+    @Test
+    public void cancel_doesNotRunAction() {
+        mTimer.schedule(KEY_1, /* delayMs= */ 100, () -> mFired.add(KEY_1));
+        mTimer.schedule(KEY_2, /* delayMs= */ 200, () -> mFired.add(KEY_2));
+
+        mTimer.cancel(KEY_1);
+        ShadowLooper.idleMainLooper(200);
+
+        assertThat(mFired).containsExactly(KEY_2);
+    }
+
+    @Test
+    public void dump_printsPendingDeadlines() {
+        mTimer.schedule(KEY_1, /* delayMs= */ 100, () -> mFired.add(KEY_1));
+        StringWriter writer = new StringWriter();
+
+        mTimer.dump(new PrintWriter(writer));
+
+        assertThat(writer.toString()).contains("1 pending");
+        assertThat(writer.toString()).contains(KEY_1 + " in 100ms");
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.notification;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class HeadsUpViewPoolTest {
+
+    private static final int MAX_POOL_SIZE = 1;
+
+    @Mock
+    private NotificationClickHandlerFactory mClickHandlerFactory;
+
+    private HeadsUpViewPool mViewPool;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        Context context = ApplicationProvider.getApplicationContext();
+        mViewPool = new HeadsUpViewPool(LayoutInflater.from(context), mClickHandlerFactory,
+                MAX_POOL_SIZE);
+    }
+
+    @Test
+    public void acquire_emptyPool_inflatesView() {
+        HeadsUpViewPool.PooledView pooledView = mViewPool.acquire(CarNotificationTypeItem.BASIC);
+
+        assertThat(pooledView.getView()).isNotNull();
+        assertThat(pooledView.getViewHolder()).isNotNull();
+        assertThat(mViewPool.getMissCount()).isEqualTo(1);
+        assertThat(mViewPool.getHitCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void acquire_afterRelease_reusesView() {
+        HeadsUpViewPool.PooledView pooledView = mViewPool.acquire(CarNotificationTypeItem.BASIC);
+        mViewPool.release(CarNotificationTypeItem.BASIC, pooledView.getView(),
+                pooledView.getViewHolder());
+
+        HeadsUpViewPool.PooledView reused = mViewPool.acquire(CarNotificationTypeItem.BASIC);
+
+        assertThat(reused.getView()).isSameAs(pooledView.getView());
+        assertThat(mViewPool.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void acquire_otherType_doesNotReuseView() {
+        HeadsUpViewPool.PooledView pooledView = mViewPool.acquire(CarNotificationTypeItem.BASIC);
+        mViewPool.release(CarNotificationTypeItem.BASIC, pooledView.getView(),
+                pooledView.getViewHolder());
+
+        mViewPool.acquire(CarNotificationTypeItem.MESSAGE);
+
+        assertThat(mViewPool.getMissCount()).isEqualTo(2);
+        assertThat(mViewPool.getPoolSize(CarNotificationTypeItem.BASIC)).isEqualTo(1);
+    }
+
+    @Test
+    public void release_poolFull_dropsView() {
+        HeadsUpViewPool.PooledView first = mViewPool.acquire(CarNotificationTypeItem.BASIC);
+        HeadsUpViewPool.PooledView second = mViewPool.acquire(CarNotificationTypeItem.BASIC);
+
+        mViewPool.release(CarNotificationTypeItem.BASIC, first.getView(), first.getViewHolder());
+        mViewPool.release(CarNotificationTypeItem.BASIC, second.getView(),
+                second.getViewHolder());
+
+        assertThat(mViewPool.getPoolSize(CarNotificationTypeItem.BASIC)).isEqualTo(MAX_POOL_SIZE);
+    }
+
+    @Test
+    public void release_resetsViewProperties() {
+        HeadsUpViewPool.PooledView pooledView = mViewPool.acquire(CarNotificationTypeItem.BASIC);
+        pooledView.getView().setAlpha(0f);
+        pooledView.getView().setTranslationY(100f);
+
+        mViewPool.release(CarNotificationTypeItem.BASIC, pooledView.getView(),
+                pooledView.getViewHolder());
+
+        assertThat(pooledView.getView().getAlpha()).isEqualTo(1f);
+        assertThat(pooledView.getView().getTranslationY()).isEqualTo(0f);
+    }
+
+    @Test
+    public void warmUpNext_inflatesCommonTypes() {
+        while (mViewPool.warmUpNext()) {
+            // Inflate until all warm up types are pooled.
+        }
+
+        assertThat(mViewPool.getPoolSize(CarNotificationTypeItem.MESSAGE)).isEqualTo(1);
+        assertThat(mViewPool.getPoolSize(CarNotificationTypeItem.CALL)).isEqualTo(1);
+        assertThat(mViewPool.getPoolSize(CarNotificationTypeItem.NAVIGATION)).isEqualTo(1);
+        assertThat(mViewPool.getPoolSize(CarNotificationTypeItem.BASIC)).isEqualTo(1);
+    }
+}
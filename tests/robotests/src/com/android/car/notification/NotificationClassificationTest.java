@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.notification;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.app.Notification;
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.os.UserHandle;
+import android.service.notification.StatusBarNotification;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.android.car.notification.testutils.ShadowApplicationPackageManager;
+import com.android.car.notification.testutils.ShadowCarAssistUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = {ShadowApplicationPackageManager.class, ShadowCarAssistUtils.class})
+public class NotificationClassificationTest {
+
+    private static final String PKG = "com.package.NOTIFICATION_CLASSIFICATION_TEST";
+    private static final String CHANNEL_ID = "CHANNEL_ID";
+
+    private Context mContext;
+
+    @Before
+    public void setup() {
+        mContext = ApplicationProvider.getApplicationContext();
+    }
+
+    @After
+    public void tearDown() {
+        ShadowCarAssistUtils.reset();
+    }
+
+    @Test
+    public void getClassification_isComputedOnce() {
+        AlertEntry alertEntry = createAlertEntry(new Notification.Builder(mContext, CHANNEL_ID));
+
+        assertThat(alertEntry.getClassification()).isSameAs(alertEntry.getClassification());
+    }
+
+    @Test
+    public void classify_message() {
+        NotificationClassification classification = classify(
+                new Notification.Builder(mContext, CHANNEL_ID)
+                        .setCategory(Notification.CATEGORY_MESSAGE));
+
+        assertThat(classification.getCategory())
+                .isEqualTo(NotificationClassification.Category.MESSAGE);
+        assertThat(classification.getHeadsUpType()).isEqualTo(CarNotificationTypeItem.MESSAGE);
+        assertThat(classification.getPanelViewType()).isEqualTo(NotificationViewType.MESSAGE);
+    }
+
+    @Test
+    public void classify_navigation_isShownAsBasicInPanel() {
+        NotificationClassification classification = classify(
+                new Notification.Builder(mContext, CHANNEL_ID)
+                        .setCategory(Notification.CATEGORY_NAVIGATION));
+
+        assertThat(classification.getHeadsUpType())
+                .isEqualTo(CarNotificationTypeItem.NAVIGATION);
+        assertThat(classification.getPanelViewType()).isEqualTo(NotificationViewType.BASIC);
+    }
+
+    @Test
+    public void classify_progress() {
+        NotificationClassification classification = classify(
+                new Notification.Builder(mContext, CHANNEL_ID)
+                        .setProgress(/* max= */ 100, /* progress= */ 50,
+                                /* indeterminate= */ false));
+
+        assertThat(classification.isProgress()).isTrue();
+        assertThat(classification.getPanelViewType()).isEqualTo(NotificationViewType.PROGRESS);
+    }
+
+    @Test
+    public void classify_completedProgress_isNotProgress() {
+        NotificationClassification classification = classify(
+                new Notification.Builder(mContext, CHANNEL_ID)
+                        .setProgress(/* max= */ 100, /* progress= */ 100,
+                                /* indeterminate= */ false));
+
+        assertThat(classification.isProgress()).isFalse();
+    }
+
+    @Test
+    public void classify_inbox() {
+        NotificationClassification classification = classify(
+                new Notification.Builder(mContext, CHANNEL_ID)
+                        .setStyle(new Notification.InboxStyle()
+                                .setBigContentTitle("BIG_TITLE")
+                                .setSummaryText("SUMMARY")));
+
+        assertThat(classification.isInbox()).isTrue();
+        assertThat(classification.getPanelViewType()).isEqualTo(NotificationViewType.INBOX);
+    }
+
+    @Test
+    public void classify_carCompatibleMessaging() {
+        StatusBarNotification sbn = createStatusBarNotification(
+                new Notification.Builder(mContext, CHANNEL_ID));
+        ShadowCarAssistUtils.addMessageNotification(sbn.getKey());
+
+        assertThat(new AlertEntry(sbn).getClassification().isCarCompatibleMessaging()).isTrue();
+    }
+
+    @Test
+    public void getTrustLevel_platformKey() {
+        setApplicationInfo(/* signedWithPlatformKey= */ true, /* isSystemApp= */ false,
+                /* isPrivilegedApp= */ false);
+
+        NotificationClassification classification =
+                classify(new Notification.Builder(mContext, CHANNEL_ID));
+
+        assertThat(classification.getTrustLevel(mContext))
+                .isEqualTo(NotificationClassification.TRUST_PLATFORM_KEY);
+        assertThat(classification.isSystemPrivilegedOrPlatformKey(mContext)).isTrue();
+    }
+
+    @Test
+    public void getTrustLevel_systemApp() {
+        setApplicationInfo(/* signedWithPlatformKey= */ false, /* isSystemApp= */ true,
+                /* isPrivilegedApp= */ false);
+
+        NotificationClassification classification =
+                classify(new Notification.Builder(mContext, CHANNEL_ID));
+
+        assertThat(classification.getTrustLevel(mContext))
+                .isEqualTo(NotificationClassification.TRUST_SYSTEM);
+        assertThat(classification.isSystemPrivilegedOrPlatformKey(mContext)).isFalse();
+    }
+
+    @Test
+    public void getTrustLevel_privilegedSystemApp() {
+        setApplicationInfo(/* signedWithPlatformKey= */ false, /* isSystemApp= */ true,
+                /* isPrivilegedApp= */ true);
+
+        NotificationClassification classification =
+                classify(new Notification.Builder(mContext, CHANNEL_ID));
+
+        assertThat(classification.isSystemPrivilegedOrPlatformKey(mContext)).isTrue();
+    }
+
+    @Test
+    public void getTrustLevel_isResolvedOnce() {
+        setApplicationInfo(/* signedWithPlatformKey= */ false, /* isSystemApp= */ false,
+                /* isPrivilegedApp= */ false);
+        NotificationClassification classification =
+                classify(new Notification.Builder(mContext, CHANNEL_ID));
+        classification.getTrustLevel(mContext);
+
+        setApplicationInfo(/* signedWithPlatformKey= */ true, /* isSystemApp= */ true,
+                /* isPrivilegedApp= */ true);
+        PackageTrustCache.resetInstance();
+
+        assertThat(classification.getTrustLevel(mContext))
+                .isEqualTo(NotificationClassification.TRUST_NONE);
+    }
+
+    private NotificationClassification classify(Notification.Builder builder) {
+        return createAlertEntry(builder).getClassification();
+    }
+
+    private AlertEntry createAlertEntry(Notification.Builder builder) {
+        return new AlertEntry(createStatusBarNotification(builder));
+    }
+
+    private StatusBarNotification createStatusBarNotification(Notification.Builder builder) {
+        return new StatusBarNotification(PKG, "OP_PKG", /* id= */ 1, "TAG", /* uid= */ 0,
+                /* initialPid= */ 0, builder.build(), UserHandle.CURRENT,
+                /* overrideGroupKey= */ null, /* postTime= */ 0);
+    }
+
+    private void setApplicationInfo(boolean signedWithPlatformKey, boolean isSystemApp,
+            boolean isPrivilegedApp) {
+        ApplicationInfo applicationInfo = new ApplicationInfo();
+        if (signedWithPlatformKey) {
+            applicationInfo.privateFlags |= ApplicationInfo.PRIVATE_FLAG_SIGNED_WITH_PLATFORM_KEY;
+        }
+        if (isSystemApp) {
+            applicationInfo.flags |= ApplicationInfo.FLAG_SYSTEM;
+        }
+        if (isPrivilegedApp) {
+            applicationInfo.privateFlags |= ApplicationInfo.PRIVATE_FLAG_PRIVILEGED;
+        }
+        PackageInfo packageInfo = new PackageInfo();
+        packageInfo.applicationInfo = applicationInfo;
+        ShadowApplicationPackageManager.setPackageInfo(packageInfo);
+    }
+}
@@ -146,6 +146,21 @@ public class NotificationDataManagerTest {
         assertThat(mNotificationDataManager.getUnseenNotificationCount()).isEqualTo(1);
     }
 
+    @Test
+    public void trackUnseenNotification_incrementsUnseenCount() {
+        mNotificationDataManager.trackUnseenNotification(mMessageNotification);
+
+        assertThat(mNotificationDataManager.getUnseenNotificationCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void trackUnseenNotification_twice_countsOnce() {
+        mNotificationDataManager.trackUnseenNotification(mMessageNotification);
+        mNotificationDataManager.trackUnseenNotification(mMessageNotification);
+
+        assertThat(mNotificationDataManager.getUnseenNotificationCount()).isEqualTo(1);
+    }
+
     @Test
     public void setNotificationsAsSeen_notificationIsSeen() {
         List<NotificationGroup> notificationGroups = new ArrayList<>();
@@ -219,4 +219,29 @@ public class NotificationGroupTest {
         assertThat(mNotificationGroup.isDismissible()).isTrue();
     }
 
+    @Test
+    public void freeze_addNotification_throwsError() {
+        mNotificationGroup.addNotification(mNotification1);
+        mNotificationGroup.freeze();
+
+        assertThrows(IllegalStateException.class,
+                () -> mNotificationGroup.addNotification(mNotification1));
+        assertThrows(UnsupportedOperationException.class,
+                () -> mNotificationGroup.getChildNotifications().clear());
+        assertThat(mNotificationGroup.getChildCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void copyOfFrozenGroup_canBeModified_withoutChangingTheOriginal() {
+        mNotificationGroup.addNotification(mNotification1);
+        mNotificationGroup.freeze();
+
+        NotificationGroup copy = new NotificationGroup(mNotificationGroup);
+        copy.addNotification(mNotification1);
+
+        assertThat(copy.isFrozen()).isFalse();
+        assertThat(copy.getChildCount()).isEqualTo(2);
+        assertThat(mNotificationGroup.getChildCount()).isEqualTo(1);
+    }
+
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.notification;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.app.Notification;
+import android.content.Context;
+import android.os.UserHandle;
+import android.service.notification.StatusBarNotification;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+@RunWith(RobolectricTestRunner.class)
+public class NotificationLatencyTrackerTest {
+
+    private static final String PKG = "com.package.NOTIFICATION_LATENCY_TRACKER_TEST";
+    private static final long MS = 1_000_000;
+
+    private Context mContext;
+    private NotificationLatencyTracker mTracker;
+    private AlertEntry mAlertEntry;
+
+    @Before
+    public void setup() {
+        mContext = ApplicationProvider.getApplicationContext();
+        NotificationLatencyTracker.resetInstance();
+        mTracker = NotificationLatencyTracker.getInstance();
+        mAlertEntry = createAlertEntry();
+    }
+
+    @Test
+    public void onStage_drawn_recordsAllReachedStages() {
+        mTracker.onStage(mAlertEntry, NotificationLatencyTracker.STAGE_RECEIVED, 10 * MS);
+        mTracker.onStage(mAlertEntry, NotificationLatencyTracker.STAGE_DISPATCHED, 11 * MS);
+        mTracker.onStage(mAlertEntry, NotificationLatencyTracker.STAGE_BOUND, 20 * MS);
+        mTracker.onStage(mAlertEntry, NotificationLatencyTracker.STAGE_DRAWN, 30 * MS);
+
+        assertThat(mTracker.getCount(Notification.CATEGORY_MESSAGE,
+                NotificationLatencyTracker.STAGE_DISPATCHED)).isEqualTo(1);
+        assertThat(mTracker.getCount(Notification.CATEGORY_MESSAGE,
+                NotificationLatencyTracker.STAGE_PREPROCESSED)).isEqualTo(0);
+        assertThat(mTracker.getCount(Notification.CATEGORY_MESSAGE,
+                NotificationLatencyTracker.STAGE_DRAWN)).isEqualTo(1);
+        assertThat(mTracker.isPending(mAlertEntry)).isFalse();
+    }
+
+    @Test
+    public void onStage_notReceived_isIgnored() {
+        mTracker.onStage(mAlertEntry, NotificationLatencyTracker.STAGE_BOUND, 20 * MS);
+        mTracker.onStage(mAlertEntry, NotificationLatencyTracker.STAGE_DRAWN, 30 * MS);
+
+        assertThat(mTracker.getCount(Notification.CATEGORY_MESSAGE,
+                NotificationLatencyTracker.STAGE_DRAWN)).isEqualTo(0);
+    }
+
+    @Test
+    public void onStage_drawnTwice_recordsOnce() {
+        mTracker.onStage(mAlertEntry, NotificationLatencyTracker.STAGE_RECEIVED, 10 * MS);
+        mTracker.onStage(mAlertEntry, NotificationLatencyTracker.STAGE_DRAWN, 30 * MS);
+        mTracker.onStage(mAlertEntry, NotificationLatencyTracker.STAGE_DRAWN, 40 * MS);
+
+        assertThat(mTracker.getCount(Notification.CATEGORY_MESSAGE,
+                NotificationLatencyTracker.STAGE_DRAWN)).isEqualTo(1);
+    }
+
+    @Test
+    public void stopTracking_pendingEntry_doesNotRecord() {
+        mTracker.onStage(mAlertEntry, NotificationLatencyTracker.STAGE_RECEIVED, 10 * MS);
+
+        mTracker.stopTracking(mAlertEntry);
+        mTracker.onStage(mAlertEntry, NotificationLatencyTracker.STAGE_DRAWN, 30 * MS);
+
+        assertThat(mTracker.isPending(mAlertEntry)).isFalse();
+        assertThat(mTracker.getPendingCount()).isEqualTo(0);
+        assertThat(mTracker.getCount(Notification.CATEGORY_MESSAGE,
+                NotificationLatencyTracker.STAGE_DRAWN)).isEqualTo(0);
+    }
+
+    @Test
+    public void stopTracking_key_stopsTrackingEntry() {
+        mTracker.onStage(mAlertEntry, NotificationLatencyTracker.STAGE_RECEIVED, 10 * MS);
+
+        mTracker.stopTracking(mAlertEntry.getKey());
+
+        assertThat(mTracker.isPending(mAlertEntry)).isFalse();
+        assertThat(mTracker.getPendingCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void onStage_receivedAgain_replacesPendingEntry() {
+        AlertEntry reposted = createAlertEntry();
+        mTracker.onStage(mAlertEntry, NotificationLatencyTracker.STAGE_RECEIVED, 10 * MS);
+
+        mTracker.onStage(reposted, NotificationLatencyTracker.STAGE_RECEIVED, 20 * MS);
+
+        assertThat(mTracker.isPending(mAlertEntry)).isFalse();
+        assertThat(mTracker.isPending(reposted)).isTrue();
+        assertThat(mTracker.getPendingCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void getBucket_returnsFirstBucketThatFits() {
+        assertThat(NotificationLatencyTracker.getBucket(0)).isEqualTo(0);
+        assertThat(NotificationLatencyTracker.getBucket(3)).isEqualTo(2);
+        assertThat(NotificationLatencyTracker.getBucket(100_000))
+                .isEqualTo(NotificationLatencyTracker.BUCKET_UPPER_BOUNDS_MS.length);
+    }
+
+    @Test
+    public void dump_printsCategory() {
+        mTracker.onStage(mAlertEntry, NotificationLatencyTracker.STAGE_RECEIVED, 10 * MS);
+        mTracker.onStage(mAlertEntry, NotificationLatencyTracker.STAGE_DRAWN, 30 * MS);
+        StringWriter writer = new StringWriter();
+
+        mTracker.dump(new PrintWriter(writer));
+
+        assertThat(writer.toString()).contains(Notification.CATEGORY_MESSAGE);
+        assertThat(writer.toString()).contains("drawn: 32/32/32, 1");
+    }
+
+    @Test
+    public void onPanelOpened_recordsLatency() {
+        mTracker.onPanelOpened(5 * MS);
+        StringWriter writer = new StringWriter();
+
+        mTracker.dump(new PrintWriter(writer));
+
+        assertThat(mTracker.getPanelOpenCount()).isEqualTo(1);
+        assertThat(writer.toString()).contains("panel open");
+    }
+
+    private AlertEntry createAlertEntry() {
+        Notification notification = new Notification.Builder(mContext, "CHANNEL_ID")
+                .setCategory(Notification.CATEGORY_MESSAGE)
+                .build();
+        return new AlertEntry(new StatusBarNotification(PKG, "OP_PKG", /* id= */ 0, "TAG",
+                /* uid= */ 0, /* initialPid= */ 0, notification, UserHandle.CURRENT,
+                "OVERRIDE_GROUP_KEY", /* postTime= */ 0));
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.notification;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.service.notification.StatusBarNotification;
+import android.view.Choreographer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class NotificationUpdateBatcherTest {
+
+    private static final long MAX_LATENCY_MS = 100;
+
+    @Mock
+    private Choreographer mChoreographer;
+    @Mock
+    private StatusBarNotification mStatusBarNotification1;
+    @Mock
+    private StatusBarNotification mStatusBarNotification2;
+
+    private final List<List<NotificationUpdateBatcher.Update>> mDeliveredUpdates =
+            new ArrayList<>();
+    private NotificationUpdateBatcher mBatcher;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        when(mStatusBarNotification1.getKey()).thenReturn("KEY_1");
+        when(mStatusBarNotification2.getKey()).thenReturn("KEY_2");
+        mBatcher = createBatcher(MAX_LATENCY_MS);
+    }
+
+    @Test
+    public void enqueue_doesNotDeliverBeforeFlush() {
+        mBatcher.enqueue(CarNotificationListener.NOTIFY_NOTIFICATION_POSTED,
+                new AlertEntry(mStatusBarNotification1));
+
+        assertThat(mDeliveredUpdates).isEmpty();
+        assertThat(mBatcher.getPendingUpdateCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void enqueue_multipleEvents_schedulesOneFrameCallback() {
+        mBatcher.enqueue(CarNotificationListener.NOTIFY_NOTIFICATION_POSTED,
+                new AlertEntry(mStatusBarNotification1));
+        mBatcher.enqueue(CarNotificationListener.NOTIFY_NOTIFICATION_POSTED,
+                new AlertEntry(mStatusBarNotification2));
+
+        verify(mChoreographer, times(1)).postFrameCallback(any());
+    }
+
+    @Test
+    public void flush_postsOfSameKey_deliversLatestPost() {
+        AlertEntry first = new AlertEntry(mStatusBarNotification1);
+        AlertEntry second = new AlertEntry(mStatusBarNotification1);
+        mBatcher.enqueue(CarNotificationListener.NOTIFY_NOTIFICATION_POSTED, first);
+        mBatcher.enqueue(CarNotificationListener.NOTIFY_NOTIFICATION_POSTED, second);
+
+        mBatcher.flush();
+
+        assertThat(mDeliveredUpdates).hasSize(1);
+        assertThat(mDeliveredUpdates.get(0)).hasSize(1);
+        assertThat(mDeliveredUpdates.get(0).get(0).getAlertEntry()).isSameAs(second);
+    }
+
+    @Test
+    public void flush_removeAfterPost_deliversRemoval() {
+        mBatcher.enqueue(CarNotificationListener.NOTIFY_NOTIFICATION_POSTED,
+                new AlertEntry(mStatusBarNotification1));
+        mBatcher.enqueue(CarNotificationListener.NOTIFY_NOTIFICATION_REMOVED,
+                new AlertEntry(mStatusBarNotification1));
+
+        mBatcher.flush();
+
+        assertThat(mDeliveredUpdates.get(0)).hasSize(1);
+        assertThat(mDeliveredUpdates.get(0).get(0).getUpdateType())
+                .isEqualTo(CarNotificationListener.NOTIFY_NOTIFICATION_REMOVED);
+    }
+
+    @Test
+    public void flush_differentKeys_deliversInOrderOfLatestEvent() {
+        mBatcher.enqueue(CarNotificationListener.NOTIFY_NOTIFICATION_POSTED,
+                new AlertEntry(mStatusBarNotification1));
+        mBatcher.enqueue(CarNotificationListener.NOTIFY_NOTIFICATION_POSTED,
+                new AlertEntry(mStatusBarNotification2));
+        mBatcher.enqueue(CarNotificationListener.NOTIFY_NOTIFICATION_POSTED,
+                new AlertEntry(mStatusBarNotification1));
+
+        mBatcher.flush();
+
+        List<NotificationUpdateBatcher.Update> updates = mDeliveredUpdates.get(0);
+        assertThat(updates).hasSize(2);
+        assertThat(updates.get(0).getAlertEntry().getKey()).isEqualTo("KEY_2");
+        assertThat(updates.get(1).getAlertEntry().getKey()).isEqualTo("KEY_1");
+    }
+
+    @Test
+    public void flush_noPendingEvents_deliversNothing() {
+        mBatcher.flush();
+
+        assertThat(mDeliveredUpdates).isEmpty();
+    }
+
+    @Test
+    public void clear_dropsPendingEvents() {
+        mBatcher.enqueue(CarNotificationListener.NOTIFY_NOTIFICATION_POSTED,
+                new AlertEntry(mStatusBarNotification1));
+
+        mBatcher.clear();
+        mBatcher.flush();
+
+        assertThat(mDeliveredUpdates).isEmpty();
+        verify(mChoreographer).removeFrameCallback(any());
+    }
+
+    @Test
+    public void enqueue_batchingDisabled_deliversImmediately() {
+        mBatcher = createBatcher(/* maxLatencyMs= */ 0);
+
+        mBatcher.enqueue(CarNotificationListener.NOTIFY_NOTIFICATION_POSTED,
+                new AlertEntry(mStatusBarNotification1));
+
+        assertThat(mDeliveredUpdates).hasSize(1);
+        verify(mChoreographer, never()).postFrameCallback(any());
+    }
+
+    private NotificationUpdateBatcher createBatcher(long maxLatencyMs) {
+        return new NotificationUpdateBatcher(mChoreographer,
+                new Handler(Looper.getMainLooper()), maxLatencyMs, mDeliveredUpdates::add);
+    }
+}
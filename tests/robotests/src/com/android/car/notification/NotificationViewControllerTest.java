@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.notification;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.Notification;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.UserHandle;
+import android.service.notification.NotificationListenerService;
+import android.service.notification.StatusBarNotification;
+import android.view.LayoutInflater;
+import android.widget.FrameLayout;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class NotificationViewControllerTest {
+
+    private static final String PKG = "com.package.NOTIFICATION_VIEW_CONTROLLER_TEST";
+
+    private Context mContext;
+    private CarNotificationView mCarNotificationView;
+    @Mock
+    private PreprocessingManager mPreprocessingManager;
+    @Mock
+    private CarNotificationListener mCarNotificationListener;
+    @Mock
+    private CarUxRestrictionManagerWrapper mUxRestrictionManagerWrapper;
+    @Mock
+    private NotificationDataManager mNotificationDataManager;
+    @Mock
+    private NotificationListenerService.RankingMap mRankingMap;
+    private List<NotificationGroup> mInitialGroups;
+    private List<NotificationGroup> mRefreshedGroups;
+    private List<NotificationGroup> mUpdatedGroups;
+    private int mBatchLatencyMs;
+    private NotificationViewController mController;
+    private Handler mHandler;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        mContext = ApplicationProvider.getApplicationContext();
+        FrameLayout frameLayout = new FrameLayout(mContext);
+        LayoutInflater.from(mContext)
+                .inflate(R.layout.test_car_notification_view_layout, frameLayout);
+        mCarNotificationView = spy(
+                (CarNotificationView) frameLayout.findViewById(R.id.notification_view));
+        doNothing().when(mCarNotificationView).setNotifications(any());
+        doNothing().when(mCarNotificationView).onUxRestrictionsChanged(any());
+        mInitialGroups = createGroups();
+        mRefreshedGroups = createGroups();
+        mUpdatedGroups = createGroups();
+        mBatchLatencyMs = mContext.getResources().getInteger(
+                R.integer.notification_update_batch_max_latency_ms);
+
+        when(mPreprocessingManager.getExecutor()).thenReturn(Runnable::run);
+        when(mPreprocessingManager.init(any(), any(), anyBoolean()))
+                .thenReturn(mInitialGroups, mRefreshedGroups);
+        when(mPreprocessingManager.updateNotifications(anyBoolean(), any(), anyInt(), any()))
+                .thenReturn(mUpdatedGroups);
+        when(mCarNotificationListener.getNotifications()).thenReturn(Collections.emptyMap());
+        when(mCarNotificationListener.getCurrentRanking()).thenReturn(mRankingMap);
+
+        shadowOf(Looper.getMainLooper()).pause();
+        mController = new NotificationViewController(mCarNotificationView, mPreprocessingManager,
+                mCarNotificationListener, mUxRestrictionManagerWrapper, mNotificationDataManager);
+        mController.enable();
+        ArgumentCaptor<Handler> handlerCaptor = ArgumentCaptor.forClass(Handler.class);
+        verify(mCarNotificationListener).setHandler(handlerCaptor.capture());
+        mHandler = handlerCaptor.getValue();
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    @Test
+    public void constructor_resetsNotificationsOnce() {
+        verify(mPreprocessingManager).init(any(), any(), anyBoolean());
+        verify(mPreprocessingManager, never()).process(anyBoolean(), any(), any());
+        verify(mCarNotificationView).setNotifications(mInitialGroups);
+    }
+
+    @Test
+    public void onNotificationPosted_visible_updatesNotifications() {
+        mController.onVisibilityChanged(/* isVisible= */ true);
+
+        postNotification(/* id= */ 1);
+        ShadowLooper.idleMainLooper(mBatchLatencyMs);
+
+        verify(mPreprocessingManager).updateNotifications(anyBoolean(), any(), anyInt(), any());
+        verify(mCarNotificationView).setNotifications(mUpdatedGroups);
+    }
+
+    @Test
+    public void onNotificationPosted_hidden_marksDirtyWithoutProcessing() {
+        mController.onVisibilityChanged(/* isVisible= */ false);
+
+        postNotification(/* id= */ 1);
+        ShadowLooper.idleMainLooper(mBatchLatencyMs);
+
+        verify(mPreprocessingManager, never())
+                .updateNotifications(anyBoolean(), any(), anyInt(), any());
+        verify(mPreprocessingManager, times(1)).init(any(), any(), anyBoolean());
+    }
+
+    @Test
+    public void onVisibilityChanged_visibleAfterUpdatesWhileHidden_resetsNotificationsOnce() {
+        mController.onVisibilityChanged(/* isVisible= */ false);
+        postNotification(/* id= */ 1);
+        postNotification(/* id= */ 2);
+        ShadowLooper.idleMainLooper(mBatchLatencyMs);
+
+        mController.onVisibilityChanged(/* isVisible= */ true);
+        shadowOf(Looper.getMainLooper()).idle();
+
+        verify(mPreprocessingManager, times(2)).init(any(), any(), anyBoolean());
+        verify(mPreprocessingManager, never()).process(anyBoolean(), any(), any());
+        verify(mPreprocessingManager, never())
+                .updateNotifications(anyBoolean(), any(), anyInt(), any());
+        verify(mCarNotificationView).setNotifications(mRefreshedGroups);
+    }
+
+    @Test
+    public void onVisibilityChanged_visibleWhileNotDirty_doesNotResetNotifications() {
+        mController.onVisibilityChanged(/* isVisible= */ true);
+        shadowOf(Looper.getMainLooper()).idle();
+
+        verify(mPreprocessingManager, times(1)).init(any(), any(), anyBoolean());
+    }
+
+    @Test
+    public void onVisibilityChanged_hidden_dropsBatchedUpdates() {
+        mController.onVisibilityChanged(/* isVisible= */ true);
+        postNotification(/* id= */ 1);
+        shadowOf(Looper.getMainLooper()).idle();
+
+        mController.onVisibilityChanged(/* isVisible= */ false);
+        ShadowLooper.idleMainLooper(mBatchLatencyMs);
+
+        verify(mPreprocessingManager, never())
+                .updateNotifications(anyBoolean(), any(), anyInt(), any());
+    }
+
+    private void postNotification(int id) {
+        Notification notification = new Notification.Builder(mContext, "CHANNEL_ID").build();
+        AlertEntry alertEntry = new AlertEntry(new StatusBarNotification(PKG, PKG, id, "TAG",
+                /* uid= */ 0, /* initialPid= */ 0, notification, UserHandle.CURRENT,
+                /* overrideGroupKey= */ null, /* postTime= */ 0));
+        mHandler.sendMessage(mHandler.obtainMessage(
+                CarNotificationListener.NOTIFY_NOTIFICATION_POSTED, alertEntry));
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    private static List<NotificationGroup> createGroups() {
+        return Collections.singletonList(new NotificationGroup());
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.notification;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.os.UserHandle;
+import android.service.notification.StatusBarNotification;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class PackageResourceCacheTest {
+
+    private static final String PKG = "com.package.PACKAGE_RESOURCE_CACHE_TEST";
+    private static final String LABEL = "LABEL";
+
+    @Mock
+    private StatusBarNotification mStatusBarNotification;
+    @Mock
+    private Context mPackageContext;
+    @Mock
+    private PackageManager mPackageManager;
+
+    private Context mContext;
+    private PackageResourceCache mPackageResourceCache;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        mContext = ApplicationProvider.getApplicationContext();
+        when(mStatusBarNotification.getPackageName()).thenReturn(PKG);
+        when(mStatusBarNotification.getUser()).thenReturn(UserHandle.of(0));
+        when(mStatusBarNotification.getPackageContext(any())).thenReturn(mPackageContext);
+        when(mPackageContext.getPackageManager()).thenReturn(mPackageManager);
+        when(mPackageContext.getApplicationInfo()).thenReturn(new ApplicationInfo());
+        when(mPackageManager.getApplicationLabel(any())).thenReturn(LABEL);
+        when(mPackageManager.checkPermission(anyString(), anyString()))
+                .thenReturn(PackageManager.PERMISSION_GRANTED);
+
+        PackageResourceCache.resetInstance();
+        mPackageResourceCache = PackageResourceCache.getInstance(mContext);
+    }
+
+    @Test
+    public void getApplicationLabel_calledTwice_loadsLabelOnce() {
+        assertThat(mPackageResourceCache.getApplicationLabel(mStatusBarNotification))
+                .isEqualTo(LABEL);
+        assertThat(mPackageResourceCache.getApplicationLabel(mStatusBarNotification))
+                .isEqualTo(LABEL);
+
+        verify(mPackageManager, times(1)).getApplicationLabel(any());
+        verify(mStatusBarNotification, times(1)).getPackageContext(any());
+    }
+
+    @Test
+    public void canSubstituteAppName_calledTwice_checksPermissionOnce() {
+        assertThat(mPackageResourceCache.canSubstituteAppName(mStatusBarNotification)).isTrue();
+        assertThat(mPackageResourceCache.canSubstituteAppName(mStatusBarNotification)).isTrue();
+
+        verify(mPackageManager, times(1)).checkPermission(anyString(), anyString());
+    }
+
+    @Test
+    public void onPackageReplaced_reloadsLabel() {
+        mPackageResourceCache.getApplicationLabel(mStatusBarNotification);
+
+        mPackageResourceCache.mInvalidationReceiver.onReceive(mContext,
+                new Intent(Intent.ACTION_PACKAGE_REPLACED, Uri.fromParts("package", PKG, null)));
+        mPackageResourceCache.getApplicationLabel(mStatusBarNotification);
+
+        verify(mPackageManager, times(2)).getApplicationLabel(any());
+    }
+
+    @Test
+    public void onOtherPackageReplaced_keepsLabel() {
+        mPackageResourceCache.getApplicationLabel(mStatusBarNotification);
+
+        mPackageResourceCache.mInvalidationReceiver.onReceive(mContext,
+                new Intent(Intent.ACTION_PACKAGE_REPLACED,
+                        Uri.fromParts("package", PKG + ".other", null)));
+        mPackageResourceCache.getApplicationLabel(mStatusBarNotification);
+
+        verify(mPackageManager, times(1)).getApplicationLabel(any());
+    }
+
+    @Test
+    public void onLocaleChanged_reloadsLabel() {
+        mPackageResourceCache.getApplicationLabel(mStatusBarNotification);
+
+        mPackageResourceCache.mInvalidationReceiver.onReceive(mContext,
+                new Intent(Intent.ACTION_LOCALE_CHANGED));
+        mPackageResourceCache.getApplicationLabel(mStatusBarNotification);
+
+        verify(mPackageManager, times(2)).getApplicationLabel(any());
+    }
+}
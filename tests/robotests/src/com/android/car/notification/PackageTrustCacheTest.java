@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.notification;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.net.Uri;
+import android.os.Looper;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.android.car.notification.testutils.ShadowApplicationPackageManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = {ShadowApplicationPackageManager.class})
+public class PackageTrustCacheTest {
+
+    private static final String PKG = "com.package.PACKAGE_TRUST_CACHE_TEST";
+
+    private Context mContext;
+    private PackageTrustCache mPackageTrustCache;
+
+    @Before
+    public void setup() {
+        mContext = ApplicationProvider.getApplicationContext();
+        PackageTrustCache.resetInstance();
+        mPackageTrustCache = PackageTrustCache.getInstance(mContext);
+    }
+
+    @After
+    public void tearDown() {
+        ShadowApplicationPackageManager.reset();
+    }
+
+    @Test
+    public void getTrustFlags_returnsFlagsOfApplicationInfo() {
+        setApplicationInfo(/* signedWithPlatformKey= */ true, /* isSystemApp= */ true,
+                /* isPrivilegedApp= */ false);
+
+        assertThat(mPackageTrustCache.isSignedWithPlatformKey(PKG)).isTrue();
+        assertThat(mPackageTrustCache.isSystemApp(PKG)).isTrue();
+        assertThat(mPackageTrustCache.isPrivilegedApp(PKG)).isFalse();
+    }
+
+    @Test
+    public void getTrustFlags_packageNotFound_returnsNoFlags() {
+        ShadowApplicationPackageManager.setPackageInfo(null);
+
+        assertThat(mPackageTrustCache.getTrustFlags(PKG)).isEqualTo(0);
+    }
+
+    @Test
+    public void getTrustFlags_calledTwice_loadsPackageOnce() {
+        setApplicationInfo(/* signedWithPlatformKey= */ true, /* isSystemApp= */ false,
+                /* isPrivilegedApp= */ false);
+
+        mPackageTrustCache.isSignedWithPlatformKey(PKG);
+        setApplicationInfo(/* signedWithPlatformKey= */ false, /* isSystemApp= */ false,
+                /* isPrivilegedApp= */ false);
+
+        assertThat(mPackageTrustCache.isSignedWithPlatformKey(PKG)).isTrue();
+        assertThat(mPackageTrustCache.getMissCount()).isEqualTo(1);
+        assertThat(mPackageTrustCache.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void onPackageReplaced_reloadsPackage() {
+        setApplicationInfo(/* signedWithPlatformKey= */ true, /* isSystemApp= */ false,
+                /* isPrivilegedApp= */ false);
+        mPackageTrustCache.isSignedWithPlatformKey(PKG);
+        setApplicationInfo(/* signedWithPlatformKey= */ false, /* isSystemApp= */ false,
+                /* isPrivilegedApp= */ false);
+
+        mPackageTrustCache.mPackageChangeReceiver.onReceive(mContext,
+                new Intent(Intent.ACTION_PACKAGE_REPLACED, Uri.fromParts("package", PKG, null)));
+
+        assertThat(mPackageTrustCache.isSignedWithPlatformKey(PKG)).isFalse();
+        assertThat(mPackageTrustCache.getMissCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void getTrustFlags_invalidatedWhileLoading_doesNotCacheFlags() {
+        setApplicationInfo(/* signedWithPlatformKey= */ true, /* isSystemApp= */ false,
+                /* isPrivilegedApp= */ false);
+        ShadowApplicationPackageManager.setOnGetPackageInfo(
+                () -> mPackageTrustCache.invalidatePackage(PKG));
+
+        mPackageTrustCache.isSignedWithPlatformKey(PKG);
+        ShadowApplicationPackageManager.setOnGetPackageInfo(null);
+        setApplicationInfo(/* signedWithPlatformKey= */ false, /* isSystemApp= */ false,
+                /* isPrivilegedApp= */ false);
+
+        assertThat(mPackageTrustCache.isSignedWithPlatformKey(PKG)).isFalse();
+        assertThat(mPackageTrustCache.getMissCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void onUserSwitched_reloadsPackage() {
+        setApplicationInfo(/* signedWithPlatformKey= */ false, /* isSystemApp= */ true,
+                /* isPrivilegedApp= */ false);
+        mPackageTrustCache.isSystemApp(PKG);
+        setApplicationInfo(/* signedWithPlatformKey= */ false, /* isSystemApp= */ false,
+                /* isPrivilegedApp= */ false);
+
+        mPackageTrustCache.mPackageChangeReceiver.onReceive(mContext,
+                new Intent(Intent.ACTION_USER_SWITCHED));
+
+        assertThat(mPackageTrustCache.isSystemApp(PKG)).isFalse();
+    }
+
+    @Test
+    public void userSwitchedBroadcast_reloadsPackage() {
+        setApplicationInfo(/* signedWithPlatformKey= */ false, /* isSystemApp= */ true,
+                /* isPrivilegedApp= */ false);
+        mPackageTrustCache.isSystemApp(PKG);
+        setApplicationInfo(/* signedWithPlatformKey= */ false, /* isSystemApp= */ false,
+                /* isPrivilegedApp= */ false);
+
+        mContext.sendBroadcast(new Intent(Intent.ACTION_USER_SWITCHED));
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertThat(mPackageTrustCache.isSystemApp(PKG)).isFalse();
+    }
+
+    private void setApplicationInfo(boolean signedWithPlatformKey, boolean isSystemApp,
+            boolean isPrivilegedApp) {
+        ApplicationInfo applicationInfo = new ApplicationInfo();
+
+        if (signedWithPlatformKey) {
+            applicationInfo.privateFlags = applicationInfo.privateFlags
+                    | ApplicationInfo.PRIVATE_FLAG_SIGNED_WITH_PLATFORM_KEY;
+        }
+
+        if (isSystemApp) {
+            applicationInfo.flags = applicationInfo.flags
+                    | ApplicationInfo.FLAG_SYSTEM;
+        }
+
+        if (isPrivilegedApp) {
+            applicationInfo.privateFlags = applicationInfo.privateFlags
+                    | ApplicationInfo.PRIVATE_FLAG_PRIVILEGED;
+        }
+
+        PackageInfo packageInfo = new PackageInfo();
+        packageInfo.applicationInfo = applicationInfo;
+        ShadowApplicationPackageManager.setPackageInfo(packageInfo);
+    }
+}
@@ -22,11 +22,13 @@ import static android.service.notification.NotificationListenerService.Ranking.U
 
 import static com.google.common.truth.Truth.assertThat;
 
+import static org.junit.Assume.assumeTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertThrows;
 
 import android.app.Notification;
 import android.app.NotificationChannel;
@@ -44,6 +46,7 @@ import android.service.notification.StatusBarNotification;
 import android.telephony.TelephonyManager;
 
 import com.android.car.notification.testutils.ShadowApplicationPackageManager;
+import com.sun.management.ThreadMXBean;
 
 import org.junit.After;
 import org.junit.Before;
@@ -57,8 +60,10 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
 
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -85,6 +90,8 @@ public class PreprocessingManagerTest {
     private static final String GROUP_KEY_B = "GROUP_KEY_B";
     private static final String GROUP_KEY_C = "GROUP_KEY_C";
     private static final int MAX_STRING_LENGTH = 10;
+    private static final long GROUP_ALLOCATION_BUDGET_BYTES = 1024;
+    private static final long NOTIFICATION_ALLOCATION_BUDGET_BYTES = 64;
 
     private PreprocessingManager mPreprocessingManager;
     @Mock
@@ -114,6 +121,8 @@ public class PreprocessingManagerTest {
     @Mock
     private PreprocessingManager.CallStateListener mCallStateListener2;
     @Mock
+    private PreprocessingManager.MaxStringLengthListener mMaxStringLengthListener;
+    @Mock
     private Notification mMediaNotification;
     @Mock
     private Notification mSummaryNotification;
@@ -344,6 +353,62 @@ public class PreprocessingManagerTest {
         }
     }
 
+    @Test
+    public void onCopyOptimizedForDriving_longText_returnsTrimmedCopy() {
+        setMaxStringLength(MAX_STRING_LENGTH);
+        Notification notification
+                = generateNotification(/* isForeground= */ true, /* isNavigation= */ true);
+        notification.extras.putString(Notification.EXTRA_TITLE, generateStringOfLength(100));
+        when(mStatusBarNotification4.getNotification()).thenReturn(notification);
+        AlertEntry alertEntry = new AlertEntry(mStatusBarNotification4);
+
+        AlertEntry optimized = mPreprocessingManager.copyOptimizedForDriving(alertEntry);
+
+        assertThat(optimized).isNotSameAs(alertEntry);
+        assertThat(optimized.getKey()).isEqualTo(alertEntry.getKey());
+        assertThat(optimized.getNotification().extras
+                .getCharSequence(Notification.EXTRA_TITLE).length())
+                .isAtMost(MAX_STRING_LENGTH);
+        assertThat(notification.extras.getCharSequence(Notification.EXTRA_TITLE).length())
+                .isEqualTo(100);
+    }
+
+    @Test
+    public void onCopyOptimizedForDriving_shortText_returnsSameEntry() {
+        setMaxStringLength(MAX_STRING_LENGTH);
+        Notification notification
+                = generateNotification(/* isForeground= */ true, /* isNavigation= */ true);
+        notification.extras.putString(Notification.EXTRA_TITLE,
+                generateStringOfLength(MAX_STRING_LENGTH));
+        when(mStatusBarNotification4.getNotification()).thenReturn(notification);
+        AlertEntry alertEntry = new AlertEntry(mStatusBarNotification4);
+
+        assertThat(mPreprocessingManager.copyOptimizedForDriving(alertEntry))
+                .isSameAs(alertEntry);
+    }
+
+    @Test
+    public void onSetCarUxRestrictionManagerWrapper_maxStringLengthChanged_notifiesListener() {
+        setMaxStringLength(MAX_STRING_LENGTH);
+        mPreprocessingManager.addMaxStringLengthListener(mMaxStringLengthListener);
+
+        setMaxStringLength(MAX_STRING_LENGTH + 1);
+        mPreprocessingManager.removeMaxStringLengthListener(mMaxStringLengthListener);
+
+        verify(mMaxStringLengthListener).onMaxStringLengthChanged();
+    }
+
+    @Test
+    public void onSetCarUxRestrictionManagerWrapper_maxStringLengthUnchanged_doesNotNotify() {
+        setMaxStringLength(MAX_STRING_LENGTH);
+        mPreprocessingManager.addMaxStringLengthListener(mMaxStringLengthListener);
+
+        setMaxStringLength(MAX_STRING_LENGTH);
+        mPreprocessingManager.removeMaxStringLengthListener(mMaxStringLengthListener);
+
+        verify(mMaxStringLengthListener, never()).onMaxStringLengthChanged();
+    }
+
     @Test
     public void onGroup_groupsNotificationsByGroupKey() {
         List<NotificationGroup> groupResult = mPreprocessingManager.group(mAlertEntries);
@@ -369,6 +434,89 @@ public class PreprocessingManagerTest {
         assertThat(groupResult.size() == 0).isTrue();
     }
 
+    @Test
+    public void onGroup_keepsGroupsInOrderOfFirstAppearance() {
+        List<AlertEntry> list = Arrays.asList(
+                generateGroupAlertEntry(/* id= */ 1, GROUP_KEY_B, /* isSummary= */ false),
+                generateGroupAlertEntry(/* id= */ 2, GROUP_KEY_A, /* isSummary= */ true),
+                generateGroupAlertEntry(/* id= */ 3, GROUP_KEY_A, /* isSummary= */ false),
+                generateGroupAlertEntry(/* id= */ 4, GROUP_KEY_A, /* isSummary= */ false));
+
+        List<NotificationGroup> groupResult = mPreprocessingManager.group(list);
+
+        assertThat(groupResult).hasSize(2);
+        assertThat(groupResult.get(0).getSingleNotification().getKey())
+                .isEqualTo(list.get(0).getKey());
+        assertThat(groupResult.get(1).getGroupSummaryNotification().getKey())
+                .isEqualTo(list.get(1).getKey());
+        assertThat(groupResult.get(1).getChildCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void onGroup_callNotificationsInSameGroup_areNotGroupedTogether() {
+        List<AlertEntry> list = Arrays.asList(
+                generateGroupAlertEntry(/* id= */ 1, GROUP_KEY_A, /* isSummary= */ false),
+                generateGroupAlertEntry(/* id= */ 2, GROUP_KEY_A, /* isSummary= */ false));
+        list.forEach(alertEntry ->
+                alertEntry.getNotification().category = Notification.CATEGORY_CALL);
+
+        List<NotificationGroup> groupResult = mPreprocessingManager.group(list);
+
+        assertThat(groupResult).hasSize(2);
+        assertThat(groupResult.get(0).getSingleNotification()).isEqualTo(list.get(0));
+        assertThat(groupResult.get(1).getSingleNotification()).isEqualTo(list.get(1));
+    }
+
+    @Test
+    public void onGroup_callNotification_isGroupedTheSameWayEveryTime() {
+        AlertEntry call = generateGroupAlertEntry(/* id= */ 1, GROUP_KEY_A,
+                /* isSummary= */ false);
+        call.getNotification().category = Notification.CATEGORY_CALL;
+        List<AlertEntry> list = Arrays.asList(call,
+                generateGroupAlertEntry(/* id= */ 2, GROUP_KEY_B, /* isSummary= */ false));
+
+        List<String> first = describe(mPreprocessingManager.group(list));
+        List<String> second = describe(mPreprocessingManager.group(list));
+
+        assertThat(second).isEqualTo(first);
+    }
+
+    @Test
+    public void onGroup_allocatesPerGroupNotPerPass() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof ThreadMXBean);
+        ThreadMXBean allocationBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(allocationBean.isThreadAllocatedMemorySupported()
+                && allocationBean.isThreadAllocatedMemoryEnabled());
+        int groupCount = 10;
+        int childCount = 100;
+        List<AlertEntry> list = new ArrayList<>();
+        for (int i = 0; i < groupCount; i++) {
+            String groupKey = "GROUP_KEY_" + i;
+            list.add(generateGroupAlertEntry(/* id= */ i * (childCount + 1), groupKey,
+                    /* isSummary= */ true));
+            for (int j = 1; j <= childCount; j++) {
+                list.add(generateGroupAlertEntry(/* id= */ i * (childCount + 1) + j, groupKey,
+                        /* isSummary= */ false));
+            }
+        }
+        // Warm up so that the scratch index and buffer reach their final capacity.
+        for (int i = 0; i < 5; i++) {
+            mPreprocessingManager.group(list);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = allocationBean.getThreadAllocatedBytes(threadId);
+        List<NotificationGroup> groupResult = mPreprocessingManager.group(list);
+        long allocated = allocationBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertThat(groupResult).hasSize(groupCount);
+        // Each group costs a NotificationGroup and its child list; each notification costs no
+        // more than its slot in the child list of its group, including the list growth.
+        long budget = groupCount * GROUP_ALLOCATION_BUDGET_BYTES
+                + list.size() * NOTIFICATION_ALLOCATION_BUDGET_BYTES;
+        assertThat(allocated).isAtMost(budget);
+    }
+
     @Test
     public void addCallStateListener_preCall_triggerChanges() {
         InOrder listenerInOrder = Mockito.inOrder(mCallStateListener1);
@@ -492,6 +640,33 @@ public class PreprocessingManagerTest {
         });
     }
 
+    @Test
+    public void onGroup_childNotificationHasTimeStamp_doesNotModifyGroupSummary() {
+        AlertEntry summary =
+                generateGroupAlertEntry(/* id= */ 1, GROUP_KEY_A, /* isSummary= */ true);
+        AlertEntry child1 =
+                generateGroupAlertEntry(/* id= */ 2, GROUP_KEY_A, /* isSummary= */ false);
+        AlertEntry child2 =
+                generateGroupAlertEntry(/* id= */ 3, GROUP_KEY_A, /* isSummary= */ false);
+        summary.getNotification().when = 1;
+        summary.getNotification().extras.putBoolean(Notification.EXTRA_SHOW_WHEN, false);
+        child1.getNotification().when = 2;
+        child1.getNotification().extras.putBoolean(Notification.EXTRA_SHOW_WHEN, true);
+        child2.getNotification().when = 3;
+        child2.getNotification().extras.putBoolean(Notification.EXTRA_SHOW_WHEN, true);
+
+        List<NotificationGroup> groupResult =
+                mPreprocessingManager.group(Arrays.asList(summary, child1, child2));
+
+        AlertEntry groupSummary = groupResult.get(0).getGroupSummaryNotification();
+        assertThat(groupSummary.getKey()).isEqualTo(summary.getKey());
+        assertThat(groupSummary.getNotification().when).isEqualTo(3);
+        assertThat(groupSummary.getNotification().showsTime()).isTrue();
+        assertThat(summary.getNotification().when).isEqualTo(1);
+        assertThat(summary.getNotification().extras.getBoolean(Notification.EXTRA_SHOW_WHEN))
+                .isFalse();
+    }
+
     @Test
     public void onRank_ranksNotificationGroups() {
         List<NotificationGroup> groupResult = mPreprocessingManager.group(mAlertEntries);
@@ -535,6 +710,26 @@ public class PreprocessingManagerTest {
         }
     }
 
+    @Test
+    public void onRank_sameRank_ranksNotificationGroupsByGroupKey() {
+        AlertEntry groupA = generateGroupAlertEntry(/* id= */ 1, GROUP_KEY_A,
+                /* isSummary= */ false);
+        AlertEntry groupB = generateGroupAlertEntry(/* id= */ 2, GROUP_KEY_B,
+                /* isSummary= */ false);
+        // Neither notification is in the ranking map, so both share the same rank.
+        NotificationListenerService.RankingMap rankingMap = generateRankingMap(new ArrayList<>());
+
+        List<NotificationGroup> rankResult = mPreprocessingManager.rank(
+                mPreprocessingManager.group(Arrays.asList(groupB, groupA)), rankingMap);
+        List<NotificationGroup> reversedRankResult = mPreprocessingManager.rank(
+                mPreprocessingManager.group(Arrays.asList(groupA, groupB)), rankingMap);
+
+        assertThat(rankResult).hasSize(2);
+        assertThat(rankResult.get(0).getSingleNotification()).isSameAs(groupA);
+        assertThat(rankResult.get(1).getSingleNotification()).isSameAs(groupB);
+        assertThat(describe(reversedRankResult)).isEqualTo(describe(rankResult));
+    }
+
     @Test
     public void onAdditionalGroup_returnsTheSameGroupsAsStandardGroup() {
         Notification additionalNotification =
@@ -584,6 +779,17 @@ public class PreprocessingManagerTest {
         }
     }
 
+    @Test
+    public void onInit_showLessImportantNotifications_returnsSameAsProcess() {
+        List<NotificationGroup> expected = mPreprocessingManager.process(
+                /* showLessImportantNotifications= */ true, mAlertEntriesMap, mRankingMap);
+
+        List<NotificationGroup> actual = mPreprocessingManager.init(mAlertEntriesMap, mRankingMap,
+                /* showLessImportantNotifications= */ true);
+
+        assertThat(describe(actual)).isEqualTo(describe(expected));
+    }
+
     @Test
     public void onUpdateNotifications_notificationRemoved_removesNotification() {
         mPreprocessingManager.init(mAlertEntriesMap, mRankingMap);
@@ -653,6 +859,140 @@ public class PreprocessingManagerTest {
         assertThat(afterSize).isEqualTo(beforeSize + 1);
     }
 
+    @Test
+    public void onUpdateNotification_notificationPosted_isUpdateOfGroupChild_sameAsProcess() {
+        Map<String, AlertEntry> alertEntries = generateGroupedAlertEntries();
+        NotificationListenerService.RankingMap rankingMap =
+                generateRankingMap(new ArrayList<>(alertEntries.values()));
+        mPreprocessingManager.init(alertEntries, rankingMap);
+        List<NotificationGroup> oldList = mPreprocessingManager.updateNotifications(
+                /* showLessImportantNotifications= */ false,
+                generateGroupAlertEntry(/* id= */ 2, GROUP_KEY_A, /* isSummary= */ false),
+                CarNotificationListener.NOTIFY_NOTIFICATION_POSTED,
+                rankingMap);
+        List<String> oldSnapshot = describe(oldList);
+
+        AlertEntry updatedChild =
+                generateGroupAlertEntry(/* id= */ 3, GROUP_KEY_A, /* isSummary= */ false);
+        updatedChild.getNotification().extras.putString(Notification.EXTRA_TITLE, "NEW_TITLE");
+        List<NotificationGroup> newList = mPreprocessingManager.updateNotifications(
+                /* showLessImportantNotifications= */ false,
+                updatedChild,
+                CarNotificationListener.NOTIFY_NOTIFICATION_POSTED,
+                rankingMap);
+
+        assertThat(describe(newList)).isEqualTo(describe(mPreprocessingManager.process(
+                /* showLessImportantNotifications= */ false, getOldNotifications(),
+                rankingMap)));
+        assertThat(describe(oldList)).isEqualTo(oldSnapshot);
+        assertThat(findNotification(newList, updatedChild.getKey())).isSameAs(updatedChild);
+        assertThat(findNotification(oldList, updatedChild.getKey())).isNotSameAs(updatedChild);
+    }
+
+    @Test
+    public void onUpdateNotification_readOnlyMap_isCopiedInsteadOfUpdated() {
+        Map<String, AlertEntry> alertEntries =
+                Collections.unmodifiableMap(generateGroupedAlertEntries());
+        NotificationListenerService.RankingMap rankingMap =
+                generateRankingMap(new ArrayList<>(alertEntries.values()));
+        mPreprocessingManager.init(alertEntries, rankingMap);
+        AlertEntry removedChild =
+                generateGroupAlertEntry(/* id= */ 3, GROUP_KEY_A, /* isSummary= */ false);
+
+        mPreprocessingManager.updateNotifications(
+                /* showLessImportantNotifications= */ false,
+                removedChild,
+                CarNotificationListener.NOTIFY_NOTIFICATION_REMOVED,
+                rankingMap);
+
+        assertThat(alertEntries).containsKey(removedChild.getKey());
+        assertThat(getOldNotifications()).doesNotContainKey(removedChild.getKey());
+    }
+
+    @Test
+    public void onUpdateNotifications_groupChildRemoved_sameAsProcess() {
+        Map<String, AlertEntry> alertEntries = generateGroupedAlertEntries();
+        NotificationListenerService.RankingMap rankingMap =
+                generateRankingMap(new ArrayList<>(alertEntries.values()));
+        mPreprocessingManager.init(alertEntries, rankingMap);
+        AlertEntry removedChild =
+                generateGroupAlertEntry(/* id= */ 3, GROUP_KEY_A, /* isSummary= */ false);
+
+        List<NotificationGroup> newList = mPreprocessingManager.updateNotifications(
+                /* showLessImportantNotifications= */ false,
+                removedChild,
+                CarNotificationListener.NOTIFY_NOTIFICATION_REMOVED,
+                rankingMap);
+
+        assertThat(findNotification(newList, removedChild.getKey())).isNull();
+        assertThat(describe(newList)).isEqualTo(describe(mPreprocessingManager.process(
+                /* showLessImportantNotifications= */ false, getOldNotifications(),
+                rankingMap)));
+    }
+
+    @Test
+    public void onUpdateNotifications_groupSummaryRemoved_sameAsProcess() {
+        Map<String, AlertEntry> alertEntries = generateGroupedAlertEntries();
+        NotificationListenerService.RankingMap rankingMap =
+                generateRankingMap(new ArrayList<>(alertEntries.values()));
+        mPreprocessingManager.init(alertEntries, rankingMap);
+
+        List<NotificationGroup> newList = mPreprocessingManager.updateNotifications(
+                /* showLessImportantNotifications= */ false,
+                generateGroupAlertEntry(/* id= */ 1, GROUP_KEY_A, /* isSummary= */ true),
+                CarNotificationListener.NOTIFY_NOTIFICATION_REMOVED,
+                rankingMap);
+
+        assertThat(describe(newList)).isEqualTo(describe(mPreprocessingManager.process(
+                /* showLessImportantNotifications= */ false, getOldNotifications(),
+                rankingMap)));
+    }
+
+    @Test
+    public void onUpdateNotifications_notificationPosted_isNew_keepsOldListAndSharesGroups() {
+        Map<String, AlertEntry> alertEntries = generateGroupedAlertEntries();
+        AlertEntry newNotification =
+                generateGroupAlertEntry(/* id= */ 6, GROUP_KEY_C, /* isSummary= */ false);
+        List<AlertEntry> rankedEntries = new ArrayList<>(alertEntries.values());
+        rankedEntries.add(newNotification);
+        NotificationListenerService.RankingMap rankingMap = generateRankingMap(rankedEntries);
+        mPreprocessingManager.init(alertEntries, rankingMap);
+        List<NotificationGroup> oldList = mPreprocessingManager.updateNotifications(
+                /* showLessImportantNotifications= */ false,
+                generateGroupAlertEntry(/* id= */ 2, GROUP_KEY_A, /* isSummary= */ false),
+                CarNotificationListener.NOTIFY_NOTIFICATION_POSTED,
+                rankingMap);
+        List<String> oldSnapshot = describe(oldList);
+
+        List<NotificationGroup> newList = mPreprocessingManager.updateNotifications(
+                /* showLessImportantNotifications= */ false,
+                newNotification,
+                CarNotificationListener.NOTIFY_NOTIFICATION_POSTED,
+                rankingMap);
+
+        assertThat(describe(oldList)).isEqualTo(oldSnapshot);
+        assertThat(newList).hasSize(oldList.size() + 1);
+        for (NotificationGroup group : oldList) {
+            assertThat(newList.contains(group)).isTrue();
+        }
+    }
+
+    @Test
+    public void process_returnsReadOnlyListOfFrozenGroups() {
+        Map<String, AlertEntry> alertEntries = generateGroupedAlertEntries();
+        NotificationListenerService.RankingMap rankingMap =
+                generateRankingMap(new ArrayList<>(alertEntries.values()));
+
+        List<NotificationGroup> result = mPreprocessingManager.process(
+                /* showLessImportantNotifications= */ false, alertEntries, rankingMap);
+
+        assertThat(result).isNotEmpty();
+        for (NotificationGroup group : result) {
+            assertThat(group.isFrozen()).isTrue();
+        }
+        assertThrows(UnsupportedOperationException.class, () -> result.remove(0));
+    }
+
     /**
      * Wraps StatusBarNotifications with AlertEntries and generates AlertEntriesMap and
      * RankingsMap.
@@ -681,6 +1021,62 @@ public class PreprocessingManagerTest {
         mRankingMap = generateRankingMap(mAlertEntries);
     }
 
+    /**
+     * Generates a group with a summary and three child notifications, and a standalone
+     * notification.
+     */
+    private Map<String, AlertEntry> generateGroupedAlertEntries() {
+        Map<String, AlertEntry> alertEntries = new HashMap<>();
+        List<AlertEntry> list = Arrays.asList(
+                generateGroupAlertEntry(/* id= */ 1, GROUP_KEY_A, /* isSummary= */ true),
+                generateGroupAlertEntry(/* id= */ 2, GROUP_KEY_A, /* isSummary= */ false),
+                generateGroupAlertEntry(/* id= */ 3, GROUP_KEY_A, /* isSummary= */ false),
+                generateGroupAlertEntry(/* id= */ 4, GROUP_KEY_A, /* isSummary= */ false),
+                generateGroupAlertEntry(/* id= */ 5, GROUP_KEY_B, /* isSummary= */ false));
+        list.forEach(alertEntry -> alertEntries.put(alertEntry.getKey(), alertEntry));
+        return alertEntries;
+    }
+
+    private AlertEntry generateGroupAlertEntry(int id, String group, boolean isSummary) {
+        Notification notification = new Notification.Builder(mContext, CHANNEL_ID)
+                .setContentTitle(CONTENT_TITLE)
+                .setSmallIcon(android.R.drawable.sym_def_app_icon)
+                .setGroup(group)
+                .setGroupSummary(isSummary)
+                .build();
+        StatusBarNotification statusBarNotification = new StatusBarNotification(
+                PKG, OP_PKG, id, TAG, UID, INITIAL_PID, notification, USER_HANDLE,
+                /* overrideGroupKey= */ null, POST_TIME);
+        return new AlertEntry(statusBarNotification);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, AlertEntry> getOldNotifications() {
+        return mPreprocessingManager.getOldNotifications();
+    }
+
+    private List<String> describe(List<NotificationGroup> groups) {
+        return groups.stream()
+                .map(group -> group.getGroupKey() + ":"
+                        + (group.getGroupSummaryNotification() == null
+                        ? null : group.getGroupSummaryNotification().getKey()) + ":"
+                        + group.getChildNotifications().stream()
+                        .map(AlertEntry::getKey)
+                        .collect(Collectors.toList()))
+                .collect(Collectors.toList());
+    }
+
+    private AlertEntry findNotification(List<NotificationGroup> groups, String key) {
+        for (NotificationGroup group : groups) {
+            for (AlertEntry alertEntry : group.getChildNotifications()) {
+                if (alertEntry.getKey().equals(key)) {
+                    return alertEntry;
+                }
+            }
+        }
+        return null;
+    }
+
     private AlertEntry getEmptyAutoGeneratedGroupSummary() {
         Notification notification = new Notification.Builder(mContext, CHANNEL_ID)
                 .setContentTitle(CONTENT_TITLE)
@@ -714,6 +1110,13 @@ public class PreprocessingManagerTest {
         return notification;
     }
 
+    private void setMaxStringLength(int maxStringLength) {
+        when(mCarUxRestrictions.getMaxRestrictedStringLength()).thenReturn(maxStringLength);
+        when(mCarUxRestrictionManagerWrapper.getCurrentCarUxRestrictions())
+                .thenReturn(mCarUxRestrictions);
+        mPreprocessingManager.setCarUxRestrictionManagerWrapper(mCarUxRestrictionManagerWrapper);
+    }
+
     private String generateStringOfLength(int length) {
         String string = "";
         for (int i = 0; i < length; i++) {
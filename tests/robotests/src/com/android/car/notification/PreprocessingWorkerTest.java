@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.notification;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.robolectric.Shadows.shadowOf;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class PreprocessingWorkerTest {
+
+    private final List<Runnable> mPendingTasks = new ArrayList<>();
+    private final List<List<NotificationGroup>> mPublished = new ArrayList<>();
+    private final List<Boolean> mIsReset = new ArrayList<>();
+    private final List<String> mRun = new ArrayList<>();
+    private PreprocessingWorker mWorker;
+
+    @Before
+    public void setup() {
+        mWorker = new PreprocessingWorker(mPendingTasks::add,
+                new Handler(Looper.getMainLooper()), (notifications, isReset) -> {
+                    mPublished.add(notifications);
+                    mIsReset.add(isReset);
+                });
+    }
+
+    @Test
+    public void update_publishesResult() {
+        List<NotificationGroup> result = createResult();
+        mWorker.update(() -> result);
+
+        assertThat(mWorker.isPending()).isTrue();
+        runPendingTasks();
+
+        assertThat(mPublished).containsExactly(result);
+        assertThat(mIsReset).containsExactly(false);
+        assertThat(mWorker.isPending()).isFalse();
+    }
+
+    @Test
+    public void update_severalTasks_runsAllButPublishesLatestOnly() {
+        List<NotificationGroup> first = createResult();
+        List<NotificationGroup> second = createResult();
+        mWorker.update(() -> run("first", first));
+        mWorker.update(() -> run("second", second));
+
+        runPendingTasks();
+
+        assertThat(mRun).containsExactly("first", "second").inOrder();
+        assertThat(mPublished).containsExactly(second);
+    }
+
+    @Test
+    public void update_nothingChanged_publishesPreviousResult() {
+        List<NotificationGroup> result = createResult();
+        mWorker.update(() -> result);
+        runPendingTasks();
+
+        mWorker.update(() -> null);
+        runPendingTasks();
+
+        assertThat(mPublished).containsExactly(result, result).inOrder();
+    }
+
+    @Test
+    public void update_nothingChangedAndNoResultYet_publishesNothing() {
+        mWorker.update(() -> null);
+
+        runPendingTasks();
+
+        assertThat(mPublished).isEmpty();
+        assertThat(mWorker.isPending()).isFalse();
+    }
+
+    @Test
+    public void reset_skipsEarlierTasksThatHaveNotStarted() {
+        List<NotificationGroup> result = createResult();
+        mWorker.update(() -> run("update", createResult()));
+        mWorker.reset(() -> run("first reset", createResult()));
+        mWorker.reset(() -> run("second reset", result));
+
+        runPendingTasks();
+
+        assertThat(mRun).containsExactly("second reset");
+        assertThat(mPublished).containsExactly(result);
+        assertThat(mIsReset).containsExactly(true);
+    }
+
+    @Test
+    public void reset_supersededByUpdate_isStillReported() {
+        List<NotificationGroup> result = createResult();
+        mWorker.reset(() -> createResult());
+        mWorker.update(() -> result);
+
+        runPendingTasks();
+
+        assertThat(mPublished).containsExactly(result);
+        assertThat(mIsReset).containsExactly(true);
+    }
+
+    private List<NotificationGroup> run(String name, List<NotificationGroup> result) {
+        mRun.add(name);
+        return result;
+    }
+
+    private static List<NotificationGroup> createResult() {
+        return Collections.unmodifiableList(
+                Collections.singletonList(new NotificationGroup()));
+    }
+
+    private void runPendingTasks() {
+        List<Runnable> tasks = new ArrayList<>(mPendingTasks);
+        mPendingTasks.clear();
+        for (Runnable task : tasks) {
+            task.run();
+        }
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+}
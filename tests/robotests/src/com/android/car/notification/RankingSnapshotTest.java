@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.notification;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.app.NotificationManager;
+import android.service.notification.NotificationListenerService;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class RankingSnapshotTest {
+
+    private static final String KEY = "KEY";
+    private static final String MISSING_KEY = "MISSING_KEY";
+    private static final String OVERRIDE_GROUP_KEY = "OVERRIDE_GROUP_KEY";
+    private static final int RANK = 7;
+
+    @Mock
+    private NotificationListenerService.RankingMap mRankingMap;
+    @Mock
+    private NotificationListenerService.Ranking mRanking;
+
+    private RankingSnapshot mRankingSnapshot;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(mRankingMap.getRanking(anyString(), any())).thenReturn(true);
+        when(mRankingMap.getRanking(eq(MISSING_KEY), any())).thenReturn(false);
+        when(mRanking.getRank()).thenReturn(RANK);
+        when(mRanking.getImportance()).thenReturn(NotificationManager.IMPORTANCE_HIGH);
+        when(mRanking.getOverrideGroupKey()).thenReturn(OVERRIDE_GROUP_KEY);
+
+        mRankingSnapshot = new RankingSnapshot(mRankingMap, mRanking);
+    }
+
+    @Test
+    public void getters_returnValuesOfRanking() {
+        assertThat(mRankingSnapshot.hasRanking(KEY)).isTrue();
+        assertThat(mRankingSnapshot.getRank(KEY)).isEqualTo(RANK);
+        assertThat(mRankingSnapshot.getImportance(KEY))
+                .isEqualTo(NotificationManager.IMPORTANCE_HIGH);
+        assertThat(mRankingSnapshot.getOverrideGroupKey(KEY)).isEqualTo(OVERRIDE_GROUP_KEY);
+    }
+
+    @Test
+    public void getters_missingRanking_returnDefaultValues() {
+        assertThat(mRankingSnapshot.hasRanking(MISSING_KEY)).isFalse();
+        assertThat(mRankingSnapshot.getRank(MISSING_KEY)).isEqualTo(0);
+        assertThat(mRankingSnapshot.getImportance(MISSING_KEY)).isEqualTo(0);
+        assertThat(mRankingSnapshot.getOverrideGroupKey(MISSING_KEY)).isNull();
+    }
+
+    @Test
+    public void getters_calledRepeatedly_readsRankingMapOnce() {
+        for (int i = 0; i < 3; i++) {
+            mRankingSnapshot.getRank(KEY);
+            mRankingSnapshot.getImportance(KEY);
+            mRankingSnapshot.hasRanking(MISSING_KEY);
+        }
+
+        verify(mRankingMap, times(1)).getRanking(eq(KEY), any());
+        verify(mRankingMap, times(1)).getRanking(eq(MISSING_KEY), any());
+    }
+
+    @Test
+    public void getters_manyKeys_keepsValuesOfEachKey() {
+        for (int i = 0; i < 100; i++) {
+            when(mRanking.getRank()).thenReturn(i);
+            mRankingSnapshot.getRank(KEY + i);
+        }
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(mRankingSnapshot.getRank(KEY + i)).isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void isSnapshotOf_returnsTrueOnlyForSameInstance() {
+        assertThat(mRankingSnapshot.isSnapshotOf(mRankingMap)).isTrue();
+        assertThat(mRankingSnapshot.isSnapshotOf(
+                new NotificationListenerService.RankingMap(
+                        new NotificationListenerService.Ranking[0]))).isFalse();
+    }
+}
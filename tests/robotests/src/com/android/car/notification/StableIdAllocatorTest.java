@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.notification;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.app.Notification;
+import android.content.Context;
+import android.os.UserHandle;
+import android.service.notification.StatusBarNotification;
+
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+@RunWith(RobolectricTestRunner.class)
+public class StableIdAllocatorTest {
+
+    private static final String PKG = "com.package.STABLE_ID_ALLOCATOR_TEST";
+    private static final String GROUP_KEY = "GROUP_KEY";
+
+    private Context mContext;
+    private StableIdAllocator mStableIdAllocator;
+
+    @Before
+    public void setup() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mStableIdAllocator = new StableIdAllocator();
+    }
+
+    @Test
+    public void getId_sameKey_returnsSameId() {
+        NotificationGroup notificationGroup = createSingle(/* id= */ 1);
+
+        long id = mStableIdAllocator.getId(notificationGroup);
+
+        assertThat(id).isAtLeast(StableIdAllocator.FIRST_ID);
+        assertThat(mStableIdAllocator.getId(createSingle(/* id= */ 1))).isEqualTo(id);
+    }
+
+    @Test
+    public void getId_differentKeys_returnsDifferentIds() {
+        long first = mStableIdAllocator.getId(createSingle(/* id= */ 1));
+        long second = mStableIdAllocator.getId(createSingle(/* id= */ 2));
+
+        assertThat(second).isNotEqualTo(first);
+    }
+
+    @Test
+    public void getId_groupAndItsOnlyChildKey_returnsDifferentIds() {
+        NotificationGroup group = createGroup();
+        NotificationGroup single = new NotificationGroup(group.getChildNotifications().get(0));
+
+        assertThat(mStableIdAllocator.getId(group))
+                .isNotEqualTo(mStableIdAllocator.getId(single));
+    }
+
+    @Test
+    public void peekId_unknownKey_returnsNoId() {
+        assertThat(mStableIdAllocator.peekId(createSingle(/* id= */ 1)))
+                .isEqualTo(RecyclerView.NO_ID);
+        assertThat(mStableIdAllocator.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void update_forgetsRemovedKeys() {
+        NotificationGroup kept = createSingle(/* id= */ 1);
+        NotificationGroup removed = createSingle(/* id= */ 2);
+        mStableIdAllocator.update(Arrays.asList(kept, removed));
+        long keptId = mStableIdAllocator.peekId(kept);
+        long removedId = mStableIdAllocator.peekId(removed);
+
+        mStableIdAllocator.update(Collections.singletonList(kept));
+
+        assertThat(mStableIdAllocator.size()).isEqualTo(1);
+        assertThat(mStableIdAllocator.peekId(kept)).isEqualTo(keptId);
+        assertThat(mStableIdAllocator.peekId(removed)).isEqualTo(RecyclerView.NO_ID);
+        assertThat(mStableIdAllocator.getId(removed)).isGreaterThan(removedId);
+    }
+
+    private NotificationGroup createSingle(int id) {
+        return new NotificationGroup(createAlertEntry(id, /* groupKey= */ null,
+                /* isSummary= */ false));
+    }
+
+    private NotificationGroup createGroup() {
+        NotificationGroup notificationGroup = new NotificationGroup();
+        notificationGroup.setGroupSummaryNotification(
+                createAlertEntry(/* id= */ 1, GROUP_KEY, /* isSummary= */ true));
+        notificationGroup.addNotification(
+                createAlertEntry(/* id= */ 2, GROUP_KEY, /* isSummary= */ false));
+        notificationGroup.addNotification(
+                createAlertEntry(/* id= */ 3, GROUP_KEY, /* isSummary= */ false));
+        return notificationGroup;
+    }
+
+    private AlertEntry createAlertEntry(int id, String groupKey, boolean isSummary) {
+        Notification notification = new Notification.Builder(mContext, "CHANNEL_ID")
+                .setGroup(groupKey)
+                .setGroupSummary(isSummary)
+                .build();
+        return new AlertEntry(new StatusBarNotification(PKG, "OP_PKG", id, "TAG",
+                /* uid= */ 0, /* initialPid= */ 0, notification, UserHandle.CURRENT,
+                /* overrideGroupKey= */ null, /* postTime= */ 0));
+    }
+}
@@ -64,6 +64,10 @@ public class TestNotificationApplication extends NotificationApplication impleme
 
     @Override
     public void beforeTest(Method method) {
+        PackageTrustCache.resetInstance();
+        PackageResourceCache.resetInstance();
+        CardStyleResolver.resetInstance();
+        NotificationLatencyTracker.resetInstance();
     }
 
     @Override
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.notification.template;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Icon;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class NotificationIconLoaderTest {
+
+    private static final int VIEW_SIZE = 48;
+    private static final int USER_ID = 10;
+    private static final String ANDROID_PKG = "android";
+
+    private final List<Runnable> mPendingTasks = new ArrayList<>();
+    private Context mContext;
+    private NotificationIconLoader mIconLoader;
+    private ImageView mImageView;
+
+    @Before
+    public void setup() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mIconLoader = new NotificationIconLoader(mContext, mPendingTasks::add,
+                new Handler(Looper.getMainLooper()));
+        mImageView = new ImageView(mContext);
+        mImageView.setLayoutParams(new ViewGroup.LayoutParams(VIEW_SIZE, VIEW_SIZE));
+    }
+
+    @Test
+    public void load_decodesOffTheCallingThread() {
+        mIconLoader.load(createIcon(VIEW_SIZE), mImageView);
+
+        assertThat(mImageView.getDrawable()).isNull();
+        assertThat(mPendingTasks).hasSize(1);
+    }
+
+    @Test
+    public void load_largeIcon_downsamplesToViewSize() {
+        mIconLoader.load(createIcon(VIEW_SIZE * 4), mImageView);
+
+        runPendingTasks();
+
+        Bitmap bitmap = ((BitmapDrawable) mImageView.getDrawable()).getBitmap();
+        assertThat(bitmap.getWidth()).isEqualTo(VIEW_SIZE);
+        assertThat(bitmap.getHeight()).isEqualTo(VIEW_SIZE);
+    }
+
+    @Test
+    public void load_sameIconTwice_usesCachedBitmap() {
+        Icon icon = createIcon(VIEW_SIZE);
+        mIconLoader.load(icon, mImageView);
+        runPendingTasks();
+
+        ImageView otherView = new ImageView(mContext);
+        otherView.setLayoutParams(new ViewGroup.LayoutParams(VIEW_SIZE, VIEW_SIZE));
+        mIconLoader.load(icon, otherView);
+
+        assertThat(mPendingTasks).isEmpty();
+        assertThat(otherView.getDrawable()).isNotNull();
+    }
+
+    @Test
+    public void cancel_doesNotDeliverResult() {
+        mIconLoader.load(createIcon(VIEW_SIZE), mImageView);
+
+        mIconLoader.cancel(mImageView);
+        runPendingTasks();
+
+        assertThat(mImageView.getDrawable()).isNull();
+        assertThat(mIconLoader.getPendingRequestCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void load_twice_onlyDeliversLatestIcon() {
+        mIconLoader.load(createIcon(VIEW_SIZE / 2), mImageView);
+        mIconLoader.load(createIcon(VIEW_SIZE), mImageView);
+
+        runPendingTasks();
+
+        Bitmap bitmap = ((BitmapDrawable) mImageView.getDrawable()).getBitmap();
+        assertThat(bitmap.getWidth()).isEqualTo(VIEW_SIZE);
+    }
+
+    @Test
+    public void getCacheKey_differentSizes_returnsDifferentKeys() {
+        Icon icon = createIcon(VIEW_SIZE);
+
+        assertThat(NotificationIconLoader.getCacheKey(icon, USER_ID, VIEW_SIZE, VIEW_SIZE))
+                .isNotEqualTo(NotificationIconLoader.getCacheKey(icon, USER_ID, VIEW_SIZE / 2,
+                        VIEW_SIZE / 2));
+    }
+
+    @Test
+    public void getCacheKey_resourceIconOfDifferentUsers_returnsDifferentKeys() {
+        Icon icon = Icon.createWithResource(ANDROID_PKG, android.R.drawable.sym_def_app_icon);
+
+        assertThat(NotificationIconLoader.getCacheKey(icon, USER_ID, VIEW_SIZE, VIEW_SIZE))
+                .isNotEqualTo(NotificationIconLoader.getCacheKey(icon, USER_ID + 1, VIEW_SIZE,
+                        VIEW_SIZE));
+    }
+
+    @Test
+    public void getCacheKey_uriIcon_returnsNull() {
+        Icon icon = Icon.createWithContentUri("content://contacts/photo/1");
+
+        assertThat(NotificationIconLoader.getCacheKey(icon, USER_ID, VIEW_SIZE, VIEW_SIZE))
+                .isNull();
+    }
+
+    @Test
+    public void onPackageReplaced_decodesResourceIconAgain() {
+        Icon icon = Icon.createWithResource(ANDROID_PKG, android.R.drawable.sym_def_app_icon);
+        mIconLoader.load(icon, mImageView);
+        runPendingTasks();
+        assertThat(mImageView.getDrawable()).isNotNull();
+
+        mIconLoader.mPackageChangeReceiver.onReceive(mContext, new Intent(
+                Intent.ACTION_PACKAGE_REPLACED, Uri.fromParts("package", ANDROID_PKG, null)));
+        mIconLoader.load(icon, mImageView);
+
+        assertThat(mPendingTasks).hasSize(1);
+    }
+
+    private void runPendingTasks() {
+        List<Runnable> tasks = new ArrayList<>(mPendingTasks);
+        mPendingTasks.clear();
+        for (Runnable task : tasks) {
+            task.run();
+        }
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    private static Icon createIcon(int size) {
+        return Icon.createWithBitmap(Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888));
+    }
+}
@@ -32,16 +32,21 @@ public class ShadowApplicationPackageManager extends
 
     private static PackageInfo sPackageInfo;
     private static Resources sResources = null;
+    private static Runnable sOnGetPackageInfo;
 
     @Resetter
     public static void reset() {
         sResources = null;
         sPackageInfo = null;
+        sOnGetPackageInfo = null;
     }
 
     @Implementation
     public PackageInfo getPackageInfoAsUser(String packageName,
             @PackageManager.PackageInfoFlags int flags, @UserIdInt int userId) {
+        if (sOnGetPackageInfo != null) {
+            sOnGetPackageInfo.run();
+        }
         return sPackageInfo;
     }
 
@@ -58,4 +63,9 @@ public class ShadowApplicationPackageManager extends
     public static void setPackageInfo(PackageInfo packageInfo) {
         sPackageInfo = packageInfo;
     }
+
+    /** Sets an action that is run whenever the package info is requested. */
+    public static void setOnGetPackageInfo(Runnable onGetPackageInfo) {
+        sOnGetPackageInfo = onGetPackageInfo;
+    }
 }